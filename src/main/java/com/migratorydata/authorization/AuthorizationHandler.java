@@ -1,42 +1,121 @@
 package com.migratorydata.authorization;
 
+import com.migratorydata.authorization.client.ClientKey;
+import com.migratorydata.authorization.client.ConnectLimiter;
+import com.migratorydata.authorization.client.ConnectRateLimiter;
 import com.migratorydata.authorization.client.Session;
+import com.migratorydata.authorization.client.SessionRegistry;
+import com.migratorydata.authorization.client.VerificationPool;
+import com.migratorydata.authorization.config.Configuration;
+import com.migratorydata.authorization.portal.PortalClient;
+import com.migratorydata.authorization.portal.PortalEndpoint;
+import com.migratorydata.authorization.portal.PortalPayloads;
+import com.migratorydata.authorization.portal.RevokedTokensSync;
+import com.migratorydata.authorization.token.DecisionCache;
+import com.migratorydata.authorization.token.HmacVerifier;
+import com.migratorydata.authorization.token.JwtPayload;
+import com.migratorydata.authorization.token.PermissionsPool;
+import com.migratorydata.authorization.token.RejectedTokenCache;
+import com.migratorydata.authorization.token.RevokedTokenIds;
+import com.migratorydata.authorization.token.SubjectDictionary;
 import com.migratorydata.authorization.token.Token;
+import com.migratorydata.authorization.token.TokenCache;
 import com.migratorydata.authorization.token.TokenExpirationHandler;
+import com.migratorydata.authorization.token.TokenQuotas;
 import com.migratorydata.authorization.config.Util;
 import com.migratorydata.extensions.authorization.v2.MigratoryDataAuthorizationListener;
 import com.migratorydata.extensions.authorization.v2.client.*;
 import io.jsonwebtoken.JwtParser;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
+import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 public class AuthorizationHandler implements MigratoryDataAuthorizationListener {
     public static final StatusNotification TOKEN_VALID = new StatusNotification("NOTIFY_TOKEN_VALID", "NOTIFY_TOKEN_VALID");
     public static final StatusNotification TOKEN_EXPIRED = new StatusNotification("NOTIFY_TOKEN_EXPIRED", "NOTIFY_TOKEN_EXPIRED");
     public static final StatusNotification TOKEN_TO_EXPIRE = new StatusNotification("NOTIFY_TOKEN_TO_EXPIRE", "NOTIFY_TOKEN_TO_EXPIRE");
     public static final StatusNotification TOKEN_INVALID = new StatusNotification("NOTIFY_TOKEN_INVALID", "NOTIFY_TOKEN_INVALID");
     public static final StatusNotification TOKEN_UPDATED = new StatusNotification("NOTIFY_TOKEN_UPDATED", "NOTIFY_TOKEN_UPDATED");
+    // the token could not be verified now because too many tokens are waiting to be verified, or the address of the
+    // client connects too often, the client should retry
+    public static final StatusNotification RETRY_LATER = new StatusNotification("NOTIFY_RETRY_LATER", "NOTIFY_RETRY_LATER");
+    // the server is too slow to verify more tokens now, the new connections are shed while the sessions are served
+    public static final StatusNotification SERVER_OVERLOADED = new StatusNotification("NOTIFY_SERVER_OVERLOADED", "NOTIFY_SERVER_OVERLOADED");
 
-    private final String urlRevokedTokens;
-    private final String urlSigningKeys;
-
-    private Set<String> revokedTokens = new HashSet<>(); // token_id (jti)
+    private final RevokedTokenIds revokedTokens; // token_id (jti)
     private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-    private final Map<String, Session> sessionsByIpAddress = new HashMap<>();
+    private final SessionRegistry sessions;
     private Map<String, JwtParser> jwtParsers = new ConcurrentHashMap<>(); // signKeyUuid to JwtParser
+    private final Map<String, HmacVerifier> hmacVerifiers = new ConcurrentHashMap<>(); // signKeyUuid to HmacVerifier
+    private final boolean fastHmacVerification;
     private final TokenExpirationHandler tokenExpirationHandler;
-    private final String apiKey;
+    private final TokenCache tokenCache;
+    private final RejectedTokenCache rejectedTokens;
+    private final int maxTokenLength;
+    private final SubjectDictionary subjectDictionary;
+    private final DecisionCache decisionCache;
+    private final PermissionsPool permissionsPool;
+    private final TokenQuotas tokenQuotas;
+    private final PortalClient portalClient;
+    private final PortalEndpoint revokedTokensEndpoint;
+    private final PortalEndpoint signingKeysEndpoint;
+    private final RevokedTokensSync revokedTokensSync;
+    private volatile long prunedRevokedTokens;
+    private final boolean disconnectOnSigningKeyRetirement;
+    private final long signingKeyRetirementRenewalMillis;
+    private final LongAdder retiredSessions = new LongAdder();
+    private final int subscribeParallelBatchSize;
+    private final ConnectRateLimiter connectRateLimiter; // null when the connections are not limited
+    private final VerificationPool verificationPool; // null when the tokens are verified by the calling thread
+    private final ConnectLimiter connectLimiter; // null when the connections are not shed under overload
+    private final Set<ClientKey> pendingClients; // the clients whose token is being verified by the pool
 
     public AuthorizationHandler(long millisBeforeRenewal, String urlRevokedTokens, String urlSigningKeys, String apiKey, int requestIntervalSeconds, Map<String, JwtParser> jwtParsers) {
+        this(millisBeforeRenewal, urlRevokedTokens, urlSigningKeys, apiKey, requestIntervalSeconds, jwtParsers, Configuration.getConfiguration());
+    }
+
+    public AuthorizationHandler(long millisBeforeRenewal, String urlRevokedTokens, String urlSigningKeys, String apiKey, int requestIntervalSeconds, Map<String, JwtParser> jwtParsers, Configuration conf) {
         this.tokenExpirationHandler = new TokenExpirationHandler(millisBeforeRenewal);
-        this.urlRevokedTokens = urlRevokedTokens;
-        this.urlSigningKeys = urlSigningKeys;
-        this.apiKey = apiKey;
+        this.tokenCache = new TokenCache(conf.getTokenCacheMaxSize());
+        this.rejectedTokens = new RejectedTokenCache(conf.getRejectedTokenCacheMaxSize(), conf.getRejectedTokenCacheTtlMillis());
+        this.maxTokenLength = conf.getTokenMaxLength();
+        this.sessions = new SessionRegistry(conf.getSessionRegistryConcurrencyLevel());
+        this.revokedTokens = new RevokedTokenIds(conf.isRevokedTokensOffHeap());
+        this.portalClient = new PortalClient(apiKey, conf.getPortalConnectTimeoutMillis(), conf.getPortalRequestTimeoutMillis());
+        long requestIntervalMillis = TimeUnit.SECONDS.toMillis(requestIntervalSeconds);
+        this.revokedTokensEndpoint = new PortalEndpoint("revokedTokens", urlRevokedTokens, requestIntervalMillis, conf.getPortalMaxBackoffMillis());
+        this.signingKeysEndpoint = new PortalEndpoint("signingKeys", urlSigningKeys, requestIntervalMillis, conf.getPortalMaxBackoffMillis());
+        this.revokedTokensSync = new RevokedTokensSync(portalClient, revokedTokensEndpoint);
+        this.disconnectOnSigningKeyRetirement = conf.isSigningKeyRetirementDisconnect();
+        this.signingKeyRetirementRenewalMillis = conf.getSigningKeyRetirementRenewalMillis();
+        this.subscribeParallelBatchSize = conf.getSubscribeParallelBatchSize();
+        this.fastHmacVerification = conf.isFastHmacVerification();
+        if (conf.getConnectRateLimit() > 0) {
+            this.connectRateLimiter = new ConnectRateLimiter(conf.getConnectRateLimit(), conf.getConnectRateLimitBurst(), conf.getConnectRateLimitMaxAddresses(), conf.getConnectRateLimitAllowlist());
+        } else {
+            this.connectRateLimiter = null;
+        }
+        if (conf.isConnectVerificationPool()) {
+            this.verificationPool = new VerificationPool(conf.getConnectVerificationThreads(), conf.getConnectVerificationQueueSize(), conf.getConnectVerificationBatchSize());
+        } else {
+            this.verificationPool = null;
+        }
+        if (conf.isConnectLoadShedding()) {
+            this.connectLimiter = new ConnectLimiter(conf.getConnectConcurrencyInitialLimit(), conf.getConnectConcurrencyMinLimit(), conf.getConnectConcurrencyMaxLimit(), conf.getConnectLatencyTargetMillis());
+        } else {
+            this.connectLimiter = null;
+        }
+        // the clients are compared by identity, as in the session registry
+        this.pendingClients = ConcurrentHashMap.newKeySet();
+        this.subjectDictionary = new SubjectDictionary(conf.getSubjectDictionaryMaxSize(), this::offer);
+        this.decisionCache = conf.getDecisionCacheMaxSize() > 0 ? new DecisionCache(conf.getDecisionCacheMaxSize(), subjectDictionary) : null;
+        this.permissionsPool = new PermissionsPool(decisionCache);
+        this.tokenQuotas = new TokenQuotas(conf.getQuotaScope(), conf.getPublishRateLimit(), conf.getPublishRateBurst(), conf.getMaxSubscriptions());
 
         // Copy passed-in parsers safely into your concurrent map
         if (jwtParsers != null) {
@@ -44,83 +123,276 @@ public class AuthorizationHandler implements MigratoryDataAuthorizationListener
         }
 
         executor.scheduleAtFixedRate(() -> {
-            // load revoked tokens from api hub
+            // load revoked tokens from api hub, the requests of the two endpoints run in parallel on the portal client
             offer(this::updateRevokedTokens);
             offer(this::updateSigningKeys);
         }, 5, requestIntervalSeconds, TimeUnit.SECONDS);
     }
 
     private void updateSigningKeys() {
-        JSONArray signingKeys = Util.fetchFromUrl(urlSigningKeys, apiKey);
-        if (signingKeys == null || signingKeys.isEmpty()) {
-            return;
+        if (!signingKeysEndpoint.startPoll(System.currentTimeMillis())) {
+            return; // the previous request is still running, or the endpoint is backing off after failures
         }
-
-        // 1. Create a set to track all IDs received in this batch
-        Set<String> receivedIds = new HashSet<>();  
-
-        for (int i = 0; i < signingKeys.length(); i++) {
-            JSONObject jwtToken = signingKeys.getJSONObject(i);
-            String signingKeyId = jwtToken.getString("uuid");
-            String signingKey = jwtToken.getString("signKey");
-
-            // Null/empty safety check for ConcurrentHashMap
-            if (signingKeyId == null || signingKey == null) {
-                continue; 
+        portalClient.get(signingKeysEndpoint, signingKeysEndpoint.getUrl(), Collections.emptyMap(), response -> {
+            if (response.getStatus() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected HTTP status " + response.getStatus());
             }
+            return PortalPayloads.readSigningKeys(response.getBody());
+        }).whenComplete((signingKeys, e) -> {
+            boolean applied = false;
+            try {
+                if (e != null) {
+                    System.err.println("Failed to fetch JSON from portal's url: " + signingKeysEndpoint.getUrl() + ": " + e.getMessage());
+                } else {
+                    applySigningKeys(signingKeys);
+                    applied = true;
+                }
+            } catch (Exception ex) {
+                // e.g. a signing key which is too weak or not base64 encoded
+                System.err.println("Failed to apply the signing keys from portal's url: " + signingKeysEndpoint.getUrl() + ": " + ex.getMessage());
+                ex.printStackTrace();
+            } finally {
+                // the next poll may start only now, so that two polls do not apply their signing keys concurrently
+                signingKeysEndpoint.completePoll(System.currentTimeMillis(), applied);
+            }
+        });
+    }
 
-            receivedIds.add(signingKeyId);
+    private void applySigningKeys(Map<String, String> signingKeys) {
+        if (signingKeys.isEmpty()) {
+            return;
+        }
 
-            if (jwtParsers.containsKey(signingKeyId)) {
+        boolean signingKeyAdded = false;
+        for (Map.Entry<String, String> signingKey : signingKeys.entrySet()) {
+            if (jwtParsers.containsKey(signingKey.getKey())) {
                 continue; // signing key already exists
             }
-            JwtParser jwtParser = Util.createJwtParser(signingKey);
-            jwtParsers.put(signingKeyId, jwtParser);
+            signingKeyAdded = true;
+            JwtParser jwtParser = Util.createJwtParser(signingKey.getValue());
+            if (fastHmacVerification) {
+                hmacVerifiers.put(signingKey.getKey(), new HmacVerifier(signingKey.getValue()));
+            }
+            jwtParsers.put(signingKey.getKey(), jwtParser);
+        }
+        if (signingKeyAdded) {
+            rejectedTokens.clear(); // the tokens rejected for an unknown signing key may be valid now
+        }
+
+        List<String> retiredSigningKeyIds = new ArrayList<>();
+        for (String signingKeyId : jwtParsers.keySet()) {
+            if (!signingKeys.containsKey(signingKeyId)) {
+                retiredSigningKeyIds.add(signingKeyId);
+            }
         }
 
-        // 3. Purge stale keys: Remove everything from the map EXCEPT the received IDs
+        // Purge stale keys: Remove everything from the map EXCEPT the received IDs
         // retainAll() on a ConcurrentHashMap's keySet safely modifies the underlying map.
-        jwtParsers.keySet().retainAll(receivedIds);
+        jwtParsers.keySet().retainAll(signingKeys.keySet());
+        hmacVerifiers.keySet().retainAll(signingKeys.keySet());
+        tokenCache.retainSigningKeys(jwtParsers.keySet());
+
+        for (String signingKeyId : retiredSigningKeyIds) {
+            retireSessions(sessions.getSessionsBySigningKeyId(signingKeyId));
+        }
+    }
+
+    // the sessions whose signing key is retired either renew their token, notified one after the other over the
+    // renewal window, or are disconnected
+    private void retireSessions(List<Session> retiredSessions) {
+        long currentTimeMillis = System.currentTimeMillis();
+        for (int i = 0; i < retiredSessions.size(); i++) {
+            Session session = retiredSessions.get(i);
+            if (disconnectOnSigningKeyRetirement) {
+                session.disconnect();
+            } else {
+                tokenExpirationHandler.renewBefore(session, currentTimeMillis + signingKeyRetirementRenewalMillis * i / retiredSessions.size());
+            }
+        }
+        this.retiredSessions.add(retiredSessions.size());
     }
 
     private void updateRevokedTokens() {
-        JSONArray jwtTokens = Util.fetchFromUrl(urlRevokedTokens, apiKey); // get the list of the JWT IDs of the revoked tokens
-        if (jwtTokens == null || jwtTokens.isEmpty()) {
-            return;
+        if (!revokedTokensEndpoint.startPoll(System.currentTimeMillis())) {
+            return; // the previous sync is still running, or the endpoint is backing off after failures
         }
-        for (int i = 0; i < jwtTokens.length(); i++) {
-            revokedTokens.add(jwtTokens.getString(i));
+        // apply the changes of the list of the JWT IDs of the revoked tokens since the previous sync
+        revokedTokensSync.sync(revokedTokens).whenComplete((result, e) -> {
+            try {
+                if (e != null) {
+                    System.err.println("Failed to sync revoked tokens from portal's url: " + revokedTokensEndpoint.getUrl() + ": " + e.getMessage());
+                } else if (result.getMode() != RevokedTokensSync.Mode.NOT_MODIFIED) {
+                    if (result.getAddedCount() > 0) {
+                        tokenCache.invalidateTokenIds(revokedTokens::contains);
+                        revokeSessions(result.getAddedIds());
+                    }
+                }
+                pruneRevokedTokens();
+            } finally {
+                // the next sync may start only now, as the set of the revoked tokens has a single writer
+                revokedTokensEndpoint.completePoll(System.currentTimeMillis(), e == null);
+            }
+        });
+    }
+
+    // called after the revoked tokens are published, so a session added concurrently is either found here, or finds its
+    // JWT ID revoked when it is added
+    private void revokeSessions(List<String> revokedTokenIds) {
+        List<Long> revokedTokenIdHashes = new ArrayList<>();
+        if (revokedTokenIds == null) {
+            // too many JWT IDs were revoked, so look for the JWT IDs of the sessions among the revoked tokens instead
+            for (Long tokenIdHash : sessions.getTokenIdHashes()) {
+                if (revokedTokens.contains((long) tokenIdHash)) {
+                    revokedTokenIdHashes.add(tokenIdHash);
+                }
+            }
+        } else {
+            for (String tokenId : revokedTokenIds) {
+                revokedTokenIdHashes.add(RevokedTokenIds.hash(tokenId));
+            }
+        }
+        for (Long tokenIdHash : revokedTokenIdHashes) {
+            for (Session session : sessions.getSessionsByTokenIdHash(tokenIdHash)) {
+                session.revoke();
+                session.disconnect();
+            }
+        }
+    }
+
+    private void pruneRevokedTokens() {
+        int pruned = revokedTokens.prune(System.currentTimeMillis());
+        if (pruned > 0) {
+            revokedTokens.publish();
+            prunedRevokedTokens += pruned;
         }
     }
 
     @Override
     public void onClientConnect(EventConnect eventConnect) {
+        if (connectRateLimiter != null && !connectRateLimiter.tryAcquire(eventConnect.getClient().getClientAddress())) {
+            eventConnect.authorize(false, RETRY_LATER.getStatus());
+            return; // the address of the client connects too often
+        }
+
         String jwtToken = eventConnect.getClient().getToken();
         if (jwtToken == null || jwtToken.isEmpty()) {
             eventConnect.authorize(false, TOKEN_INVALID.getStatus());
             return; // no token provided
         }
 
-        JwtParser jwtParser = null;
-        String signingKeyId = (String) Util.getClaimsWithoutVerification(jwtToken).get(Token.SIGNING_KEY_ID_FIELD);
-        if (signingKeyId != null && jwtParsers.containsKey(signingKeyId)) {
-            jwtParser = jwtParsers.get(signingKeyId);
+        if (!JwtPayload.isWellFormed(jwtToken, maxTokenLength)) {
+            eventConnect.authorize(false, TOKEN_INVALID.getStatus());
+            return; // not a well-formed JWT token, checked before decoding anything
+        }
+
+        StatusNotification rejectedStatus = rejectedTokens.get(jwtToken);
+        if (rejectedStatus != null) {
+            eventConnect.authorize(false, rejectedStatus.getStatus());
+            return; // the same token was rejected recently
+        }
+
+        JwtPayload payload = JwtPayload.read(jwtToken);
+        if (payload == null) {
+            rejectedTokens.put(jwtToken, TOKEN_INVALID);
+            eventConnect.authorize(false, TOKEN_INVALID.getStatus());
+            return; // not a well-formed JWT token
         }
 
+        String signingKeyId = payload.getSigningKeyId();
+        JwtParser jwtParser = (signingKeyId != null) ? jwtParsers.get(signingKeyId) : null;
+
         if (jwtParser == null) {
+            rejectedTokens.put(jwtToken, TOKEN_INVALID);
             eventConnect.authorize(false, TOKEN_INVALID.getStatus());
             return; // no valid signing key found for the token
         }
 
-        Token token = new Token(jwtToken);
-        StatusNotification tokenStatus = token.parseToken(jwtParser);
+        Token token = tokenCache.get(signingKeyId, jwtToken);
+        if (token != null) {
+            completeConnect(eventConnect, signingKeyId, token, TOKEN_VALID, false);
+            return;
+        }
+
+        // only the tokens which are not cached are limited, the subscriptions and publications of the sessions never are
+        long startNanos = System.nanoTime();
+        if (connectLimiter != null && !connectLimiter.tryAcquire()) {
+            eventConnect.authorize(false, SERVER_OVERLOADED.getStatus());
+            return; // too many tokens are being verified for the current latency
+        }
+
+        if (verificationPool == null) {
+            verifyConnect(eventConnect, jwtToken, payload, signingKeyId, jwtParser, false, startNanos);
+        } else {
+            // only the tokens which are not cached are verified by the pool, which authorizes the client once done
+            Client client = eventConnect.getClient();
+            pendingClients.add(new ClientKey(client));
+            if (!verificationPool.execute(() -> verifyConnect(eventConnect, jwtToken, payload, signingKeyId, jwtParser, true, startNanos))) {
+                pendingClients.remove(new ClientKey(client));
+                if (connectLimiter != null) {
+                    connectLimiter.releaseDropped();
+                }
+                eventConnect.authorize(false, RETRY_LATER.getStatus());
+            }
+        }
+    }
+
+    private void verifyConnect(EventConnect eventConnect, String jwtToken, JwtPayload payload, String signingKeyId, JwtParser jwtParser, boolean pending, long startNanos) {
+        boolean limited = connectLimiter != null;
+        try {
+            Token token = new Token(jwtToken, payload);
+            StatusNotification tokenStatus = token.parseToken(hmacVerifiers.get(signingKeyId), jwtParser, permissionsPool);
+            if (limited) {
+                limited = false;
+                connectLimiter.release(System.nanoTime() - startNanos);
+            }
+            if (TOKEN_VALID.getStatus().equals(tokenStatus.getStatus())) {
+                token.setQuota(tokenQuotas.get(payload));
+                tokenCache.put(signingKeyId, jwtToken, token);
+            } else {
+                rejectedTokens.put(jwtToken, tokenStatus);
+            }
+            completeConnect(eventConnect, signingKeyId, token, tokenStatus, pending);
+        } catch (RuntimeException e) {
+            if (limited) {
+                connectLimiter.releaseDropped();
+            }
+            if (!pending) {
+                throw e;
+            }
+            // otherwise nobody would authorize the client, which would stay pending for good
+            e.printStackTrace();
+            if (pendingClients.remove(new ClientKey(eventConnect.getClient()))) {
+                eventConnect.authorize(false, RETRY_LATER.getStatus());
+            }
+        }
+    }
+
+    // pending is true when the token was verified by the pool, while the client may have disconnected
+    private void completeConnect(EventConnect eventConnect, String signingKeyId, Token token, StatusNotification tokenStatus, boolean pending) {
+        Client client = eventConnect.getClient();
         if (TOKEN_VALID.getStatus().equals(tokenStatus.getStatus())) {
-            Session session = new Session(eventConnect.getClient(), token);
+            // only the verified tokens extend the lifetime of their JWT ID in the revoked tokens
+            revokedTokens.learnExpiration(token.getIdHash(), token.getExpirationTimeMillis());
+            Session session = new Session(client, token);
             tokenExpirationHandler.add(session);
-            sessionsByIpAddress.put(session.getClientAddress(), session);
+            sessions.put(session);
+            if (pending && !pendingClients.remove(new ClientKey(client))) {
+                discard(session); // the client disconnected while its token was verified
+                return;
+            }
+            if (revokedTokens.contains(token.getIdHash())) {
+                session.revoke();
+            }
+            if (!jwtParsers.containsKey(signingKeyId)) {
+                // the signing key was retired while the session was added
+                retireSessions(Collections.singletonList(session));
+            }
 
             eventConnect.authorize(true, tokenStatus.getStatus());
         } else {
+            if (pending) {
+                pendingClients.remove(new ClientKey(client));
+            }
             eventConnect.authorize(false, tokenStatus.getStatus());
         }
     }
@@ -133,44 +405,126 @@ public class AuthorizationHandler implements MigratoryDataAuthorizationListener
             return; // no token provided
         }
 
-        JwtParser jwtParser = null;
-        String signingKeyId = (String) Util.getClaimsWithoutVerification(jwtToken).get(Token.SIGNING_KEY_ID_FIELD);
-        if (signingKeyId != null && jwtParsers.containsKey(signingKeyId)) {
-            jwtParser = jwtParsers.get(signingKeyId);
+        if (!JwtPayload.isWellFormed(jwtToken, maxTokenLength)) {
+            eventUpdateToken.getClient().sendStatusNotification(TOKEN_INVALID);
+            return; // not a well-formed JWT token, checked before decoding anything
+        }
+
+        StatusNotification rejectedStatus = rejectedTokens.get(jwtToken);
+        if (rejectedStatus != null) {
+            eventUpdateToken.getClient().sendStatusNotification(rejectedStatus);
+            return; // the same token was rejected recently
         }
 
+        JwtPayload payload = JwtPayload.read(jwtToken);
+        if (payload == null) {
+            rejectedTokens.put(jwtToken, TOKEN_INVALID);
+            eventUpdateToken.getClient().sendStatusNotification(TOKEN_INVALID);
+            return; // not a well-formed JWT token
+        }
+
+        String signingKeyId = payload.getSigningKeyId();
+        JwtParser jwtParser = (signingKeyId != null) ? jwtParsers.get(signingKeyId) : null;
+
         if (jwtParser == null) {
+            rejectedTokens.put(jwtToken, TOKEN_INVALID);
             eventUpdateToken.getClient().sendStatusNotification(TOKEN_INVALID);
             return; // no valid signing key found for the token
         }
 
-        Token token = new Token(jwtToken);
-        StatusNotification tokenStatus = token.parseToken(jwtParser);
+        Token token = tokenCache.get(signingKeyId, jwtToken);
+        if (token != null) {
+            completeUpdateToken(eventUpdateToken, signingKeyId, token, TOKEN_VALID, false);
+        } else if (verificationPool == null) {
+            verifyUpdateToken(eventUpdateToken, jwtToken, payload, signingKeyId, jwtParser, false);
+        } else {
+            Client client = eventUpdateToken.getClient();
+            pendingClients.add(new ClientKey(client));
+            if (!verificationPool.execute(() -> verifyUpdateToken(eventUpdateToken, jwtToken, payload, signingKeyId, jwtParser, true))) {
+                pendingClients.remove(new ClientKey(client));
+                client.sendStatusNotification(RETRY_LATER);
+            }
+        }
+    }
+
+    private void verifyUpdateToken(EventUpdateToken eventUpdateToken, String jwtToken, JwtPayload payload, String signingKeyId, JwtParser jwtParser, boolean pending) {
+        try {
+            Token token = new Token(jwtToken, payload);
+            StatusNotification tokenStatus = token.parseToken(hmacVerifiers.get(signingKeyId), jwtParser, permissionsPool);
+            if (TOKEN_VALID.getStatus().equals(tokenStatus.getStatus())) {
+                token.setQuota(tokenQuotas.get(payload));
+                tokenCache.put(signingKeyId, jwtToken, token);
+            } else {
+                rejectedTokens.put(jwtToken, tokenStatus);
+            }
+            completeUpdateToken(eventUpdateToken, signingKeyId, token, tokenStatus, pending);
+        } catch (RuntimeException e) {
+            if (!pending) {
+                throw e;
+            }
+            e.printStackTrace();
+            if (pendingClients.remove(new ClientKey(eventUpdateToken.getClient()))) {
+                eventUpdateToken.getClient().sendStatusNotification(RETRY_LATER);
+            }
+        }
+    }
+
+    private void completeUpdateToken(EventUpdateToken eventUpdateToken, String signingKeyId, Token token, StatusNotification tokenStatus, boolean pending) {
+        Client client = eventUpdateToken.getClient();
         if (TOKEN_VALID.getStatus().equals(tokenStatus.getStatus())) {
-            Session session = new Session(eventUpdateToken.getClient(), token);
+            revokedTokens.learnExpiration(token.getIdHash(), token.getExpirationTimeMillis());
+            Session session = new Session(client, token);
             tokenExpirationHandler.add(session);
-            Session previousSession = sessionsByIpAddress.put(session.getClientAddress(), session);
+            Session previousSession = sessions.put(session);
             if (previousSession != null) {
                 previousSession.completeTokenRenewal();
+                // the client is still subscribed to the subjects of its previous session
+                session.takeSubscriptions(previousSession);
+                tokenExpirationHandler.remove(previousSession);
+            }
+            if (pending && !pendingClients.remove(new ClientKey(client))) {
+                discard(session); // the client disconnected while its token was verified
+                return;
+            }
+            if (revokedTokens.contains(token.getIdHash())) {
+                session.revoke();
             }
-            eventUpdateToken.getClient().sendStatusNotification(TOKEN_UPDATED);
+            if (!jwtParsers.containsKey(signingKeyId)) {
+                retireSessions(Collections.singletonList(session));
+            }
+            client.sendStatusNotification(TOKEN_UPDATED);
         } else {
-            eventUpdateToken.getClient().sendStatusNotification(tokenStatus);
+            if (pending) {
+                pendingClients.remove(new ClientKey(client));
+            }
+            client.sendStatusNotification(tokenStatus);
+        }
+    }
+
+    private void discard(Session session) {
+        if (sessions.remove(session.getClient()) != null) {
+            tokenExpirationHandler.remove(session);
+            session.releaseQuota();
         }
     }
 
     @Override
     public void onClientSubscribe(EventSubscribe eventSubscribe) {
-        Map<String, Boolean> permissions = new HashMap<String, Boolean>();
-
-        Session session = sessionsByIpAddress.get(eventSubscribe.getClient().getClientAddress());
-        if (session != null && !revokedTokens.contains(session.getToken().getId())) {
-            for (String subject : eventSubscribe.getSubjects()) {
-                boolean hasSubscribePermission = session.getToken().authorizeSubscribe(subject);
-                permissions.put(subject, hasSubscribePermission);
-                if (hasSubscribePermission) {
-                    session.addSubscription(subject);
+        List<String> subjects = eventSubscribe.getSubjects();
+        // sized so that the map is not rehashed while it is filled
+        Map<String, Boolean> permissions = new HashMap<String, Boolean>((int) (subjects.size() / 0.75f) + 1);
+
+        Session session = sessions.get(eventSubscribe.getClient());
+        if (session != null && !session.isRevoked()) {
+            String[] batch = subjects.toArray(new String[0]);
+            // the subjects get an ID only if frequent enough, so a large subscribe does not evict the hot subjects
+            boolean[] authorized = new boolean[batch.length];
+            session.getToken().authorizeSubscribe(batch, authorized, subscribeParallelBatchSize);
+            for (int i = 0; i < batch.length; i++) {
+                if (authorized[i] && !session.tryAddSubscription(batch[i])) {
+                    authorized[i] = false; // the maximum number of subscriptions of the token is reached
                 }
+                permissions.put(batch[i], authorized[i]);
             }
         }
 
@@ -181,11 +535,11 @@ public class AuthorizationHandler implements MigratoryDataAuthorizationListener
     public void onClientPublish(EventPublish eventPublish) {
         boolean permission = false;
 
-        Session session = sessionsByIpAddress.get(eventPublish.getClient().getClientAddress());
-        if (session != null && !revokedTokens.contains(session.getToken().getId())) {
+        Session session = sessions.get(eventPublish.getClient());
+        if (session != null && !session.isRevoked()) {
             String subject = eventPublish.getSubject();
-            if (session.getToken().authorizePublish(subject)) {
-                permission = true;
+            if (session.getToken().authorizePublish(subject, subjectDictionary.getId(subject))) {
+                permission = session.tryPublish(); // false if the publish rate of the token is exceeded
             }
         }
 
@@ -194,10 +548,93 @@ public class AuthorizationHandler implements MigratoryDataAuthorizationListener
 
     @Override
     public void onClientDisconnect(EventDisconnect eventDisconnect) {
-        Session session = sessionsByIpAddress.remove(eventDisconnect.getClient().getClientAddress());
+        if (verificationPool != null) {
+            pendingClients.remove(new ClientKey(eventDisconnect.getClient()));
+        }
+        Session session = sessions.remove(eventDisconnect.getClient());
         if (session != null) {
             tokenExpirationHandler.remove(session);
+            session.releaseQuota();
+        }
+    }
+
+    /**
+     * Returns the counters of this handler, e.g. to size its caches.
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("sessions", (long) sessions.size());
+        metrics.put("revokedTokens.size", (long) revokedTokens.size());
+        metrics.put("revokedTokens.bytes", revokedTokens.getMemoryBytes());
+        metrics.put("revokedTokens.pruned", prunedRevokedTokens);
+        metrics.put("revokedTokens.version", revokedTokensSync.getVersion());
+        metrics.put("revokedTokens.sync.totalBytes", revokedTokensSync.getTotalBytes());
+        RevokedTokensSync.Result lastSync = revokedTokensSync.getLastResult();
+        if (lastSync != null) {
+            metrics.put("revokedTokens.sync.bytes", lastSync.getBytes());
+            metrics.put("revokedTokens.sync.applyMicros", lastSync.getApplyNanos() / 1000);
         }
+        metrics.put("signingKeys.size", (long) jwtParsers.size());
+        metrics.put("signingKeys.retiredSessions", retiredSessions.sum());
+        revokedTokensEndpoint.putMetrics(metrics);
+        signingKeysEndpoint.putMetrics(metrics);
+        if (connectRateLimiter != null) {
+            metrics.put("connectRateLimiter.rejected", connectRateLimiter.getRejectedCount());
+            metrics.put("connectRateLimiter.size", connectRateLimiter.size());
+            metrics.put("connectRateLimiter.capacity", (long) connectRateLimiter.capacity());
+            metrics.put("connectRateLimiter.evictions", connectRateLimiter.getEvictionCount());
+        }
+        if (verificationPool != null) {
+            metrics.put("verificationPool.threads", (long) verificationPool.getThreadCount());
+            metrics.put("verificationPool.queueSize", (long) verificationPool.getQueueSize());
+            metrics.put("verificationPool.completed", verificationPool.getCompletedCount());
+            metrics.put("verificationPool.rejected", verificationPool.getRejectedCount());
+            metrics.put("verificationPool.batches", verificationPool.getBatchCount());
+        }
+        if (connectLimiter != null) {
+            metrics.put("connectLimiter.limit", (long) connectLimiter.getLimit());
+            metrics.put("connectLimiter.inFlight", (long) connectLimiter.getInFlight());
+            metrics.put("connectLimiter.rejected", connectLimiter.getRejectedCount());
+            metrics.put("connectLimiter.latencyMicros", connectLimiter.getSmoothedLatencyNanos() / 1000);
+        }
+        metrics.put("quota.size", tokenQuotas.size());
+        metrics.put("quota.publishDenied", tokenQuotas.getPublishDeniedCount());
+        metrics.put("quota.subscribeDenied", tokenQuotas.getSubscribeDeniedCount());
+        metrics.put("rejectedTokens.size", rejectedTokens.size());
+        metrics.put("rejectedTokens.hits", rejectedTokens.getHitCount());
+        metrics.put("tokenCache.size", tokenCache.size());
+        metrics.put("tokenCache.hits", tokenCache.getHitCount());
+        metrics.put("tokenCache.misses", tokenCache.getMissCount());
+        long permissionsHits = permissionsPool.getHitCount();
+        long permissionsLookups = permissionsHits + permissionsPool.getMissCount();
+        metrics.put("permissions.pool.size", permissionsPool.size());
+        metrics.put("permissions.pool.hits", permissionsHits);
+        metrics.put("permissions.pool.misses", permissionsPool.getMissCount());
+        metrics.put("permissions.pool.hitRatePercent", permissionsLookups == 0 ? 0 : permissionsHits * 100 / permissionsLookups);
+        metrics.put("permissions.pool.retainedBytes", permissionsPool.getRetainedBytes());
+        metrics.put("subjectDictionary.size", subjectDictionary.size());
+        metrics.put("subjectDictionary.hits", subjectDictionary.getHitCount());
+        metrics.put("subjectDictionary.misses", subjectDictionary.getMissCount());
+        metrics.put("subjectDictionary.evictions", subjectDictionary.getEvictionCount());
+        metrics.put("subjectDictionary.recycles", subjectDictionary.getRecycleCount());
+        if (decisionCache != null) {
+            long decisionHits = decisionCache.getHitCount();
+            long decisionLookups = decisionHits + decisionCache.getMissCount();
+            metrics.put("decisionCache.size", decisionCache.size());
+            metrics.put("decisionCache.hits", decisionHits);
+            metrics.put("decisionCache.misses", decisionCache.getMissCount());
+            metrics.put("decisionCache.hitRatePercent", decisionLookups == 0 ? 0 : decisionHits * 100 / decisionLookups);
+            metrics.put("decisionCache.evictions", decisionCache.getEvictionCount());
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the number of publications and subscriptions denied by the quotas which denied the most, keyed by JWT ID
+     * or app, e.g. to find the abusive apps.
+     */
+    public Map<String, Long> getTopQuotaDenials(int count) {
+        return tokenQuotas.getTopDenials(count);
     }
 
     @Override
@@ -206,6 +643,12 @@ public class AuthorizationHandler implements MigratoryDataAuthorizationListener
 
     @Override
     public void onDispose() {
+        executor.shutdownNow();
+        if (verificationPool != null) {
+            verificationPool.shutdown();
+        }
+        portalClient.shutdown();
+        tokenExpirationHandler.shutdown();
     }
 
     public void offer(Runnable r) {
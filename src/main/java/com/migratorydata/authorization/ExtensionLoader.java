@@ -12,7 +12,7 @@ public class ExtensionLoader implements MigratoryDataAuthorizationListener {
 
     public ExtensionLoader() {
         Configuration conf = Configuration.getConfiguration();
-        authorizationListener = new AuthorizationHandler(conf.getMillisBeforeRenewal(), conf.getPortalRevokedTokensUrl(), conf.getPortalSigningKeysUrl(), conf.getPortalApiKey(), conf.getPortalRequestIntervalSeconds(), new HashMap<>()); // Pass an empty map for JWT parsers
+        authorizationListener = new AuthorizationHandler(conf.getMillisBeforeRenewal(), conf.getPortalRevokedTokensUrl(), conf.getPortalSigningKeysUrl(), conf.getPortalApiKey(), conf.getPortalRequestIntervalSeconds(), new HashMap<>(), conf); // Pass an empty map for JWT parsers
     }
 
     @Override
@@ -0,0 +1,29 @@
+package com.migratorydata.authorization.client;
+
+import com.migratorydata.extensions.authorization.v2.client.Client;
+
+/**
+ * Key of a map which compares the clients by identity (==) instead of equals(), so that clients sharing the same IP
+ * address, e.g. behind a NAT, are distinct keys.
+ */
+public final class ClientKey {
+    private final Client client;
+
+    public ClientKey(Client client) {
+        this.client = client;
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(client);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ClientKey && ((ClientKey) o).client == client;
+    }
+}
@@ -0,0 +1,113 @@
+package com.migratorydata.authorization.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive limit of the number of token verifications in flight on connect, so that a slow node sheds the new connects
+ * at once instead of letting their backlog, and their latency, grow without bound.
+ *
+ * The limit follows AIMD: it grows by one when a verification completes within the latency target while the limit is
+ * at least half used, and is cut by the backoff ratio when a verification exceeds the latency target, or is dropped,
+ * at most once per latency target, so that the verifications in flight when the node got slow cut it only once. The
+ * latency of a verification is measured from the delivery of its connect event, so it includes the time queued on the
+ * verification pool.
+ */
+public class ConnectLimiter {
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double SMOOTHING = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private long lastDecreaseNanos;
+    private volatile long smoothedLatencyNanos; // updated without a lock, only reported as a metric
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param initialLimit the number of verifications in flight allowed at first
+     * @param minLimit the minimum number of verifications in flight allowed
+     * @param maxLimit the maximum number of verifications in flight allowed
+     * @param latencyTargetMillis the latency of a verification above which the limit is cut
+     */
+    public ConnectLimiter(int initialLimit, int minLimit, int maxLimit, long latencyTargetMillis) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.latencyTargetNanos = latencyTargetMillis * 1_000_000L;
+        this.lastDecreaseNanos = System.nanoTime() - latencyTargetNanos;
+    }
+
+    /**
+     * Starts a verification.
+     *
+     * @return false if the limit of verifications in flight is reached, in which case the connect should be rejected
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int count = inFlight.get();
+            if (count >= (int) limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Completes a verification started with tryAcquire().
+     *
+     * @param latencyNanos the time since the delivery of the connect event
+     */
+    public void release(long latencyNanos) {
+        int count = inFlight.getAndDecrement();
+        smoothedLatencyNanos += (long) ((latencyNanos - smoothedLatencyNanos) * SMOOTHING);
+        if (latencyNanos > latencyTargetNanos) {
+            decrease();
+        } else if (count * 2 >= limit) {
+            increase();
+        }
+    }
+
+    /**
+     * Abandons a verification started with tryAcquire(), e.g. rejected by the full verification pool.
+     */
+    public void releaseDropped() {
+        inFlight.decrementAndGet();
+        decrease();
+    }
+
+    private synchronized void increase() {
+        limit = Math.min(maxLimit, limit + 1);
+    }
+
+    private synchronized void decrease() {
+        long nowNanos = System.nanoTime();
+        if (nowNanos - lastDecreaseNanos >= latencyTargetNanos) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            lastDecreaseNanos = nowNanos;
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getSmoothedLatencyNanos() {
+        return smoothedLatencyNanos;
+    }
+}
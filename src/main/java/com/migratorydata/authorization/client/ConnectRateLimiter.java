@@ -0,0 +1,173 @@
+package com.migratorydata.authorization.client;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the rate of the connections of each IP address with a token bucket of the given rate and burst, so that an
+ * address which connects too often is rejected before its token is verified.
+ *
+ * The bucket of an address is a single timestamp, the time when it is full again, as in the generic cell rate algorithm,
+ * updated with a CAS. The buckets are kept in a set-associative table of WAYS addresses per bucket of the table, read
+ * without locks, so the memory is bounded whatever the number of addresses, e.g. spoofed or rotating. When the table
+ * bucket of a new address is full, the new address replaces a full token bucket, which is the same as no bucket, or else
+ * the bucket which is full again first, i.e. the least throttled address, approximating LRU.
+ */
+public class ConnectRateLimiter {
+    private static final int WAYS = 8;
+
+    private final AtomicReferenceArray<Bucket> table;
+    private final int bucketMask;
+    private final long intervalNanos;  // time to earn a token
+    private final long burstNanos;     // time to earn the tokens of a full bucket
+    private final Set<String> allowlist;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param ratePerSecond the number of connections per second allowed for an address
+     * @param burst the number of connections allowed at once for an address
+     * @param maxSize the maximum number of addresses, rounded up to a power of two
+     * @param allowlist the addresses which are never limited
+     */
+    public ConnectRateLimiter(double ratePerSecond, int burst, int maxSize, Collection<String> allowlist) {
+        int capacity = Integer.highestOneBit(Math.max(WAYS, maxSize - 1) << 1);
+        this.table = new AtomicReferenceArray<>(capacity);
+        this.bucketMask = capacity / WAYS - 1;
+        this.intervalNanos = (long) (1_000_000_000L / ratePerSecond);
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+        this.allowlist = new HashSet<>(allowlist);
+    }
+
+    /**
+     * Takes a token from the bucket of the address of a client.
+     *
+     * @param clientAddress the address of the client, with or without its port
+     * @return false if the address connects too often
+     */
+    public boolean tryAcquire(String clientAddress) {
+        return tryAcquire(clientAddress, System.nanoTime());
+    }
+
+    boolean tryAcquire(String clientAddress, long nowNanos) {
+        String address = ipOf(clientAddress);
+        if (allowlist.contains(address)) {
+            return true;
+        }
+        Bucket bucket = bucketOf(address, nowNanos);
+        while (true) {
+            long fullNanos = bucket.get();
+            long newFullNanos = Math.max(fullNanos, nowNanos) + intervalNanos;
+            if (newFullNanos - nowNanos > burstNanos) {
+                rejected.increment();
+                return false;
+            }
+            if (bucket.compareAndSet(fullNanos, newFullNanos)) {
+                return true;
+            }
+        }
+    }
+
+    private Bucket bucketOf(String address, long nowNanos) {
+        int hash = hash(address);
+        int base = (hash & bucketMask) * WAYS;
+        for (int way = 0; way < WAYS; way++) {
+            Bucket bucket = table.get(base + way);
+            if (bucket != null && bucket.hash == hash && bucket.address.equals(address)) {
+                return bucket;
+            }
+        }
+
+        int victimIndex = base;
+        Bucket victim = null;
+        long victimRemainingNanos = Long.MAX_VALUE;
+        for (int way = 0; way < WAYS; way++) {
+            Bucket bucket = table.get(base + way);
+            if (bucket == null) {
+                victimIndex = base + way;
+                victim = null;
+                break;
+            }
+            long remainingNanos = Math.max(0, bucket.get() - nowNanos); // 0 when the token bucket is full
+            if (remainingNanos < victimRemainingNanos) {
+                victimIndex = base + way;
+                victim = bucket;
+                victimRemainingNanos = remainingNanos;
+            }
+        }
+        Bucket bucket = new Bucket(address, hash, nowNanos);
+        if (table.compareAndSet(victimIndex, victim, bucket)) {
+            if (victim != null) {
+                evictions.increment();
+            }
+        }
+        // if another address took the way concurrently, this bucket is used once without being kept
+        return bucket;
+    }
+
+    /**
+     * Returns the IP address of a client address, i.e. without its port, e.g. 10.0.0.1 for 10.0.0.1:5000 and ::1 for
+     * [::1]:5000.
+     */
+    static String ipOf(String clientAddress) {
+        if (clientAddress == null) {
+            return "";
+        }
+        if (clientAddress.startsWith("[")) {
+            int end = clientAddress.indexOf(']');
+            return end != -1 ? clientAddress.substring(1, end) : clientAddress;
+        }
+        int colon = clientAddress.indexOf(':');
+        if (colon != -1 && colon == clientAddress.lastIndexOf(':')) {
+            return clientAddress.substring(0, colon); // IPv4 with a port, an IPv6 address has several colons
+        }
+        return clientAddress;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of addresses in the table.
+     */
+    public long size() {
+        long size = 0;
+        for (int i = 0; i < table.length(); i++) {
+            if (table.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public int capacity() {
+        return table.length();
+    }
+
+    private static int hash(String address) {
+        int hash = address.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    // the time when the token bucket of the address is full again
+    private static final class Bucket extends AtomicLong {
+        private final String address;
+        private final int hash;
+
+        Bucket(String address, int hash, long fullNanos) {
+            super(fullNanos);
+            this.address = address;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.migratorydata.authorization.client;
+
+import java.util.Arrays;
+
+/**
+ * Set of non-zero longs, e.g. 64-bit hashes, in an open-addressing table with linear probing, without boxing the longs.
+ *
+ * This class is not thread-safe.
+ */
+class LongSet {
+    private static final long EMPTY = 0;
+    private static final int INITIAL_CAPACITY = 4;
+    private static final long[] EMPTY_TABLE = new long[0]; // shared by the sets never added to, e.g. of the publishers
+
+    private long[] table = EMPTY_TABLE;
+    private int size;
+
+    /**
+     * @return true if the value was not already in the set
+     */
+    boolean add(long value) {
+        if (table.length == 0 || (size + 1) * 4 > table.length * 3) {
+            resize(table.length == 0 ? INITIAL_CAPACITY : table.length * 2);
+        }
+        int mask = table.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            if (table[i] == value) {
+                return false;
+            }
+            if (table[i] == EMPTY) {
+                table[i] = value;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    boolean contains(long value) {
+        if (table.length == 0) {
+            return false;
+        }
+        int mask = table.length - 1;
+        for (int i = mix(value) & mask; table[i] != EMPTY; i = (i + 1) & mask) {
+            if (table[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the value was in the set
+     */
+    boolean remove(long value) {
+        if (table.length == 0) {
+            return false;
+        }
+        int mask = table.length - 1;
+        int i = mix(value) & mask;
+        while (table[i] != value) {
+            if (table[i] == EMPTY) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        // shift back the next values of the probe sequence, so that none of them is separated from its slot by a hole
+        int hole = i;
+        for (int j = (i + 1) & mask; table[j] != EMPTY; j = (j + 1) & mask) {
+            int slot = mix(table[j]) & mask;
+            if (((j - slot) & mask) >= ((j - hole) & mask)) {
+                table[hole] = table[j];
+                hole = j;
+            }
+        }
+        table[hole] = EMPTY;
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void addAll(LongSet other) {
+        for (long value : other.table) {
+            if (value != EMPTY) {
+                add(value);
+            }
+        }
+    }
+
+    void clear() {
+        table = EMPTY_TABLE;
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        long[] oldTable = table;
+        table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        size = 0;
+        for (long value : oldTable) {
+            if (value != EMPTY) {
+                add(value);
+            }
+        }
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
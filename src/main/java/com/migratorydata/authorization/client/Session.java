@@ -1,25 +1,32 @@
 package com.migratorydata.authorization.client;
 
 import java.util.Comparator;
-import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
 
+import com.migratorydata.authorization.token.RevokedTokenIds;
+import com.migratorydata.authorization.token.TimingWheel;
 import com.migratorydata.authorization.token.Token;
+import com.migratorydata.authorization.token.TokenQuota;
 import com.migratorydata.extensions.authorization.v2.client.Client;
 import static com.migratorydata.authorization.AuthorizationHandler.TOKEN_TO_EXPIRE;
 
 public class Session {
-    private Client client;
-    private Token token;
-    private Set<String> subscriptions = new HashSet<>(); // The set of subjects this client is subscribed to
+    private final Client client;
+    private final Token token;
+    private final LongSet subscriptions = new LongSet(); // The 64-bit hashes of the subjects this client is subscribed to
+    private final TokenQuota quota; // The quota of the token of this client, or null if no limits
+
+    // Set when the JWT ID of the token is revoked, checked instead of the revoked tokens on the subscribe and publish paths
+    private volatile boolean revoked = false;
 
     // Track the state and timestamp of token renewal
     private volatile boolean isTokenRenewalInProgress = false;
     private long tokenRenewalStartTimestamp;
 
+    // The timer of this session in the TokenExpirationHandler
+    private final TimingWheel.Timer<Session> expirationTimer = new TimingWheel.Timer<>(this);
+
     // Comparator for ordering sessions by their token expiration time
-    public static final Comparator<Session> ORDER_BY_TOKEN_EXPIRATION_TIME = Comparator.comparing(Session::getTokenExpirationTime);
+    public static final Comparator<Session> ORDER_BY_TOKEN_EXPIRATION_TIME = Comparator.comparingLong(Session::getTokenExpirationTimeMillis);
 
     // Comparator for ordering sessions by their token renewal start timestamp
     public static final Comparator<Session> ORDER_BY_TOKEN_RENEWAL_TIMESTAMP = Comparator.comparingLong(Session::getTokenRenewalStartTimestamp);
@@ -27,11 +34,18 @@ public class Session {
     public Session(Client client, Token token) {
         this.client = client;
         this.token = token;
+        this.quota = (token != null) ? token.getQuota() : null;
     }
 
     public void startTokenRenewal() {
         isTokenRenewalInProgress = true;
         tokenRenewalStartTimestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Asks the client to renew its token, once its token renewal is started.
+     */
+    public void notifyTokenToExpire() {
         client.sendStatusNotification(TOKEN_TO_EXPIRE);
     }
 
@@ -39,6 +53,10 @@ public class Session {
         isTokenRenewalInProgress = false;
     }
 
+    public boolean hasTokenRenewalStarted() {
+        return tokenRenewalStartTimestamp != 0;
+    }
+
     public boolean hasTokenRenewalCompleted() {
         return isTokenRenewalInProgress == false;
     }
@@ -48,33 +66,102 @@ public class Session {
     }
 
     public boolean isTimeToRenewToken(long millisBeforeRenewal) {
-        Date currentTime = new Date();
-        long currentTimeMillis = currentTime.getTime();
-        Date time = new Date(currentTimeMillis + millisBeforeRenewal);
-        if (time.after(token.getExpirationTime())) {
-            return true;
-        }
-        return false;
+        return System.currentTimeMillis() + millisBeforeRenewal > token.getExpirationTimeMillis();
     }
 
     public long getTokenRenewalStartTimestamp() {
         return tokenRenewalStartTimestamp;
     }
 
-    public Date getTokenExpirationTime() {
-        return token.getExpirationTime();
+    public long getTokenExpirationTimeMillis() {
+        return token.getExpirationTimeMillis();
+    }
+
+    public TimingWheel.Timer<Session> getExpirationTimer() {
+        return expirationTimer;
     }
 
     public Token getToken() {
         return token;
     }
 
+    public Client getClient() {
+        return client;
+    }
+
     public String getClientAddress() {
         return client.getClientAddress();
     }
 
     public void addSubscription(String subject) {
-        subscriptions.add(subject);
+        subscriptions.add(RevokedTokenIds.hash(subject));
+    }
+
+    /**
+     * Adds a subscription if the quota of the token allows it.
+     *
+     * @return false if the maximum number of subscriptions of the token is reached
+     */
+    public boolean tryAddSubscription(String subject) {
+        // keyed by the hash of the subject, which unlike its ID in the SubjectDictionary does not change on eviction
+        long subjectHash = RevokedTokenIds.hash(subject);
+        if (quota != null && !subscriptions.contains(subjectHash)) {
+            if (!quota.tryAddSubscription()) {
+                return false;
+            }
+        }
+        subscriptions.add(subjectHash);
+        return true;
+    }
+
+    /**
+     * Takes over the subscriptions of the previous session of the client, once the client updated its token. The
+     * subscriptions stay charged to the quota of the previous token if the new token shares it, and are moved to the
+     * quota of the new token otherwise, even over its maximum, as the client is already subscribed.
+     */
+    public void takeSubscriptions(Session previousSession) {
+        subscriptions.addAll(previousSession.subscriptions);
+        if (previousSession.quota != quota) {
+            previousSession.releaseQuota();
+            if (quota != null) {
+                quota.addSubscriptions(previousSession.subscriptions.size());
+            }
+        }
+        previousSession.subscriptions.clear();
+    }
+
+    /**
+     * Takes a message from the publish rate of the token.
+     *
+     * @return false if the publish rate of the token is exceeded
+     */
+    public boolean tryPublish() {
+        return quota == null || quota.tryPublish();
+    }
+
+    /**
+     * Releases the subscriptions of this session from the quota of its token, once the session ended.
+     */
+    public void releaseQuota() {
+        if (quota != null) {
+            quota.releaseSubscriptions(subscriptions.size());
+        }
+    }
+
+    public boolean isSubscribed(String subject) {
+        return subscriptions.contains(RevokedTokenIds.hash(subject));
+    }
+
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    public boolean isRevoked() {
+        return revoked;
+    }
+
+    public void revoke() {
+        revoked = true;
     }
 
     public void disconnect() {
@@ -0,0 +1,92 @@
+package com.migratorydata.authorization.client;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Secondary index of the sessions by a claim of their token, e.g. the JWT ID, so that the sessions affected by a
+ * change of the portal are found without scanning the whole registry.
+ *
+ * Adding and removing a session is O(1). The set of sessions of a key is only modified while its bin of the map is
+ * locked, and the empty sets are removed. A key with a single session, e.g. the JWT ID of most tokens, maps to the
+ * session itself rather than to a set.
+ */
+@SuppressWarnings("unchecked")
+public class SessionIndex<K> {
+    private final Function<Session, K> keyOf;
+    private final ConcurrentHashMap<K, Object> sessions = new ConcurrentHashMap<>(); // a Session or a Set<Session>
+
+    public SessionIndex(Function<Session, K> keyOf) {
+        this.keyOf = keyOf;
+    }
+
+    public void add(Session session) {
+        K key = keyOf.apply(session);
+        if (key == null) {
+            return;
+        }
+        sessions.compute(key, (k, value) -> {
+            if (value == null || value == session) {
+                return session;
+            }
+            if (value instanceof Session) {
+                // sessions are compared by identity, as they do not override equals()
+                Set<Session> keySessions = new HashSet<>(4);
+                keySessions.add((Session) value);
+                keySessions.add(session);
+                return keySessions;
+            }
+            ((Set<Session>) value).add(session);
+            return value;
+        });
+    }
+
+    public void remove(Session session) {
+        K key = keyOf.apply(session);
+        if (key == null) {
+            return;
+        }
+        sessions.computeIfPresent(key, (k, value) -> {
+            if (value instanceof Session) {
+                return value == session ? null : value;
+            }
+            Set<Session> keySessions = (Set<Session>) value;
+            keySessions.remove(session);
+            return keySessions.isEmpty() ? null : keySessions;
+        });
+    }
+
+    /**
+     * Returns a copy of the sessions having the given key.
+     */
+    public List<Session> get(K key) {
+        List<Session> keySessions = new ArrayList<>();
+        sessions.computeIfPresent(key, (k, value) -> {
+            if (value instanceof Session) {
+                keySessions.add((Session) value);
+            } else {
+                keySessions.addAll((Set<Session>) value);
+            }
+            return value;
+        });
+        return keySessions;
+    }
+
+    /**
+     * Returns the keys of the index, e.g. to look for the sessions affected by a large change.
+     */
+    public Set<K> keys() {
+        return sessions.keySet();
+    }
+
+    /**
+     * Returns the number of distinct keys.
+     */
+    public int size() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,103 @@
+package com.migratorydata.authorization.client;
+
+import com.migratorydata.authorization.token.RevokedTokenIds;
+import com.migratorydata.authorization.token.SigningKeyIds;
+import com.migratorydata.authorization.token.Token;
+import com.migratorydata.extensions.authorization.v2.client.Client;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The sessions of the connected clients, keyed by the identity of their Client object, so that clients sharing the
+ * same IP address, e.g. behind a NAT, have distinct sessions.
+ *
+ * The map is split into segments which are locked independently on connect and disconnect, while lookups on the
+ * subscribe and publish paths never lock. The sessions are also indexed by the hash of the JWT ID and by the ID of
+ * the signing key of their token.
+ */
+public class SessionRegistry {
+    private final ConcurrentHashMap<ClientKey, Session> sessions;
+    private final SessionIndex<Long> sessionsByTokenId = new SessionIndex<>(session ->
+            session.getToken() != null && session.getToken().getIdHash() != Token.NO_ID_HASH ? session.getToken().getIdHash() : null);
+    private final SessionIndex<Integer> sessionsBySigningKeyId = new SessionIndex<>(session ->
+            session.getToken() != null && session.getToken().getSigningKeyId() != SigningKeyIds.NO_ID ? session.getToken().getSigningKeyId() : null);
+
+    public SessionRegistry(int concurrencyLevel) {
+        // the clients are compared by identity (==) instead of equals(); as each session references its client, weak
+        // keys would never be collected and would only cost a reference and the processing of its queue per write
+        this.sessions = new ConcurrentHashMap<>(16, 0.75f, concurrencyLevel);
+    }
+
+    public Session get(Client client) {
+        return sessions.get(new ClientKey(client));
+    }
+
+    /**
+     * Adds the session of a client.
+     *
+     * @return the previous session of the client, or null if none
+     */
+    public Session put(Session session) {
+        sessionsByTokenId.add(session);
+        sessionsBySigningKeyId.add(session);
+        Session previousSession = sessions.put(new ClientKey(session.getClient()), session);
+        if (previousSession != null) {
+            sessionsByTokenId.remove(previousSession);
+            sessionsBySigningKeyId.remove(previousSession);
+        }
+        return previousSession;
+    }
+
+    /**
+     * Removes the session of a client.
+     *
+     * @return the removed session, or null if none
+     */
+    public Session remove(Client client) {
+        Session session = sessions.remove(new ClientKey(client));
+        if (session != null) {
+            sessionsByTokenId.remove(session);
+            sessionsBySigningKeyId.remove(session);
+        }
+        return session;
+    }
+
+    /**
+     * Returns the sessions whose token has the given JWT ID.
+     */
+    public List<Session> getSessionsByTokenId(String tokenId) {
+        return getSessionsByTokenIdHash(RevokedTokenIds.hash(tokenId));
+    }
+
+    /**
+     * Returns the sessions whose token has a JWT ID with the given hash, see RevokedTokenIds.hash().
+     */
+    public List<Session> getSessionsByTokenIdHash(long tokenIdHash) {
+        return sessionsByTokenId.get(tokenIdHash);
+    }
+
+    /**
+     * Returns the distinct hashes of the JWT IDs of the tokens of the sessions.
+     */
+    public Set<Long> getTokenIdHashes() {
+        return sessionsByTokenId.keys();
+    }
+
+    public Collection<Session> getSessions() {
+        return sessions.values();
+    }
+
+    /**
+     * Returns the sessions whose token is signed with the given signing key.
+     */
+    public List<Session> getSessionsBySigningKeyId(String signingKeyId) {
+        return sessionsBySigningKeyId.get(SigningKeyIds.find(signingKeyId));
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
@@ -0,0 +1,103 @@
+package com.migratorydata.authorization.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of threads which verify the tokens of the connecting clients, so that a reconnect storm does not block
+ * the server threads which deliver the subscribe and publish events.
+ *
+ * The verifications are queued up to a maximum depth, beyond which they are rejected at once, so that the client is
+ * told to retry instead of waiting behind a queue it cannot drain in time. Each worker takes all the verifications
+ * queued at once, up to a batch size, so that the queue is locked once per batch rather than once per client.
+ */
+public class VerificationPool {
+    private final BlockingQueue<Runnable> queue;
+    private final Thread[] workers;
+    private final int maxBatchSize;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * @param threads the number of worker threads, or 0 for the number of available processors
+     * @param maxQueueSize the maximum number of verifications waiting for a worker
+     * @param maxBatchSize the maximum number of verifications taken at once by a worker
+     */
+    public VerificationPool(int threads, int maxQueueSize, int maxBatchSize) {
+        // the producers and the workers lock distinct ends of a linked queue
+        this.queue = new LinkedBlockingQueue<>(maxQueueSize);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.workers = new Thread[threads > 0 ? threads : Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::work, "authorization-verification-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues a verification.
+     *
+     * @return false if the queue is full, in which case the verification is not run
+     */
+    public boolean execute(Runnable verification) {
+        if (!queue.offer(verification)) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private void work() {
+        List<Runnable> batch = new ArrayList<>(maxBatchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, maxBatchSize - 1);
+            batches.increment();
+            for (Runnable verification : batch) {
+                try {
+                    verification.run();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+            completed.add(batch.size());
+            batch.clear();
+        }
+    }
+
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public void shutdown() {
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+}
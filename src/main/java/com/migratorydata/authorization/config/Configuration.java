@@ -1,8 +1,12 @@
 package com.migratorydata.authorization.config;
 
+import com.migratorydata.authorization.token.TokenQuotas;
+
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 public class Configuration {
@@ -23,6 +27,133 @@ public class Configuration {
     public static final String PORTAL_PASSWORD = "com.migratorydata.portal.password";
     public static final String PORTAL_PASSWORD_DEFAULT = "my-password";
     
+    // Maximum number of verified JWT tokens cached so that clients reconnecting with the same token skip its verification
+    public static final String TOKEN_CACHE_MAX_SIZE = "tokenCacheMaxSize";
+    public static final String TOKEN_CACHE_MAX_SIZE_DEFAULT = "100000";
+
+    // Timeouts of the requests to the portal: to establish the connection, and to complete the whole request
+    public static final String PORTAL_CONNECT_TIMEOUT_MILLIS = "portalConnectTimeoutMillis";
+    public static final String PORTAL_CONNECT_TIMEOUT_MILLIS_DEFAULT = "5000";
+
+    public static final String PORTAL_REQUEST_TIMEOUT_MILLIS = "portalRequestTimeoutMillis";
+    public static final String PORTAL_REQUEST_TIMEOUT_MILLIS_DEFAULT = "30000";
+
+    // Maximum delay between two requests to a portal endpoint which keeps failing
+    public static final String PORTAL_MAX_BACKOFF_SECONDS = "portalMaxBackoffSeconds";
+    public static final String PORTAL_MAX_BACKOFF_SECONDS_DEFAULT = "300";
+
+    // Whether the hashes of the JWT IDs of the revoked tokens are stored off-heap
+    public static final String REVOKED_TOKENS_OFF_HEAP = "revokedTokensOffHeap";
+    public static final String REVOKED_TOKENS_OFF_HEAP_DEFAULT = "false";
+
+    // Number of segments of the session registry which can be updated concurrently on client connect and disconnect
+    public static final String SESSION_REGISTRY_CONCURRENCY_LEVEL = "sessionRegistryConcurrencyLevel";
+    public static final String SESSION_REGISTRY_CONCURRENCY_LEVEL_DEFAULT = "64";
+
+    // What happens to the sessions whose token is signed with a signing key removed from the portal: either they are
+    // notified to renew their token within the given number of seconds, or they are disconnected
+    public static final String SIGNING_KEY_RETIREMENT_POLICY = "signingKeyRetirementPolicy";
+    public static final String SIGNING_KEY_RETIREMENT_POLICY_RENEW = "renew";
+    public static final String SIGNING_KEY_RETIREMENT_POLICY_DISCONNECT = "disconnect";
+    public static final String SIGNING_KEY_RETIREMENT_POLICY_DEFAULT = SIGNING_KEY_RETIREMENT_POLICY_RENEW;
+
+    public static final String SIGNING_KEY_RETIREMENT_RENEWAL_SECONDS = "signingKeyRetirementRenewalSeconds";
+    public static final String SIGNING_KEY_RETIREMENT_RENEWAL_SECONDS_DEFAULT = "60";
+
+    // Number of subjects of a subscribe request above which their authorization is split across the common ForkJoin
+    // pool in chunks of this size, 0 to always authorize them in the calling thread
+    public static final String SUBSCRIBE_PARALLEL_BATCH_SIZE = "subscribeParallelBatchSize";
+    public static final String SUBSCRIBE_PARALLEL_BATCH_SIZE_DEFAULT = "0";
+
+    // Maximum number of permissions of subjects cached for the sessions which share the same permissions, 0 to disable
+    public static final String DECISION_CACHE_MAX_SIZE = "decisionCacheMaxSize";
+    public static final String DECISION_CACHE_MAX_SIZE_DEFAULT = "65536";
+
+    // Maximum number of subjects which have an int ID, used to cache their permissions
+    public static final String SUBJECT_DICTIONARY_MAX_SIZE = "subjectDictionaryMaxSize";
+    public static final String SUBJECT_DICTIONARY_MAX_SIZE_DEFAULT = "65536";
+
+    // Whether the HMAC tokens are verified without jjwt, see HmacVerifier
+    public static final String FAST_HMAC_VERIFICATION = "fastHmacVerification";
+    public static final String FAST_HMAC_VERIFICATION_DEFAULT = "true";
+
+    // Where the tokens of the connecting clients are verified: either by the thread which delivers the event (inline), or
+    // by a bounded pool of threads (pool), which rejects the verifications queued beyond the given size
+    public static final String CONNECT_VERIFICATION_MODE = "connectVerificationMode";
+    public static final String CONNECT_VERIFICATION_MODE_INLINE = "inline";
+    public static final String CONNECT_VERIFICATION_MODE_POOL = "pool";
+    public static final String CONNECT_VERIFICATION_MODE_DEFAULT = CONNECT_VERIFICATION_MODE_INLINE;
+
+    public static final String CONNECT_VERIFICATION_THREADS = "connectVerificationThreads";
+    public static final String CONNECT_VERIFICATION_THREADS_DEFAULT = "0";
+
+    public static final String CONNECT_VERIFICATION_QUEUE_SIZE = "connectVerificationQueueSize";
+    public static final String CONNECT_VERIFICATION_QUEUE_SIZE_DEFAULT = "100000";
+
+    public static final String CONNECT_VERIFICATION_BATCH_SIZE = "connectVerificationBatchSize";
+    public static final String CONNECT_VERIFICATION_BATCH_SIZE_DEFAULT = "64";
+
+    // Maximum length of a JWT token, the longer tokens are rejected before being decoded
+    public static final String TOKEN_MAX_LENGTH = "tokenMaxLength";
+    public static final String TOKEN_MAX_LENGTH_DEFAULT = "8192";
+
+    // Maximum number of rejected JWT tokens remembered, and for how long, so that the clients which retry with the same
+    // token are rejected without verifying it again
+    public static final String REJECTED_TOKEN_CACHE_MAX_SIZE = "rejectedTokenCacheMaxSize";
+    public static final String REJECTED_TOKEN_CACHE_MAX_SIZE_DEFAULT = "10000";
+
+    public static final String REJECTED_TOKEN_CACHE_TTL_SECONDS = "rejectedTokenCacheTtlSeconds";
+    public static final String REJECTED_TOKEN_CACHE_TTL_SECONDS_DEFAULT = "60";
+
+    // Maximum number of connections per second of an IP address, with a burst of connections at once, 0 for no limit.
+    // The limits of up to the given number of addresses are kept, and the addresses of the allowlist are not limited
+    public static final String CONNECT_RATE_LIMIT = "connectRateLimit";
+    public static final String CONNECT_RATE_LIMIT_DEFAULT = "0";
+
+    public static final String CONNECT_RATE_LIMIT_BURST = "connectRateLimitBurst";
+    public static final String CONNECT_RATE_LIMIT_BURST_DEFAULT = "20";
+
+    public static final String CONNECT_RATE_LIMIT_MAX_ADDRESSES = "connectRateLimitMaxAddresses";
+    public static final String CONNECT_RATE_LIMIT_MAX_ADDRESSES_DEFAULT = "65536";
+
+    public static final String CONNECT_RATE_LIMIT_ALLOWLIST = "connectRateLimitAllowlist";
+    public static final String CONNECT_RATE_LIMIT_ALLOWLIST_DEFAULT = "";
+
+    // Whether the connections whose token is not cached are rejected when too many tokens are being verified, with a
+    // limit on the verifications in flight cut when a verification takes longer than the latency target and raised
+    // back otherwise, within the min and max limits
+    public static final String CONNECT_LOAD_SHEDDING = "connectLoadShedding";
+    public static final String CONNECT_LOAD_SHEDDING_DEFAULT = "false";
+
+    public static final String CONNECT_LATENCY_TARGET_MILLIS = "connectLatencyTargetMillis";
+    public static final String CONNECT_LATENCY_TARGET_MILLIS_DEFAULT = "100";
+
+    public static final String CONNECT_CONCURRENCY_INITIAL_LIMIT = "connectConcurrencyInitialLimit";
+    public static final String CONNECT_CONCURRENCY_INITIAL_LIMIT_DEFAULT = "64";
+
+    public static final String CONNECT_CONCURRENCY_MIN_LIMIT = "connectConcurrencyMinLimit";
+    public static final String CONNECT_CONCURRENCY_MIN_LIMIT_DEFAULT = "4";
+
+    public static final String CONNECT_CONCURRENCY_MAX_LIMIT = "connectConcurrencyMaxLimit";
+    public static final String CONNECT_CONCURRENCY_MAX_LIMIT_DEFAULT = "1000";
+
+    // Default quotas of the sessions of a JWT token, overridden by the `quota` claim of the token: the messages per
+    // second and at once published, and the subscriptions, 0 for no limit. The quotas are shared by the sessions of the
+    // same JWT ID (token), or of the same app (app)
+    public static final String QUOTA_SCOPE = "quotaScope";
+    public static final String QUOTA_SCOPE_TOKEN = "token";
+    public static final String QUOTA_SCOPE_APP = "app";
+    public static final String QUOTA_SCOPE_DEFAULT = QUOTA_SCOPE_TOKEN;
+
+    public static final String PUBLISH_RATE_LIMIT = "publishRateLimit";
+    public static final String PUBLISH_RATE_LIMIT_DEFAULT = "0";
+
+    public static final String PUBLISH_RATE_BURST = "publishRateBurst";
+    public static final String PUBLISH_RATE_BURST_DEFAULT = "0";
+
+    public static final String MAX_SUBSCRIPTIONS = "maxSubscriptions";
+    public static final String MAX_SUBSCRIPTIONS_DEFAULT = "0";
+
     public static final String PORTAL_REVOKED_TOKENS_PATH_DEFAULT = "api/v1/gateway/revoked_tokens";
     public static final String PORTAL_SIGNING_KEYS_PATH_DEFAULT = "api/v1/gateway/sign_keys";
 
@@ -32,6 +163,10 @@ public class Configuration {
         properties = loadConfiguration();
     }
 
+    public Configuration(Properties properties) {
+        this.properties = properties;
+    }
+
     private final static Configuration config = new Configuration();
 
     public static Configuration getConfiguration() {
@@ -74,7 +209,7 @@ public class Configuration {
     }
 
     public int getMillisBeforeRenewal() {
-        return Integer.parseInt(properties.getProperty(RENEW_TOKEN_BEFORE_SECONDS)) * 1000;
+        return Integer.parseInt(properties.getProperty(RENEW_TOKEN_BEFORE_SECONDS, RENEW_TOKEN_BEFORE_SECONDS_DEFAULT)) * 1000;
     }
 
     public String getPortalUrl() {
@@ -97,6 +232,140 @@ public class Configuration {
         return Integer.parseInt(properties.getProperty(PORTAL_REQUEST_INTERVAL_SECONDS, PORTAL_REQUEST_INTERVAL_SECONDS_DEFAULT));
     }
 
+    public int getPortalConnectTimeoutMillis() {
+        return Integer.parseInt(properties.getProperty(PORTAL_CONNECT_TIMEOUT_MILLIS, PORTAL_CONNECT_TIMEOUT_MILLIS_DEFAULT));
+    }
+
+    public int getPortalRequestTimeoutMillis() {
+        return Integer.parseInt(properties.getProperty(PORTAL_REQUEST_TIMEOUT_MILLIS, PORTAL_REQUEST_TIMEOUT_MILLIS_DEFAULT));
+    }
+
+    public long getPortalMaxBackoffMillis() {
+        return Long.parseLong(properties.getProperty(PORTAL_MAX_BACKOFF_SECONDS, PORTAL_MAX_BACKOFF_SECONDS_DEFAULT)) * 1000;
+    }
+
+    public int getTokenCacheMaxSize() {
+        return Integer.parseInt(properties.getProperty(TOKEN_CACHE_MAX_SIZE, TOKEN_CACHE_MAX_SIZE_DEFAULT));
+    }
+
+    public boolean isRevokedTokensOffHeap() {
+        return Boolean.parseBoolean(properties.getProperty(REVOKED_TOKENS_OFF_HEAP, REVOKED_TOKENS_OFF_HEAP_DEFAULT));
+    }
+
+    public int getSessionRegistryConcurrencyLevel() {
+        return Integer.parseInt(properties.getProperty(SESSION_REGISTRY_CONCURRENCY_LEVEL, SESSION_REGISTRY_CONCURRENCY_LEVEL_DEFAULT));
+    }
+
+    public boolean isSigningKeyRetirementDisconnect() {
+        return SIGNING_KEY_RETIREMENT_POLICY_DISCONNECT.equalsIgnoreCase(properties.getProperty(SIGNING_KEY_RETIREMENT_POLICY, SIGNING_KEY_RETIREMENT_POLICY_DEFAULT).trim());
+    }
+
+    public long getSigningKeyRetirementRenewalMillis() {
+        return Long.parseLong(properties.getProperty(SIGNING_KEY_RETIREMENT_RENEWAL_SECONDS, SIGNING_KEY_RETIREMENT_RENEWAL_SECONDS_DEFAULT)) * 1000;
+    }
+
+    public int getSubscribeParallelBatchSize() {
+        return Integer.parseInt(properties.getProperty(SUBSCRIBE_PARALLEL_BATCH_SIZE, SUBSCRIBE_PARALLEL_BATCH_SIZE_DEFAULT));
+    }
+
+    public int getDecisionCacheMaxSize() {
+        return Integer.parseInt(properties.getProperty(DECISION_CACHE_MAX_SIZE, DECISION_CACHE_MAX_SIZE_DEFAULT));
+    }
+
+    public int getSubjectDictionaryMaxSize() {
+        return Integer.parseInt(properties.getProperty(SUBJECT_DICTIONARY_MAX_SIZE, SUBJECT_DICTIONARY_MAX_SIZE_DEFAULT));
+    }
+
+    public boolean isFastHmacVerification() {
+        return Boolean.parseBoolean(properties.getProperty(FAST_HMAC_VERIFICATION, FAST_HMAC_VERIFICATION_DEFAULT));
+    }
+
+    public boolean isConnectVerificationPool() {
+        return CONNECT_VERIFICATION_MODE_POOL.equalsIgnoreCase(properties.getProperty(CONNECT_VERIFICATION_MODE, CONNECT_VERIFICATION_MODE_DEFAULT).trim());
+    }
+
+    public int getConnectVerificationThreads() {
+        return Integer.parseInt(properties.getProperty(CONNECT_VERIFICATION_THREADS, CONNECT_VERIFICATION_THREADS_DEFAULT));
+    }
+
+    public int getConnectVerificationQueueSize() {
+        return Integer.parseInt(properties.getProperty(CONNECT_VERIFICATION_QUEUE_SIZE, CONNECT_VERIFICATION_QUEUE_SIZE_DEFAULT));
+    }
+
+    public int getConnectVerificationBatchSize() {
+        return Integer.parseInt(properties.getProperty(CONNECT_VERIFICATION_BATCH_SIZE, CONNECT_VERIFICATION_BATCH_SIZE_DEFAULT));
+    }
+
+    public int getTokenMaxLength() {
+        return Integer.parseInt(properties.getProperty(TOKEN_MAX_LENGTH, TOKEN_MAX_LENGTH_DEFAULT));
+    }
+
+    public int getRejectedTokenCacheMaxSize() {
+        return Integer.parseInt(properties.getProperty(REJECTED_TOKEN_CACHE_MAX_SIZE, REJECTED_TOKEN_CACHE_MAX_SIZE_DEFAULT));
+    }
+
+    public long getRejectedTokenCacheTtlMillis() {
+        return Long.parseLong(properties.getProperty(REJECTED_TOKEN_CACHE_TTL_SECONDS, REJECTED_TOKEN_CACHE_TTL_SECONDS_DEFAULT)) * 1000;
+    }
+
+    public double getConnectRateLimit() {
+        return Double.parseDouble(properties.getProperty(CONNECT_RATE_LIMIT, CONNECT_RATE_LIMIT_DEFAULT));
+    }
+
+    public int getConnectRateLimitBurst() {
+        return Integer.parseInt(properties.getProperty(CONNECT_RATE_LIMIT_BURST, CONNECT_RATE_LIMIT_BURST_DEFAULT));
+    }
+
+    public int getConnectRateLimitMaxAddresses() {
+        return Integer.parseInt(properties.getProperty(CONNECT_RATE_LIMIT_MAX_ADDRESSES, CONNECT_RATE_LIMIT_MAX_ADDRESSES_DEFAULT));
+    }
+
+    public List<String> getConnectRateLimitAllowlist() {
+        List<String> allowlist = new ArrayList<>();
+        for (String address : properties.getProperty(CONNECT_RATE_LIMIT_ALLOWLIST, CONNECT_RATE_LIMIT_ALLOWLIST_DEFAULT).split(",")) {
+            if (!address.trim().isEmpty()) {
+                allowlist.add(address.trim());
+            }
+        }
+        return allowlist;
+    }
+
+    public boolean isConnectLoadShedding() {
+        return Boolean.parseBoolean(properties.getProperty(CONNECT_LOAD_SHEDDING, CONNECT_LOAD_SHEDDING_DEFAULT));
+    }
+
+    public long getConnectLatencyTargetMillis() {
+        return Long.parseLong(properties.getProperty(CONNECT_LATENCY_TARGET_MILLIS, CONNECT_LATENCY_TARGET_MILLIS_DEFAULT));
+    }
+
+    public int getConnectConcurrencyInitialLimit() {
+        return Integer.parseInt(properties.getProperty(CONNECT_CONCURRENCY_INITIAL_LIMIT, CONNECT_CONCURRENCY_INITIAL_LIMIT_DEFAULT));
+    }
+
+    public int getConnectConcurrencyMinLimit() {
+        return Integer.parseInt(properties.getProperty(CONNECT_CONCURRENCY_MIN_LIMIT, CONNECT_CONCURRENCY_MIN_LIMIT_DEFAULT));
+    }
+
+    public int getConnectConcurrencyMaxLimit() {
+        return Integer.parseInt(properties.getProperty(CONNECT_CONCURRENCY_MAX_LIMIT, CONNECT_CONCURRENCY_MAX_LIMIT_DEFAULT));
+    }
+
+    public TokenQuotas.Scope getQuotaScope() {
+        return QUOTA_SCOPE_APP.equalsIgnoreCase(properties.getProperty(QUOTA_SCOPE, QUOTA_SCOPE_DEFAULT).trim()) ? TokenQuotas.Scope.APP : TokenQuotas.Scope.TOKEN;
+    }
+
+    public double getPublishRateLimit() {
+        return Double.parseDouble(properties.getProperty(PUBLISH_RATE_LIMIT, PUBLISH_RATE_LIMIT_DEFAULT));
+    }
+
+    public int getPublishRateBurst() {
+        return Integer.parseInt(properties.getProperty(PUBLISH_RATE_BURST, PUBLISH_RATE_BURST_DEFAULT));
+    }
+
+    public int getMaxSubscriptions() {
+        return Integer.parseInt(properties.getProperty(MAX_SUBSCRIPTIONS, MAX_SUBSCRIPTIONS_DEFAULT));
+    }
+
     private static String getPortalPathUrl(String url, String path) {
         if (url == null || url.isEmpty()) {
             return null;
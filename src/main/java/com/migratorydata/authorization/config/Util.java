@@ -1,71 +1,37 @@
 package com.migratorydata.authorization.config;
 
-import io.jsonwebtoken.*;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
-import org.json.JSONArray;
 
-import java.io.BufferedInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.security.Key;
-import java.util.regex.Pattern;
 
 public class Util {
 
-    // SUBJECT_SYNTAX:
-    //   ^/                -> must start with '/'
-    //   (?:[^/]+/)*       -> zero or more intermediate segments followed by '/'
-    //   (?:[^/]+|\*)$      -> must end with a last segment: either a name or '*'
-    // Regex note:       non-capturing group (more efficient if no need to match individual segments)
-    // Valid examples:   /* , /a/b , /foo/bar/baz
+    // A subject must start with '/', and have non-empty segments separated by '/', with no trailing '/'. A subject with
+    // a single segment is only valid as "/*".
+    // Valid examples:   /* , /a/b , /foo/bar/baz , /a/*/b
     // Invalid examples: /a , / , // , /a//b , /foo/
-    private static final Pattern SUBJECT_SYNTAX = Pattern.compile("^/(?:[^/]+/)*(?:[^/]+|\\*)$");
+    // The subject is checked in a single pass, without regex, as it runs for each subject of each token parsed.
     public static boolean isSubjectValid(String subject) {
-        String sbj = subject;
-        int index = subject.indexOf("/", 1);
-        // If the subject has only one segment, the only valid case is "/*"
-        if (index == -1) {
-            sbj = subject.substring(1);
-            if ("*".equals(sbj)) {
-                return true;
-            }
+        int length = subject.length();
+        if (length < 2) {
+            return false;
         }
-        return SUBJECT_SYNTAX.matcher(sbj).matches();
-    }
-
-    public static String inputStreamToString(InputStream inputStream) {
-        final int bufferSize = 8 * 1024;
-        byte[] buffer = new byte[bufferSize];
-        final StringBuilder builder = new StringBuilder();
-        try (BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream, bufferSize)) {
-            int bytesRead = bufferedInputStream.read(buffer);
-            while (bytesRead != -1) {
-                builder.append(new String(buffer, 0, bytesRead));
-                bytesRead = bufferedInputStream.read(buffer);
-            }
-        } catch (IOException e) {
-            System.err.println("Failed to read input stream: " + e.getMessage());
+        if (subject.indexOf('/', 1) == -1) {
+            // as before, the first character of a subject with a single segment is not checked
+            return length == 2 && subject.charAt(1) == '*';
         }
-        return builder.toString();
-    }
-
-    public static JSONArray fetchFromUrl(String urlPath, String apiKey) {
-        try {
-            URL url = new URL(urlPath);
-            HttpURLConnection con = (HttpURLConnection) url.openConnection();
-            con.setRequestMethod("GET");
-            con.setRequestProperty("Authorization", "Bearer " + apiKey);
-            InputStream inputStream = con.getInputStream();
-            JSONArray result = new JSONArray(inputStreamToString(inputStream));
-            inputStream.close();
-            return result;
-        } catch (Exception e) {
-            System.err.println("Failed to fetch JSON from portal's url: " + urlPath + ": " + e.getMessage());
+        if (subject.charAt(0) != '/' || subject.charAt(length - 1) == '/') {
+            return false;
         }
-        return null;
+        for (int i = 1; i < length; i++) {
+            if (subject.charAt(i) == '/' && subject.charAt(i - 1) == '/') {
+                return false;
+            }
+        }
+        return true;
     }
 
     public static JwtParser createJwtParser(String signingKey) {
@@ -73,28 +39,4 @@ public class Util {
         JwtParser jwtParser = Jwts.parser().setSigningKey(secret).build();
         return jwtParser;
     }
-
-    public static Claims getClaimsWithoutVerification(String token) {
-        final Claims[] jwtClaims = {null};
-        SigningKeyResolver signingKeyResolver = new SigningKeyResolverAdapter() {
-            Claims claims;
-            @Override
-            public Key resolveSigningKey(JwsHeader header, Claims claims) {
-                // Examine header and claims
-                jwtClaims[0] = claims;
-                return null; // will throw exception, can be caught in caller
-            }
-        };
-
-        try {
-            return Jwts.parser()
-                    .setSigningKeyResolver(signingKeyResolver)
-                    .build()
-                    .parseClaimsJwt(token)
-                    .getPayload();
-        } catch (Exception e) {
-            // no signing key on client. We trust that this JWT came from the server and has been verified there
-        }
-        return jwtClaims[0];
-    }
 }
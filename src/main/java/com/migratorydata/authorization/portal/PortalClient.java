@@ -0,0 +1,176 @@
+package com.migratorydata.authorization.portal;
+
+import com.google.common.io.CountingInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Asynchronous HTTP client of the portal, shared by all the endpoints.
+ *
+ * Requests run on a small pool of threads, so a slow endpoint does not delay the others. Each request has a connect
+ * timeout and a deadline for the whole exchange, after which its connection is closed. Responses may be compressed
+ * with gzip or deflate. Response bodies, including those of the error responses, are always read to the end, so that
+ * the JDK keeps the connections alive and reuses them for the next requests.
+ */
+public class PortalClient {
+    private static final int THREADS = 2;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+
+    private final String apiKey;
+    private final int connectTimeoutMillis;
+    private final int requestTimeoutMillis;
+
+    public PortalClient(String apiKey, int connectTimeoutMillis, int requestTimeoutMillis) {
+        this.apiKey = apiKey;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    /**
+     * Reads the response of a request, on the thread of the request.
+     */
+    public interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
+
+    /**
+     * Sends a GET request to the given url of an endpoint.
+     *
+     * @return a future completed with the value returned by the response handler, or completed exceptionally if the
+     * request failed, timed out, or the response handler threw an exception
+     */
+    public <T> CompletableFuture<T> get(PortalEndpoint endpoint, String url, Map<String, String> headers, ResponseHandler<T> responseHandler) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return execute(endpoint, url, headers, responseHandler);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private <T> T execute(PortalEndpoint endpoint, String url, Map<String, String> headers, ResponseHandler<T> responseHandler) throws IOException {
+        long start = System.nanoTime();
+        long bytes = 0;
+        boolean success = false;
+
+        HttpURLConnection con = (HttpURLConnection) new URL(url).openConnection();
+        // the read timeout applies to each read, so the deadline of the whole request is enforced by closing the connection
+        ScheduledFuture<?> deadline = watchdog.schedule(con::disconnect, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            con.setRequestMethod("GET");
+            con.setUseCaches(false);
+            con.setConnectTimeout(connectTimeoutMillis);
+            con.setReadTimeout(requestTimeoutMillis);
+            con.setRequestProperty("Authorization", "Bearer " + apiKey);
+            con.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                con.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            int status = con.getResponseCode();
+            InputStream inputStream = (status >= 400) ? con.getErrorStream() : con.getInputStream();
+            CountingInputStream countingInputStream = new CountingInputStream(inputStream != null ? inputStream : new ByteArrayInputStream(new byte[0]));
+            try (InputStream body = decode(countingInputStream, con.getContentEncoding())) {
+                T result = responseHandler.handle(new Response(con, status, body, countingInputStream));
+                drain(body);
+                success = true;
+                return result;
+            } finally {
+                bytes = countingInputStream.getCount();
+            }
+        } finally {
+            deadline.cancel(false);
+            endpoint.recordRequest(System.nanoTime() - start, bytes, success);
+        }
+    }
+
+    private static InputStream decode(InputStream inputStream, String contentEncoding) throws IOException {
+        if ("gzip".equalsIgnoreCase(contentEncoding)) {
+            return new GZIPInputStream(inputStream);
+        }
+        if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            return new InflaterInputStream(inputStream);
+        }
+        return inputStream;
+    }
+
+    private static void drain(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[8 * 1024];
+        while (inputStream.read(buffer) != -1) {
+            // discard the rest of the body
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * The response to a request, valid only while its response handler runs.
+     */
+    public static class Response {
+        private final HttpURLConnection con;
+        private final int status;
+        private final InputStream body;
+        private final CountingInputStream countingInputStream;
+
+        Response(HttpURLConnection con, int status, InputStream body, CountingInputStream countingInputStream) {
+            this.con = con;
+            this.status = status;
+            this.body = body;
+            this.countingInputStream = countingInputStream;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getHeader(String name) {
+            return con.getHeaderField(name);
+        }
+
+        /**
+         * Returns the decompressed body of the response.
+         */
+        public InputStream getBody() {
+            return body;
+        }
+
+        /**
+         * Returns the number of bytes of the body received so far, before decompression.
+         */
+        public long getBytesReceived() {
+            return countingInputStream.getCount();
+        }
+
+        public String getBodyAsString() throws IOException {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8 * 1024];
+            int bytesRead;
+            while ((bytesRead = body.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, bytesRead);
+            }
+            return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.migratorydata.authorization.portal;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An endpoint of the portal polled periodically, with its backoff state and its metrics.
+ *
+ * A poll starts only if the previous one has completed, and after a failure the next polls are skipped for an
+ * exponential backoff with jitter, i.e. a random delay between half and all of min(maxBackoff, interval * 2^(failures - 1)).
+ */
+public class PortalEndpoint {
+    private final String name;
+    private final String url;
+    private final long intervalMillis;
+    private final long maxBackoffMillis;
+
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private volatile long nextPollTimeMillis;
+    private volatile int failures;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder totalLatencyMicros = new LongAdder();
+    private final AtomicLong maxLatencyMicros = new AtomicLong();
+    private volatile long lastLatencyMicros;
+
+    public PortalEndpoint(String name, String url, long intervalMillis, long maxBackoffMillis) {
+        this.name = name;
+        this.url = url;
+        this.intervalMillis = intervalMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Starts a poll unless the previous one is still running or the endpoint is backing off after failures.
+     *
+     * @return true if the poll was started, and then completePoll() must be called when it completes
+     */
+    public boolean startPoll(long currentTimeMillis) {
+        if (currentTimeMillis < nextPollTimeMillis) {
+            return false;
+        }
+        return polling.compareAndSet(false, true);
+    }
+
+    public void completePoll(long currentTimeMillis, boolean success) {
+        if (success) {
+            failures = 0;
+            nextPollTimeMillis = 0;
+        } else {
+            failures++;
+            nextPollTimeMillis = currentTimeMillis + getBackoffMillis(failures);
+        }
+        polling.set(false);
+    }
+
+    long getBackoffMillis(int failures) {
+        long backoffMillis = Math.min(maxBackoffMillis, intervalMillis << Math.min(failures - 1, 30));
+        return backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    void recordRequest(long latencyNanos, long bytesReceived, boolean success) {
+        long latencyMicros = latencyNanos / 1000;
+        requests.increment();
+        if (!success) {
+            errors.increment();
+        }
+        bytes.add(bytesReceived);
+        totalLatencyMicros.add(latencyMicros);
+        maxLatencyMicros.accumulateAndGet(latencyMicros, Math::max);
+        lastLatencyMicros = latencyMicros;
+    }
+
+    /**
+     * Adds the metrics of this endpoint to the given map, prefixed by `portal.<name>.`
+     */
+    public void putMetrics(Map<String, Long> metrics) {
+        String prefix = "portal." + name + ".";
+        metrics.put(prefix + "requests", requests.sum());
+        metrics.put(prefix + "errors", errors.sum());
+        metrics.put(prefix + "bytes", bytes.sum());
+        metrics.put(prefix + "latencyMicros.last", lastLatencyMicros);
+        metrics.put(prefix + "latencyMicros.max", maxLatencyMicros.get());
+        metrics.put(prefix + "latencyMicros.total", totalLatencyMicros.sum());
+        metrics.put(prefix + "failures", (long) failures);
+    }
+}
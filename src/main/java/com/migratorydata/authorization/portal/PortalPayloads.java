@@ -0,0 +1,211 @@
+package com.migratorydata.authorization.portal;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.migratorydata.authorization.token.RevokedTokenIds;
+import com.migratorydata.authorization.token.Token;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming readers of the JSON payloads of the portal.
+ *
+ * The payloads are parsed from the response body as they arrive, and their entries are written straight into the
+ * target structures, so the memory used by a sync does not depend on the size of the payload. The body is decoded as
+ * UTF-8 by the parser, which handles the multi-byte characters split across reads.
+ */
+public class PortalPayloads {
+    public static final String SIGNING_KEY_ID_FIELD = "uuid";
+    public static final String SIGNING_KEY_FIELD = "signKey";
+
+    // the JWT IDs added by a payload are kept up to this number, e.g. to find the sessions of the newly revoked tokens
+    public static final int MAX_ADDED_IDS = 10_000;
+
+    // the response body is closed by the portal client, after it reads the rest of the body to reuse the connection
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    /**
+     * Applies a payload of the revoked tokens endpoint to the given set, without publishing the changes, see
+     * RevokedTokensSync for its format. A full snapshot replaces the whole set.
+     */
+    public static RevokedTokensChanges readRevokedTokens(InputStream body, RevokedTokenIds revokedTokens) throws IOException {
+        RevokedTokensChanges changes = new RevokedTokensChanges();
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_ARRAY) {
+                // a full snapshot without version
+                changes.snapshot = true;
+                revokedTokens.startReplace();
+                addAll(parser, revokedTokens, changes);
+                changes.removed = revokedTokens.finishReplace();
+            } else if (token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if (RevokedTokensSync.VERSION_FIELD.equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                        changes.version = parser.getLongValue();
+                    } else if (RevokedTokensSync.REVOKED_FIELD.equals(field) && value == JsonToken.START_ARRAY) {
+                        changes.snapshot = true;
+                        revokedTokens.startReplace();
+                        addAll(parser, revokedTokens, changes);
+                        changes.removed = revokedTokens.finishReplace();
+                    } else if (RevokedTokensSync.ADDED_FIELD.equals(field) && value == JsonToken.START_ARRAY) {
+                        addAll(parser, revokedTokens, changes);
+                    } else if (RevokedTokensSync.REMOVED_FIELD.equals(field) && value == JsonToken.START_ARRAY) {
+                        changes.removed += removeAll(parser, revokedTokens);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                throw new IOException("Expected a JSON array or object of revoked tokens");
+            }
+        }
+        return changes;
+    }
+
+    private static void addAll(JsonParser parser, RevokedTokenIds revokedTokens, RevokedTokensChanges changes) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            String jwtId;
+            if (token == JsonToken.VALUE_STRING) {
+                jwtId = parser.getText();
+                if (!revokedTokens.add(jwtId)) {
+                    continue;
+                }
+            } else if (token == JsonToken.START_OBJECT) {
+                jwtId = addObject(parser, revokedTokens);
+                if (jwtId == null) {
+                    continue;
+                }
+            } else {
+                parser.skipChildren();
+                continue;
+            }
+            changes.added++;
+            if (changes.addedIds != null) {
+                if (changes.addedIds.size() < MAX_ADDED_IDS) {
+                    changes.addedIds.add(jwtId);
+                } else {
+                    changes.addedIds = null;
+                }
+            }
+        }
+    }
+
+    // an object with the fields `jti` and, optionally, `exp` in seconds like in the JWT tokens, returns the JWT ID if added
+    private static String addObject(JsonParser parser, RevokedTokenIds revokedTokens) throws IOException {
+        String jwtId = null;
+        long expirationTimeMillis = -1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (Token.ID_FIELD.equals(field) && value == JsonToken.VALUE_STRING) {
+                jwtId = parser.getText();
+            } else if (Token.EXPIRATION_FIELD.equals(field) && value.isNumeric()) {
+                expirationTimeMillis = parser.getValueAsLong() * 1000;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (jwtId == null) {
+            return null;
+        }
+        boolean added = expirationTimeMillis == -1 ? revokedTokens.add(jwtId) : revokedTokens.add(jwtId, expirationTimeMillis);
+        return added ? jwtId : null;
+    }
+
+    private static int removeAll(JsonParser parser, RevokedTokenIds revokedTokens) throws IOException {
+        int removed = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_STRING && revokedTokens.remove(parser.getText())) {
+                removed++;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Reads a payload of the signing keys endpoint, i.e. a JSON array of objects with the fields `uuid` and `signKey`.
+     *
+     * @return the signing keys by their ID, in the order of the payload
+     */
+    public static Map<String, String> readSigningKeys(InputStream body) throws IOException {
+        Map<String, String> signingKeys = new LinkedHashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of signing keys");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                String signingKeyId = null;
+                String signingKey = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if (SIGNING_KEY_ID_FIELD.equals(field) && value == JsonToken.VALUE_STRING) {
+                        signingKeyId = parser.getText();
+                    } else if (SIGNING_KEY_FIELD.equals(field) && value == JsonToken.VALUE_STRING) {
+                        signingKey = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (signingKeyId != null && signingKey != null) {
+                    signingKeys.put(signingKeyId, signingKey);
+                }
+            }
+        }
+        return signingKeys;
+    }
+
+    /**
+     * The changes applied by a payload of the revoked tokens endpoint.
+     */
+    public static class RevokedTokensChanges {
+        private boolean snapshot;
+        private long version = RevokedTokensSync.NO_VERSION;
+        private int added;
+        private List<String> addedIds = new ArrayList<>();
+        private int removed;
+
+        /**
+         * Returns true for a full snapshot of the list, false for the changes since a version.
+         */
+        public boolean isSnapshot() {
+            return snapshot;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public int getAddedCount() {
+            return added;
+        }
+
+        /**
+         * Returns the JWT IDs which were not revoked before this payload, or null if more than MAX_ADDED_IDS.
+         */
+        public List<String> getAddedIds() {
+            return addedIds;
+        }
+
+        public int getRemovedCount() {
+            return removed;
+        }
+    }
+}
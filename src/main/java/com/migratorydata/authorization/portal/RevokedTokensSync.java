@@ -0,0 +1,224 @@
+package com.migratorydata.authorization.portal;
+
+import com.migratorydata.authorization.token.RevokedTokenIds;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Incremental synchronization of the JWT IDs of the revoked tokens with the portal.
+ *
+ * The requests are conditional, i.e. they send the `ETag` and `Last-Modified` of the previous response as
+ * `If-None-Match` and `If-Modified-Since`, so that an unchanged list costs a `304 Not Modified` response. When the
+ * portal returns a version with the list, the next requests ask only for the changes since that version with the
+ * query parameter `since`, and the portal responds with:
+ *
+ *   {"version": 43, "added": ["jti-1", "jti-2"], "removed": ["jti-0"]}
+ *
+ * The portal responds with `410 Gone` when it no longer knows the version, and the list is then synchronized again
+ * from a full snapshot, either a JSON array of JWT IDs or:
+ *
+ *   {"version": 43, "revoked": ["jti-1", "jti-2"]}
+ *
+ * A full snapshot is authoritative, i.e. the JWT IDs which are not in the snapshot are not revoked anymore. The JWT IDs
+ * of the lists can also be given with the expiration time of their tokens, in seconds like the claim `exp`, so that
+ * they are pruned once expired:
+ *
+ *   {"version": 43, "added": [{"jti": "jti-1", "exp": 1700000000}, "jti-2"]}
+ *
+ * Synchronizations must not overlap, while the getters are thread-safe.
+ */
+public class RevokedTokensSync {
+    public static final long NO_VERSION = -1;
+
+    public static final String SINCE_PARAMETER = "since";
+    public static final String VERSION_FIELD = "version";
+    public static final String REVOKED_FIELD = "revoked";
+    public static final String ADDED_FIELD = "added";
+    public static final String REMOVED_FIELD = "removed";
+
+    public enum Mode {
+        NOT_MODIFIED, DELTA, SNAPSHOT
+    }
+
+    private final PortalClient portalClient;
+    private final PortalEndpoint endpoint;
+
+    // the cursor of the synchronization, only updated by one request at a time
+    private volatile String entityTag;
+    private volatile String lastModified;
+    private volatile long version = NO_VERSION;
+
+    private volatile Result lastResult;
+    private volatile long totalBytes;
+
+    public RevokedTokensSync(PortalClient portalClient, PortalEndpoint endpoint) {
+        this.portalClient = portalClient;
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Fetches the changes of the list of revoked tokens, applies them to the given set and publishes them. A
+     * synchronization must complete before the next one starts.
+     *
+     * @return a future completed with the changes applied, or completed exceptionally if the portal request failed
+     */
+    public CompletableFuture<Result> sync(RevokedTokenIds revokedTokens) {
+        return request(revokedTokens).thenCompose(result -> {
+            if (result != null) {
+                return CompletableFuture.completedFuture(result);
+            }
+            // the portal lost the version of the cursor, so start over from a full snapshot
+            resetCursor();
+            return request(revokedTokens);
+        }).thenApply(result -> {
+            lastResult = result;
+            totalBytes += result.getBytes();
+            return result;
+        });
+    }
+
+    private CompletableFuture<Result> request(RevokedTokenIds revokedTokens) {
+        boolean delta = version != NO_VERSION;
+        String url = endpoint.getUrl();
+        String requestUrl = delta ? url + (url.indexOf('?') == -1 ? '?' : '&') + SINCE_PARAMETER + "=" + version : url;
+
+        Map<String, String> headers = new HashMap<>();
+        if (entityTag != null) {
+            headers.put("If-None-Match", entityTag);
+        }
+        if (lastModified != null) {
+            headers.put("If-Modified-Since", lastModified);
+        }
+
+        return portalClient.get(endpoint, requestUrl, headers, response -> {
+            int status = response.getStatus();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return new Result(Mode.NOT_MODIFIED, version, 0, 0, 0, Collections.emptyList(), 0);
+            }
+            if (status == HttpURLConnection.HTTP_GONE && delta) {
+                return null;
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected HTTP status " + status);
+            }
+
+            // the changes are applied while the body is parsed, so they are discarded if the body fails to be read
+            long start = System.nanoTime();
+            PortalPayloads.RevokedTokensChanges changes;
+            try {
+                changes = PortalPayloads.readRevokedTokens(response.getBody(), revokedTokens);
+            } catch (IOException | RuntimeException e) {
+                revokedTokens.discard();
+                throw e;
+            }
+            revokedTokens.publish();
+            long applyNanos = System.nanoTime() - start;
+
+            version = changes.getVersion();
+            entityTag = response.getHeader("ETag");
+            lastModified = response.getHeader("Last-Modified");
+            return new Result(changes.isSnapshot() ? Mode.SNAPSHOT : Mode.DELTA, changes.getVersion(), response.getBytesReceived(),
+                    applyNanos, changes.getAddedCount(), changes.getAddedIds(), changes.getRemovedCount());
+        });
+    }
+
+    private void resetCursor() {
+        entityTag = null;
+        lastModified = null;
+        version = NO_VERSION;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the result of the last successful synchronization, or null if none.
+     */
+    public Result getLastResult() {
+        return lastResult;
+    }
+
+    /**
+     * Returns the number of bytes of all the responses received from the portal.
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * The changes applied by a synchronization cycle.
+     */
+    public static class Result {
+        private final Mode mode;
+        private final long version;
+        private final long bytes;
+        private final long applyNanos;
+        private final int added;
+        private final List<String> addedIds;
+        private final int removed;
+
+        Result(Mode mode, long version, long bytes, long applyNanos, int added, List<String> addedIds, int removed) {
+            this.mode = mode;
+            this.version = version;
+            this.bytes = bytes;
+            this.applyNanos = applyNanos;
+            this.added = added;
+            this.addedIds = addedIds;
+            this.removed = removed;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Returns the number of bytes of the response body.
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Returns the time spent to parse the response body and apply its changes.
+         */
+        public long getApplyNanos() {
+            return applyNanos;
+        }
+
+        /**
+         * Returns the number of JWT IDs which were not revoked before this cycle.
+         */
+        public int getAddedCount() {
+            return added;
+        }
+
+        /**
+         * Returns the JWT IDs which were not revoked before this cycle, or null if too many to be kept, see
+         * PortalPayloads.MAX_ADDED_IDS.
+         */
+        public List<String> getAddedIds() {
+            return addedIds;
+        }
+
+        public int getRemovedCount() {
+            return removed;
+        }
+
+        @Override
+        public String toString() {
+            return mode + " version=" + version + " bytes=" + bytes + " applyMicros=" + applyNanos / 1000 +
+                    " added=" + added + " removed=" + removed;
+        }
+    }
+}
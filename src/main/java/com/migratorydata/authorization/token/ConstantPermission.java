@@ -0,0 +1,36 @@
+package com.migratorydata.authorization.token;
+
+/**
+ * The permissions of a token which grants all the subjects, i.e. whose only subject is `/*`, e.g. a service token.
+ * There is a single instance per permission type, shared by all such tokens.
+ */
+class ConstantPermission implements PermissionMatcher {
+    private static final ConstantPermission[] INSTANCES = new ConstantPermission[Permissions.PermissionType.values().length];
+
+    static {
+        for (Permissions.PermissionType permissionType : Permissions.PermissionType.values()) {
+            INSTANCES[permissionType.ordinal()] = new ConstantPermission(permissionType);
+        }
+    }
+
+    private final Permissions.PermissionType permission;
+
+    private ConstantPermission(Permissions.PermissionType permission) {
+        this.permission = permission;
+    }
+
+    static ConstantPermission of(Permissions.PermissionType permissionType) {
+        return INSTANCES[permissionType.ordinal()];
+    }
+
+    @Override
+    public Permissions.PermissionType getPermission(String subject) {
+        // as the automaton, the empty subject has no permission
+        return subject.isEmpty() ? Permissions.PermissionType.NONE : permission;
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        return 0; // shared
+    }
+}
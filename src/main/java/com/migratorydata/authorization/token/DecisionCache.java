@@ -0,0 +1,240 @@
+package com.migratorydata.authorization.token;
+
+import java.lang.ref.Reference;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of the permissions of the subjects, shared by all the sessions, so that the sessions with the same
+ * compiled permissions which hit the same subjects skip the walk of the automaton. An entry is keyed by the identity of
+ * the compiled permissions and the ID of the subject in a SubjectDictionary, and holds both its SUB and PUB bits as a
+ * PermissionType. The subjects without an ID are not cached.
+ *
+ * The cache is a set-associative table of WAYS entries per bucket, read without locks. Its eviction policy approximates
+ * W-TinyLFU within each bucket: the first way is a window which admits every new entry, and the entry pushed out of the
+ * window replaces the least frequent entry of the other ways only if it is more frequent, according to a count-min
+ * sketch of the recent lookups. So a burst of subjects looked up once does not evict the hot subjects.
+ *
+ * An entry references its permissions through a weak reference, so it does not keep them alive. Once the permissions
+ * are no longer used by any token, their entries are never found again, are replaced first, and are cleared by the
+ * periodic sweep of the table.
+ */
+public class DecisionCache {
+    private static final int WAYS = 8;
+
+    private final SubjectDictionary subjectDictionary;
+    private final AtomicReferenceArray<Entry> table;
+    private final int bucketMask;
+    private final FrequencySketch sketch;
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    private final AtomicInteger puts = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of entries, rounded up to a power of two
+     */
+    public DecisionCache(int maxSize) {
+        this(maxSize, new SubjectDictionary(maxSize));
+    }
+
+    /**
+     * @param maxSize the maximum number of entries, rounded up to a power of two
+     * @param subjectDictionary the dictionary which gives the IDs of the subjects
+     */
+    public DecisionCache(int maxSize, SubjectDictionary subjectDictionary) {
+        this.subjectDictionary = subjectDictionary;
+        int capacity = Integer.highestOneBit(Math.max(WAYS, maxSize - 1) << 1);
+        this.table = new AtomicReferenceArray<>(capacity);
+        this.bucketMask = capacity / WAYS - 1;
+        this.sketch = new FrequencySketch(capacity);
+        subjectDictionary.setRecycleListener(this::clear);
+    }
+
+    public SubjectDictionary getSubjectDictionary() {
+        return subjectDictionary;
+    }
+
+    /**
+     * Returns the permission of a subject, cached or looked up with the given matcher.
+     *
+     * @param owner the weak reference to the compiled permissions, the same for all the lookups of these permissions
+     * @param subjectId the ID of the subject in the subject dictionary, or SubjectDictionary.NO_ID
+     */
+    Permissions.PermissionType getPermission(Reference<Permissions> owner, String subject, int subjectId, PermissionMatcher matcher) {
+        if (subjectId == SubjectDictionary.NO_ID) {
+            return matcher.getPermission(subject);
+        }
+        Permissions.PermissionType permission = getIfPresent(owner, subjectId);
+        if (permission == null) {
+            permission = matcher.getPermission(subject);
+            put(owner, subjectId, permission);
+        }
+        return permission;
+    }
+
+    /**
+     * Returns the cached permission of a subject, or null if not cached.
+     */
+    Permissions.PermissionType getIfPresent(Reference<Permissions> owner, int subjectId) {
+        int hash = hash(owner, subjectId);
+        sketch.increment(hash);
+        int base = (hash & bucketMask) * WAYS;
+        for (int way = 0; way < WAYS; way++) {
+            Entry entry = table.get(base + way);
+            if (entry != null && entry.matches(owner, subjectId)) {
+                hits.increment();
+                return entry.permission;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches the permission of a subject just looked up.
+     */
+    void put(Reference<Permissions> owner, int subjectId, Permissions.PermissionType permission) {
+        int hash = hash(owner, subjectId);
+        int base = (hash & bucketMask) * WAYS;
+        for (int way = 0; way < WAYS; way++) {
+            Entry entry = table.get(base + way);
+            if (entry != null && entry.matches(owner, subjectId)) {
+                return; // cached concurrently
+            }
+        }
+
+        // every new entry enters the window, and the racing puts of the same bucket keep only the first one
+        Entry candidate = table.get(base);
+        if (!table.compareAndSet(base, candidate, new Entry(owner, subjectId, hash, permission))) {
+            return;
+        }
+
+        if (candidate != null && !candidate.isDead()) {
+            // the entry pushed out of the window competes with the victim of the main ways, an empty or dead way first
+            int victimIndex = -1;
+            Entry victim = null;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int way = 1; way < WAYS; way++) {
+                Entry entry = table.get(base + way);
+                if (entry == null || entry.isDead()) {
+                    victimIndex = base + way;
+                    victim = entry;
+                    victimFrequency = -1;
+                    break;
+                }
+                int frequency = sketch.frequency(entry.hash);
+                if (frequency < victimFrequency) {
+                    victimIndex = base + way;
+                    victim = entry;
+                    victimFrequency = frequency;
+                }
+            }
+            if (victimFrequency == -1) {
+                table.compareAndSet(victimIndex, victim, candidate);
+            } else {
+                if (sketch.frequency(candidate.hash) > victimFrequency) {
+                    table.compareAndSet(victimIndex, victim, candidate);
+                }
+                evictions.increment(); // either the victim, or the candidate
+            }
+        }
+
+        if ((puts.incrementAndGet() & (table.length() - 1)) == 0) {
+            cleanUp();
+        }
+    }
+
+    /**
+     * Clears the entries of the permissions no longer used by any token.
+     */
+    public void cleanUp() {
+        if (!maintenanceLock.tryLock()) {
+            return; // already running
+        }
+        try {
+            for (int i = 0; i < table.length(); i++) {
+                Entry entry = table.get(i);
+                if (entry != null && entry.isDead()) {
+                    table.compareAndSet(i, entry, null);
+                }
+            }
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Drops all the entries, e.g. when the IDs of the subjects are recycled.
+     */
+    public void clear() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, null);
+        }
+    }
+
+    /**
+     * Returns the number of cached entries, after clearing the entries of the permissions no longer used.
+     */
+    public long size() {
+        cleanUp();
+        long size = 0;
+        for (int i = 0; i < table.length(); i++) {
+            if (table.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public int capacity() {
+        return table.length();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted, or not admitted, to make room for more frequent entries.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private static int hash(Reference<Permissions> owner, int subjectId) {
+        int hash = System.identityHashCode(owner) * 31 + subjectId;
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Entry {
+        private final Reference<Permissions> owner;
+        private final int subjectId;
+        private final int hash;
+        private final Permissions.PermissionType permission;
+
+        Entry(Reference<Permissions> owner, int subjectId, int hash, Permissions.PermissionType permission) {
+            this.owner = owner;
+            this.subjectId = subjectId;
+            this.hash = hash;
+            this.permission = permission;
+        }
+
+        boolean matches(Reference<Permissions> owner, int subjectId) {
+            return this.subjectId == subjectId && this.owner == owner;
+        }
+
+        boolean isDead() {
+            return owner.get() == null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.migratorydata.authorization.token;
+
+/**
+ * The permissions of a token which grants a few exact subjects, i.e. without `*` and `{s}` segments, e.g. a device
+ * token. The subjects are kept in a small array and compared by length and hash, which is faster and much smaller
+ * than an automaton for a handful of subjects.
+ */
+class ExactPermissions implements PermissionMatcher {
+    private static final Permissions.PermissionType[] PERMISSION_TYPES = Permissions.PermissionType.values();
+
+    private final String[] subjects;
+    private final int[] hashes;
+    private final byte[] permissions;
+
+    ExactPermissions(String[] subjects, Permissions.PermissionType[] permissionTypes, int count) {
+        this.subjects = new String[count];
+        this.hashes = new int[count];
+        this.permissions = new byte[count];
+        for (int i = 0; i < count; i++) {
+            this.subjects[i] = subjects[i];
+            this.hashes[i] = subjects[i].hashCode();
+            this.permissions[i] = (byte) permissionTypes[i].ordinal();
+        }
+    }
+
+    @Override
+    public Permissions.PermissionType getPermission(String subject) {
+        int length = subject.length();
+        if (length == 0) {
+            return Permissions.PermissionType.NONE;
+        }
+        // as the automaton, the first character of the subject is not compared
+        boolean leadingSlash = subject.charAt(0) == '/';
+        int hash = leadingSlash ? subject.hashCode() : 0;
+        for (int i = 0; i < subjects.length; i++) {
+            String exactSubject = subjects[i];
+            if (exactSubject.length() != length) {
+                continue;
+            }
+            if (leadingSlash ? hashes[i] == hash && exactSubject.equals(subject) : exactSubject.regionMatches(1, subject, 1, length - 1)) {
+                return PERMISSION_TYPES[permissions[i]];
+            }
+        }
+        return Permissions.PermissionType.NONE;
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        long bytes = 16 + 3 * 16 + 4L * subjects.length + 4L * hashes.length + permissions.length;
+        for (String subject : subjects) {
+            bytes += 40 + 2L * subject.length();
+        }
+        return bytes;
+    }
+}
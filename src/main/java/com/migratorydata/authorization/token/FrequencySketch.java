@@ -0,0 +1,79 @@
+package com.migratorydata.authorization.token;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Count-min sketch of DEPTH 4-bit counters per item, which estimates how often an item was recently looked up, to
+ * decide which entries of a bounded cache to keep, as in TinyLFU. The counters are halved once the number of increments
+ * reaches ten times the number of entries of the cache, so that the frequencies reflect the recent lookups.
+ *
+ * The counters are updated without synchronization, so a few increments may be lost under contention, which only
+ * makes the frequencies more approximate. A saturated counter is no longer written, so the lookups of the hot items
+ * only read the sketch.
+ */
+class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97CB3127, 0x0A8F1E45, 0x6D2B79F5, 0xC2B2AE35};
+
+    private final long[] counters;
+    private final int counterMask;
+    private final int sampleSize;
+    private final ReentrantLock resetLock = new ReentrantLock();
+    private int additions;
+
+    /**
+     * @param capacity the number of entries of the cache, a power of two
+     */
+    FrequencySketch(int capacity) {
+        // 16 counters per long, i.e. as many longs as entries of the cache
+        this.counters = new long[capacity];
+        this.counterMask = capacity - 1;
+        this.sampleSize = 10 * capacity;
+    }
+
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            int h = rehash(hash, i);
+            int index = (h >>> 4) & counterMask;
+            int offset = (h & 15) << 2;
+            if (((counters[index] >>> offset) & 0xF) < MAX_COUNT) {
+                counters[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            int h = rehash(hash, i);
+            int count = (int) ((counters[(h >>> 4) & counterMask] >>> ((h & 15) << 2)) & 0xF);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        if (!resetLock.tryLock()) {
+            return; // already running
+        }
+        try {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = (counters[i] >>> 1) & 0x7777777777777777L;
+            }
+            additions /= 2;
+        } finally {
+            resetLock.unlock();
+        }
+    }
+
+    private static int rehash(int hash, int i) {
+        int h = (hash ^ SEEDS[i]) * 0x85EBCA6B;
+        return h ^ (h >>> 13);
+    }
+}
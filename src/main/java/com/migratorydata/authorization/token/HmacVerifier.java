@@ -0,0 +1,138 @@
+package com.migratorydata.authorization.token;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Verifier of the signature of the HS256, HS384 and HS512 tokens signed with a signing key of the portal, without
+ * building the claims of the token as JwtParser does.
+ *
+ * Each thread keeps its own Mac instances initialized with the signing key, one per algorithm, so a verification
+ * neither looks up the algorithm nor allocates a Mac. The signature is computed over the ASCII bytes of the signing
+ * input, i.e. header.payload, and compared in constant time with the signature of the token.
+ *
+ * The tokens whose header is not a plain HMAC header, e.g. with a `crit` or `zip` field, or whose algorithm needs a
+ * longer key, are left to JwtParser.
+ */
+public class HmacVerifier {
+    public enum Result {
+        VALID, INVALID, UNSUPPORTED
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String[] ALGORITHMS = {"HS256", "HS384", "HS512"};
+    private static final String[] MAC_ALGORITHMS = {"HmacSHA256", "HmacSHA384", "HmacSHA512"};
+    private static final int[] MIN_KEY_BYTES = {32, 48, 64};
+
+    private final byte[] key;
+    private final ThreadLocal<Mac[]> macs = ThreadLocal.withInitial(() -> new Mac[ALGORITHMS.length]);
+    private static final ThreadLocal<byte[]> SIGNING_INPUT = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    /**
+     * @param signingKey the signing key as given by the portal, i.e. base64-encoded
+     */
+    public HmacVerifier(String signingKey) {
+        this.key = Base64.getDecoder().decode(signingKey);
+    }
+
+    /**
+     * Verifies the signature of a token.
+     *
+     * @param jwtToken the compact serialization of the JWT token, i.e. header.payload.signature
+     * @return VALID or INVALID, or UNSUPPORTED if the token must be verified by JwtParser, e.g. when it is malformed
+     */
+    public Result verify(String jwtToken) {
+        int headerEnd = jwtToken.indexOf('.');
+        int payloadEnd = (headerEnd == -1) ? -1 : jwtToken.indexOf('.', headerEnd + 1);
+        if (payloadEnd == -1 || jwtToken.indexOf('.', payloadEnd + 1) != -1) {
+            return Result.UNSUPPORTED;
+        }
+
+        int algorithm = readAlgorithm(jwtToken, headerEnd);
+        if (algorithm == -1 || key.length < MIN_KEY_BYTES[algorithm]) {
+            return Result.UNSUPPORTED;
+        }
+
+        byte[] signature;
+        try {
+            signature = Base64.getUrlDecoder().decode(jwtToken.substring(payloadEnd + 1));
+        } catch (IllegalArgumentException e) {
+            return Result.UNSUPPORTED; // JwtParser reports the malformed signature
+        }
+
+        byte[] signingInput = SIGNING_INPUT.get();
+        if (signingInput.length < payloadEnd) {
+            signingInput = new byte[Integer.highestOneBit(payloadEnd) << 1];
+            SIGNING_INPUT.set(signingInput);
+        }
+        for (int i = 0; i < payloadEnd; i++) {
+            char c = jwtToken.charAt(i);
+            if (c > 0x7f) {
+                return Result.UNSUPPORTED; // not base64url, JwtParser reports the malformed token
+            }
+            signingInput[i] = (byte) c;
+        }
+
+        Mac mac;
+        try {
+            mac = getMac(algorithm);
+        } catch (GeneralSecurityException e) {
+            return Result.UNSUPPORTED;
+        }
+        mac.update(signingInput, 0, payloadEnd);
+        // doFinal() resets the Mac, which is reused by the next verification of this thread
+        return MessageDigest.isEqual(mac.doFinal(), signature) ? Result.VALID : Result.INVALID;
+    }
+
+    private Mac getMac(int algorithm) throws GeneralSecurityException {
+        Mac[] threadMacs = macs.get();
+        Mac mac = threadMacs[algorithm];
+        if (mac == null) {
+            mac = Mac.getInstance(MAC_ALGORITHMS[algorithm]);
+            mac.init(new SecretKeySpec(key, MAC_ALGORITHMS[algorithm]));
+            threadMacs[algorithm] = mac;
+        }
+        return mac;
+    }
+
+    // returns the index of the algorithm of a plain HMAC header, i.e. with only the fields alg, typ and kid, or -1
+    private static int readAlgorithm(String jwtToken, int headerEnd) {
+        int algorithm = -1;
+        try (JsonParser parser = JSON_FACTORY.createParser(Base64.getUrlDecoder().decode(jwtToken.substring(0, headerEnd)))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return -1;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("alg".equals(field) && value == JsonToken.VALUE_STRING) {
+                    algorithm = indexOf(parser.getText());
+                } else if (("typ".equals(field) || "kid".equals(field)) && value == JsonToken.VALUE_STRING) {
+                    continue;
+                } else {
+                    return -1;
+                }
+            }
+            return parser.currentToken() == JsonToken.END_OBJECT && parser.nextToken() == null ? algorithm : -1;
+        } catch (IllegalArgumentException | IOException e) {
+            return -1;
+        }
+    }
+
+    private static int indexOf(String algorithm) {
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            if (ALGORITHMS[i].equals(algorithm)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,253 @@
+package com.migratorydata.authorization.token;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The claims of a JWT token needed before its signature is verified, read in a single pass.
+ *
+ * The payload is base64url-decoded once and scanned with a streaming JSON parser which only extracts the fields
+ * `secret_id`, `jti` and `exp`, and skips everything else, including the permissions. The decoded payload is kept, so
+ * that once the signature is verified by an HmacVerifier, the permissions are read from it without decoding it again.
+ */
+public class JwtPayload {
+    public static final long NO_EXPIRATION = Long.MAX_VALUE;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String NOT_BEFORE_FIELD = "nbf";
+    private static final String APP_FIELD = "app";
+    private static final String QUOTA_FIELD = "quota";
+    private static final int MIN_LENGTH = 5; // h.p.s
+
+    private static final boolean[] BASE64URL = new boolean[128];
+    static {
+        for (char c = 'A'; c <= 'Z'; c++) {
+            BASE64URL[c] = true;
+            BASE64URL[Character.toLowerCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            BASE64URL[c] = true;
+        }
+        BASE64URL['-'] = true;
+        BASE64URL['_'] = true;
+    }
+
+    private final byte[] payload;
+    private final String signingKeyId;
+    private final String id;
+    private final long expirationTimeMillis;
+    private final boolean notBefore;
+
+    private JwtPayload(byte[] payload, String signingKeyId, String id, long expirationTimeMillis, boolean notBefore) {
+        this.payload = payload;
+        this.signingKeyId = signingKeyId;
+        this.id = id;
+        this.expirationTimeMillis = expirationTimeMillis;
+        this.notBefore = notBefore;
+    }
+
+    /**
+     * Checks the shape of a JWT token without decoding it: its length, its three non-empty segments, and the base64url
+     * characters of the segments, without padding.
+     *
+     * @param jwtToken the compact serialization of the JWT token, i.e. header.payload.signature
+     * @param maxLength the maximum length of the token
+     */
+    public static boolean isWellFormed(String jwtToken, int maxLength) {
+        int length = jwtToken.length();
+        if (length < MIN_LENGTH || length > maxLength) {
+            return false;
+        }
+        int dots = 0;
+        char previous = '.';
+        for (int i = 0; i < length; i++) {
+            char c = jwtToken.charAt(i);
+            if (c == '.') {
+                if (previous == '.' || ++dots > 2) {
+                    return false; // empty or extra segment
+                }
+            } else if (c >= BASE64URL.length || !BASE64URL[c]) {
+                return false;
+            }
+            previous = c;
+        }
+        return dots == 2 && previous != '.';
+    }
+
+    /**
+     * Reads the payload of a JWT token without verifying its signature.
+     *
+     * @param jwtToken the compact serialization of the JWT token, i.e. header.payload.signature
+     * @return the payload, or null if the token is not a well-formed JWS
+     */
+    public static JwtPayload read(String jwtToken) {
+        int headerEnd = jwtToken.indexOf('.');
+        int payloadEnd = (headerEnd == -1) ? -1 : jwtToken.indexOf('.', headerEnd + 1);
+        if (payloadEnd == -1 || jwtToken.indexOf('.', payloadEnd + 1) != -1) {
+            return null;
+        }
+
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(jwtToken.substring(headerEnd + 1, payloadEnd));
+            return scan(payload);
+        } catch (IllegalArgumentException | IOException e) {
+            return null;
+        }
+    }
+
+    private static JwtPayload scan(byte[] payload) throws IOException {
+        String signingKeyId = null;
+        String id = null;
+        long expirationTimeMillis = NO_EXPIRATION;
+        boolean notBefore = false;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value == null) {
+                    return null;
+                }
+                if (Token.SIGNING_KEY_ID_FIELD.equals(field) && value == JsonToken.VALUE_STRING) {
+                    signingKeyId = parser.getText();
+                } else if (Token.ID_FIELD.equals(field) && value == JsonToken.VALUE_STRING) {
+                    id = parser.getText();
+                } else if (Token.EXPIRATION_FIELD.equals(field) && value.isNumeric()) {
+                    expirationTimeMillis = parser.getValueAsLong() * 1000;
+                } else {
+                    notBefore |= NOT_BEFORE_FIELD.equals(field);
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        return new JwtPayload(payload, signingKeyId, id, expirationTimeMillis, notBefore);
+    }
+
+    /**
+     * Reads the `permissions` field of the payload, in the order of the claims. As for the other fields, a duplicate
+     * field replaces the previous one.
+     *
+     * @return the permission claims, or null if missing
+     * @throws IOException if the `permissions` field is not an object of arrays of strings
+     */
+    public Map<String, List<String>> readPermissions() throws IOException {
+        Map<String, List<String>> permissions = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (!Token.PERMISSIONS_FIELD.equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                if (value == JsonToken.VALUE_NULL) {
+                    permissions = null;
+                    continue;
+                }
+                if (value != JsonToken.START_OBJECT) {
+                    throw new IOException("The permissions are not an object");
+                }
+                permissions = new LinkedHashMap<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String permission = parser.getCurrentName();
+                    if (parser.nextToken() != JsonToken.START_ARRAY) {
+                        throw new IOException("The subjects of the permission " + permission + " are not an array");
+                    }
+                    List<String> subjects = new ArrayList<>();
+                    JsonToken subject;
+                    while ((subject = parser.nextToken()) == JsonToken.VALUE_STRING) {
+                        subjects.add(parser.getText());
+                    }
+                    if (subject != JsonToken.END_ARRAY) {
+                        throw new IOException("A subject of the permission " + permission + " is not a string");
+                    }
+                    permissions.put(permission, subjects);
+                }
+            }
+        }
+        return permissions;
+    }
+
+    /**
+     * Returns the `secret_id` field of the JWT token, or null if missing.
+     */
+    public String getSigningKeyId() {
+        return signingKeyId;
+    }
+
+    /**
+     * Returns the `jti` field of the JWT token, or null if missing.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the `exp` field of the JWT token in milliseconds, or NO_EXPIRATION if missing.
+     */
+    public long getExpirationTimeMillis() {
+        return expirationTimeMillis;
+    }
+
+    /**
+     * Reads the `app` field and the optional `quota` field of the payload, e.g.
+     * "quota": {"pub_rate": 100, "pub_burst": 200, "max_subscriptions": 1000}
+     *
+     * @return the claims, whose missing limits are negative
+     * @throws IOException if the `quota` field is not an object of numbers
+     */
+    TokenQuotas.Claims readQuotaClaims() throws IOException {
+        TokenQuotas.Claims claims = new TokenQuotas.Claims();
+        try (JsonParser parser = JSON_FACTORY.createParser(payload)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (APP_FIELD.equals(field) && value == JsonToken.VALUE_STRING) {
+                    claims.app = parser.getText();
+                } else if (QUOTA_FIELD.equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String limit = parser.getCurrentName();
+                        if (!parser.nextToken().isNumeric()) {
+                            throw new IOException("The quota " + limit + " is not a number");
+                        }
+                        if (TokenQuotas.PUBLISH_RATE_CLAIM.equals(limit)) {
+                            claims.publishRate = parser.getValueAsDouble();
+                        } else if (TokenQuotas.PUBLISH_BURST_CLAIM.equals(limit)) {
+                            claims.publishBurst = parser.getValueAsInt();
+                        } else if (TokenQuotas.MAX_SUBSCRIPTIONS_CLAIM.equals(limit)) {
+                            claims.maxSubscriptions = parser.getValueAsInt();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return claims;
+    }
+
+    /**
+     * Returns true if the payload has a `nbf` field, which is checked by jjwt.
+     */
+    public boolean hasNotBefore() {
+        return notBefore;
+    }
+
+    public boolean hasExpired(long currentTimeMillis) {
+        return currentTimeMillis > expirationTimeMillis;
+    }
+}
@@ -0,0 +1,268 @@
+package com.migratorydata.authorization.token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, flattened form of a {@link SubjectPermission} trie.
+ *
+ * Nodes and edges are stored in parallel arrays. The fallbacks applied by the trie when a segment has no exact
+ * descendant (the `{s}` descendant, then the `*` descendant, then the inherited wildcard permission) are resolved
+ * when the automaton is compiled, so a lookup walks the subject by character offsets and never allocates.
+ */
+public class PermissionAutomaton implements PermissionMatcher {
+    private static final Permissions.PermissionType[] PERMISSION_TYPES = Permissions.PermissionType.values();
+    private static final int NO_NODE = -1;
+
+    // per node
+    private final byte[] permission;        // the permission returned when the subject ends on the node
+    private final byte[] missPermission;    // the permission returned when no descendant matches and there is no `{s}` descendant
+    private final int[] symbolChild;        // the `{s}` descendant, or NO_NODE
+    private final int[] edgeOffset;         // the edges of node n are [edgeOffset[n], edgeOffset[n + 1])
+
+    // per edge, sorted by hash within a node
+    private final int[] edgeHash;
+    private final String[] edgeSegment;
+    private final int[] edgeTarget;
+
+    private PermissionAutomaton(byte[] permission, byte[] missPermission, int[] symbolChild, int[] edgeOffset,
+                                int[] edgeHash, String[] edgeSegment, int[] edgeTarget) {
+        this.permission = permission;
+        this.missPermission = missPermission;
+        this.symbolChild = symbolChild;
+        this.edgeOffset = edgeOffset;
+        this.edgeHash = edgeHash;
+        this.edgeSegment = edgeSegment;
+        this.edgeTarget = edgeTarget;
+    }
+
+    public static PermissionAutomaton compile(SubjectPermission root) {
+        // number the nodes breadth-first so that the descendants of a node are stored next to each other
+        List<SubjectPermission> nodes = new ArrayList<>();
+        List<Integer> parents = new ArrayList<>();
+        nodes.add(root);
+        parents.add(NO_NODE);
+        int edgeCount = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            for (Map.Entry<String, SubjectPermission> entry : nodes.get(i).getDescendants().entrySet()) {
+                nodes.add(entry.getValue());
+                parents.add(i);
+                edgeCount++;
+            }
+        }
+
+        int nodeCount = nodes.size();
+        byte[] permission = new byte[nodeCount];
+        byte[] wildcardPermission = new byte[nodeCount];
+        byte[] missPermission = new byte[nodeCount];
+        int[] symbolChild = new int[nodeCount];
+        int[] edgeOffset = new int[nodeCount + 1];
+        int[] edgeHash = new int[edgeCount];
+        String[] edgeSegment = new String[edgeCount];
+        int[] edgeTarget = new int[edgeCount];
+
+        // the wildcard permission inherited by a node is the permission of its closest WILDCARD ancestor (itself included)
+        for (int i = 0; i < nodeCount; i++) {
+            SubjectPermission node = nodes.get(i);
+            permission[i] = (byte) node.getPermissionType().ordinal();
+            if (node.getSegmentType() == SubjectPermission.SegmentType.WILDCARD) {
+                wildcardPermission[i] = permission[i];
+            } else if (parents.get(i) != NO_NODE) {
+                wildcardPermission[i] = wildcardPermission[parents.get(i)];
+            } else {
+                wildcardPermission[i] = (byte) Permissions.PermissionType.NONE.ordinal();
+            }
+        }
+
+        int next = 1;
+        int edge = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            edgeOffset[i] = edge;
+            symbolChild[i] = NO_NODE;
+            missPermission[i] = wildcardPermission[i];
+
+            Map<String, SubjectPermission> descendants = nodes.get(i).getDescendants();
+            Edge[] edges = new Edge[descendants.size()];
+            int e = 0;
+            for (Map.Entry<String, SubjectPermission> entry : descendants.entrySet()) {
+                String segment = entry.getKey();
+                int target = next++;
+                edges[e++] = new Edge(segment, target);
+                if (SubjectPermission.SYMBOL.equals(segment)) {
+                    symbolChild[i] = target;
+                } else if ("*".equals(segment)) {
+                    missPermission[i] = permission[target];
+                }
+            }
+            Arrays.sort(edges, (a, b) -> Integer.compare(a.segment.hashCode(), b.segment.hashCode()));
+            for (Edge sorted : edges) {
+                edgeHash[edge] = sorted.segment.hashCode();
+                edgeSegment[edge] = sorted.segment;
+                edgeTarget[edge] = sorted.target;
+                edge++;
+            }
+        }
+        edgeOffset[nodeCount] = edge;
+
+        return new PermissionAutomaton(permission, missPermission, symbolChild, edgeOffset, edgeHash, edgeSegment, edgeTarget);
+    }
+
+    @Override
+    public Permissions.PermissionType getPermission(String subject) {
+        int length = subject.length();
+        if (length == 0) {
+            return Permissions.PermissionType.NONE;
+        }
+
+        // the first character of the subject is the leading '/'
+        int node = 0;
+        int start = 1;
+        while (true) {
+            int end = subject.indexOf('/', start);
+            int segmentEnd = (end == -1) ? length : end;
+
+            int hash = 0;
+            for (int i = start; i < segmentEnd; i++) {
+                hash = 31 * hash + subject.charAt(i);
+            }
+
+            int target = findEdge(node, subject, start, segmentEnd - start, hash);
+            if (target == NO_NODE) {
+                target = symbolChild[node];
+                if (target == NO_NODE) {
+                    return PERMISSION_TYPES[missPermission[node]];
+                }
+            }
+
+            if (end == -1) {
+                return PERMISSION_TYPES[permission[target]];
+            }
+            node = target;
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Returns an estimate of the heap used by the arrays of the automaton and its segments.
+     */
+    @Override
+    public long getMemoryBytes() {
+        long bytes = 7 * 16 + permission.length + missPermission.length
+                + 4L * (symbolChild.length + edgeOffset.length + edgeHash.length + edgeTarget.length)
+                + 4L * edgeSegment.length;
+        for (String segment : edgeSegment) {
+            bytes += 40 + 2L * segment.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Looks up a batch of subjects, resuming the walk of each subject from the deepest node of the segments it shares
+     * with the previous subject, so the shared prefixes of consecutive subjects, e.g. /market/eu/equities/..., are
+     * walked once. The subjects are not reordered, as sorting them costs more than the walks it saves.
+     */
+    @Override
+    public void getPermissions(String[] subjects, int from, int to, Permissions.PermissionType[] results) {
+        // the node reached after the first k segments of the previous subject, and the offset of its next segment
+        int[] nodes = new int[8];
+        int[] starts = new int[8];
+        nodes[0] = 0;
+        starts[0] = 1;
+        String previous = null;
+        int previousDepth = 0;
+
+        for (int s = from; s < to; s++) {
+            String subject = subjects[s];
+            int length = subject.length();
+            if (length == 0) {
+                results[s] = Permissions.PermissionType.NONE;
+                continue;
+            }
+
+            int depth = 0;
+            if (previous != null) {
+                int common = 0;
+                int maxCommon = Math.min(length, previous.length());
+                while (common < maxCommon && subject.charAt(common) == previous.charAt(common)) {
+                    common++;
+                }
+                while (depth < previousDepth && starts[depth + 1] <= common) {
+                    depth++;
+                }
+            }
+
+            int node = nodes[depth];
+            int start = starts[depth];
+            Permissions.PermissionType result;
+            while (true) {
+                int end = subject.indexOf('/', start);
+                int segmentEnd = (end == -1) ? length : end;
+
+                int hash = 0;
+                for (int i = start; i < segmentEnd; i++) {
+                    hash = 31 * hash + subject.charAt(i);
+                }
+
+                int target = findEdge(node, subject, start, segmentEnd - start, hash);
+                if (target == NO_NODE) {
+                    target = symbolChild[node];
+                    if (target == NO_NODE) {
+                        result = PERMISSION_TYPES[missPermission[node]];
+                        break;
+                    }
+                }
+
+                if (end == -1) {
+                    result = PERMISSION_TYPES[permission[target]];
+                    break;
+                }
+                node = target;
+                start = end + 1;
+                if (++depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, depth * 2);
+                    starts = Arrays.copyOf(starts, depth * 2);
+                }
+                nodes[depth] = node;
+                starts[depth] = start;
+            }
+            results[s] = result;
+            previous = subject;
+            previousDepth = depth;
+        }
+    }
+
+    private int findEdge(int node, String subject, int start, int length, int hash) {
+        int low = edgeOffset[node];
+        int high = edgeOffset[node + 1];
+
+        // the first edge whose hash is not less than the hash of the segment
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (edgeHash[middle] < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        for (int i = low, end = edgeOffset[node + 1]; i < end && edgeHash[i] == hash; i++) {
+            String segment = edgeSegment[i];
+            if (segment.length() == length && subject.regionMatches(start, segment, 0, length)) {
+                return edgeTarget[i];
+            }
+        }
+        return NO_NODE;
+    }
+
+    private static class Edge {
+        private final String segment;
+        private final int target;
+
+        Edge(String segment, int target) {
+            this.segment = segment;
+            this.target = target;
+        }
+    }
+}
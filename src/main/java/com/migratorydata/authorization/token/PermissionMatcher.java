@@ -0,0 +1,23 @@
+package com.migratorydata.authorization.token;
+
+/**
+ * A representation of the permissions of a token, chosen by Permissions according to the shape of its claims.
+ */
+interface PermissionMatcher {
+
+    Permissions.PermissionType getPermission(String subject);
+
+    /**
+     * Looks up the permissions of the subjects in [from, to) into the same positions of the results.
+     */
+    default void getPermissions(String[] subjects, int from, int to, Permissions.PermissionType[] results) {
+        for (int i = from; i < to; i++) {
+            results[i] = getPermission(subjects[i]);
+        }
+    }
+
+    /**
+     * Returns an estimate of the heap used by this representation.
+     */
+    long getMemoryBytes();
+}
@@ -2,11 +2,31 @@ package com.migratorydata.authorization.token;
 
 import com.migratorydata.authorization.config.Util;
 
+import java.lang.ref.WeakReference;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * The permissions of a token, in a representation chosen according to the shape of its claims: a shared constant for
+ * the tokens which grant all the subjects, a small array for the tokens which grant a few exact subjects, and an
+ * automaton otherwise.
+ *
+ * The lookups into an automaton may go through a DecisionCache shared with the other permissions.
+ */
 public class Permissions {
-    private final SubjectPermission permissions = new SubjectPermission("");
+    // the maximum number of exact subjects kept in a small array rather than compiled into an automaton
+    public static final int MAX_EXACT_SUBJECTS = 8;
+
+    public enum Shape {
+        CONSTANT, EXACT, AUTOMATON
+    }
+
+    private final PermissionMatcher permissions;
+    private final Shape shape;
+    private final DecisionCache decisionCache;
+    private final WeakReference<Permissions> identity; // the key of these permissions in the decision cache
 
     /* The `permissions` field should have the following format:
         "permissions": {              // permissions of the API/APP endpoints
@@ -23,26 +43,271 @@ public class Permissions {
         }
     */
     public Permissions(Map<String, List<String>> permissionClaims) throws Exception {
+        this(permissionClaims, null);
+    }
+
+    /**
+     * @param decisionCache the cache of the lookups shared with the other permissions, or null to walk the automaton
+     *                      for each lookup
+     */
+    public Permissions(Map<String, List<String>> permissionClaims, DecisionCache decisionCache) throws Exception {
+        int subjects = 0;
+        boolean allSubjects = true;   // all the subjects start with a `*` segment, e.g. `/*`
+        boolean exactSubjects = true; // no subject has a `*` or `{s}` segment
+        PermissionType lastPermissionType = PermissionType.NONE;
         for (Map.Entry<String, List<String>> entry : permissionClaims.entrySet()) {
+            PermissionType permissionType = PermissionType.fromCode(entry.getKey());
             for (String subject : entry.getValue()) {
-                PermissionType permissionType = PermissionType.fromCode(entry.getKey());
-                if (Util.isSubjectValid(subject) && permissionType != PermissionType.NONE) {
-                    setPermission(subject, permissionType);
-                } else {
+                if (!Util.isSubjectValid(subject) || permissionType == PermissionType.NONE) {
                     throw new Exception("Invalid syntax for subject " + subject + ", or permission " + entry.getKey());
                 }
+                subjects++;
+                lastPermissionType = permissionType;
+                allSubjects &= isAllSubjects(subject);
+                exactSubjects &= isExact(subject);
+            }
+        }
+
+        if (subjects > 0 && allSubjects) {
+            // the last `/*` replaces the previous ones
+            permissions = ConstantPermission.of(lastPermissionType);
+            shape = Shape.CONSTANT;
+        } else if (exactSubjects && subjects <= MAX_EXACT_SUBJECTS) {
+            permissions = compileExact(permissionClaims, subjects);
+            shape = Shape.EXACT;
+        } else {
+            SubjectPermission subjectPermissions = new SubjectPermission("");
+            for (Map.Entry<String, List<String>> entry : permissionClaims.entrySet()) {
+                PermissionType permissionType = PermissionType.fromCode(entry.getKey());
+                for (String subject : entry.getValue()) {
+                    subjectPermissions.setPermission(subject, permissionType);
+                }
+            }
+            // the trie is only used to build the automaton which answers all the lookups
+            permissions = PermissionAutomaton.compile(subjectPermissions);
+            shape = Shape.AUTOMATON;
+        }
+
+        // the constant and the small array are cheaper to look up than the cache
+        if (shape == Shape.AUTOMATON && decisionCache != null) {
+            this.decisionCache = decisionCache;
+            this.identity = new WeakReference<>(this);
+        } else {
+            this.decisionCache = null;
+            this.identity = null;
+        }
+    }
+
+    // the segments after a `*` segment are ignored, and the first character is not checked, as by the trie
+    private static boolean isAllSubjects(String subject) {
+        return subject.charAt(1) == '*' && (subject.length() == 2 || subject.charAt(2) == '/');
+    }
+
+    private static boolean isExact(String subject) {
+        for (int start = 1; start <= subject.length(); ) {
+            int end = subject.indexOf('/', start);
+            if (end == -1) {
+                end = subject.length();
+            }
+            if ((end - start == 1 && subject.charAt(start) == '*')
+                    || (end - start >= 3 && subject.charAt(start) == '{' && subject.charAt(end - 1) == '}')) {
+                return false;
             }
+            start = end + 1;
         }
+        return true;
     }
 
-    private void setPermission(String subject, PermissionType permissionType) {
-        permissions.setPermission(subject, permissionType);
+    private static ExactPermissions compileExact(Map<String, List<String>> permissionClaims, int subjects) {
+        String[] exactSubjects = new String[subjects];
+        PermissionType[] permissionTypes = new PermissionType[subjects];
+        int count = 0;
+        for (Map.Entry<String, List<String>> entry : permissionClaims.entrySet()) {
+            PermissionType permissionType = PermissionType.fromCode(entry.getKey());
+            for (String subject : entry.getValue()) {
+                // a subject given several permissions keeps the last one
+                int i = 0;
+                while (i < count && !exactSubjects[i].equals(subject)) {
+                    i++;
+                }
+                if (i == count) {
+                    exactSubjects[count++] = subject;
+                }
+                permissionTypes[i] = permissionType;
+            }
+        }
+        return new ExactPermissions(exactSubjects, permissionTypes, count);
     }
 
     public PermissionType getPermission(String subject) {
+        if (decisionCache != null) {
+            int subjectId = decisionCache.getSubjectDictionary().getId(subject);
+            return decisionCache.getPermission(identity, subject, subjectId, permissions);
+        }
         return permissions.getPermission(subject);
     }
 
+    /**
+     * Returns the permission of a subject whose ID was already given by the SubjectDictionary of the decision cache.
+     *
+     * @param subjectId the ID of the subject, or SubjectDictionary.NO_ID
+     */
+    public PermissionType getPermission(String subject, int subjectId) {
+        if (decisionCache != null) {
+            return decisionCache.getPermission(identity, subject, subjectId, permissions);
+        }
+        return permissions.getPermission(subject);
+    }
+
+    /**
+     * Looks up the permissions of a batch of subjects, e.g. of a subscribe request, into the same positions of the
+     * results. The consecutive subjects which share a prefix share its walk.
+     *
+     * @param parallelBatchSize above this number of subjects, the batch is split across the common ForkJoin pool in
+     *                          chunks of this size; 0 to always look up the batch in the calling thread
+     */
+    public void getPermissions(String[] subjects, PermissionType[] results, int parallelBatchSize) {
+        getPermissions(subjects, null, results, parallelBatchSize);
+    }
+
+    /**
+     * Looks up the permissions of a batch of subjects whose IDs were already given by the SubjectDictionary of the
+     * decision cache, see getPermissions(String[], PermissionType[], int).
+     *
+     * @param subjectIds the IDs of the subjects, NO_ID for the subjects without ID, or null to look up the IDs
+     */
+    public void getPermissions(String[] subjects, int[] subjectIds, PermissionType[] results, int parallelBatchSize) {
+        if (decisionCache != null) {
+            getPermissionsCached(subjects, subjectIds, results, parallelBatchSize);
+            return;
+        }
+        lookUp(subjects, results, parallelBatchSize);
+    }
+
+    // only the subjects missing from the cache are looked up in a batch, in the order of the request
+    private void getPermissionsCached(String[] subjects, int[] subjectIds, PermissionType[] results, int parallelBatchSize) {
+        if (subjectIds == null) {
+            subjectIds = new int[subjects.length];
+            for (int i = 0; i < subjects.length; i++) {
+                subjectIds[i] = decisionCache.getSubjectDictionary().getId(subjects[i]);
+            }
+        }
+        int misses = 0;
+        for (int i = 0; i < subjects.length; i++) {
+            results[i] = subjectIds[i] != SubjectDictionary.NO_ID ? decisionCache.getIfPresent(identity, subjectIds[i]) : null;
+            if (results[i] == null) {
+                misses++;
+            }
+        }
+        if (misses == 0) {
+            return;
+        }
+
+        String[] missedSubjects = new String[misses];
+        for (int i = 0, j = 0; i < subjects.length; i++) {
+            if (results[i] == null) {
+                missedSubjects[j++] = subjects[i];
+            }
+        }
+        PermissionType[] missedResults = new PermissionType[misses];
+        lookUp(missedSubjects, missedResults, parallelBatchSize);
+        for (int i = 0, j = 0; i < subjects.length; i++) {
+            if (results[i] == null) {
+                results[i] = missedResults[j];
+                if (subjectIds[i] != SubjectDictionary.NO_ID) {
+                    decisionCache.put(identity, subjectIds[i], missedResults[j]);
+                }
+                j++;
+            }
+        }
+    }
+
+    private void lookUp(String[] subjects, PermissionType[] results, int parallelBatchSize) {
+        if (parallelBatchSize > 0 && subjects.length > parallelBatchSize) {
+            ForkJoinPool.commonPool().invoke(new BatchLookup(permissions, subjects, 0, subjects.length, results, parallelBatchSize));
+        } else {
+            permissions.getPermissions(subjects, 0, subjects.length, results);
+        }
+    }
+
+    public Shape getShape() {
+        return shape;
+    }
+
+    /**
+     * Returns an estimate of the heap used by the compiled permissions.
+     */
+    public long getMemoryBytes() {
+        return permissions.getMemoryBytes();
+    }
+
+    /**
+     * Returns a canonical form of the permission claims, equal for the claims which give the same permissions, e.g. with
+     * different names for the `{s}` segments, or with segments after a `*` segment.
+     *
+     * @throws Exception if the syntax of a subject or a permission is invalid, as for the constructor
+     */
+    public static String canonicalize(Map<String, List<String>> permissionClaims) throws Exception {
+        StringBuilder canonical = new StringBuilder();
+        for (Map.Entry<String, List<String>> entry : permissionClaims.entrySet()) {
+            PermissionType permissionType = PermissionType.fromCode(entry.getKey());
+            for (String subject : entry.getValue()) {
+                if (!Util.isSubjectValid(subject) || permissionType == PermissionType.NONE) {
+                    throw new Exception("Invalid syntax for subject " + subject + ", or permission " + entry.getKey());
+                }
+                StringBuilder normalized = new StringBuilder(subject.length());
+                for (int start = 1; start <= subject.length(); ) {
+                    int end = subject.indexOf('/', start);
+                    if (end == -1) {
+                        end = subject.length();
+                    }
+                    String segment = subject.substring(start, end);
+                    normalized.append('/');
+                    if (segment.equals("*")) {
+                        normalized.append('*');
+                        break;
+                    }
+                    normalized.append(SubjectPermission.isSymbol(segment) ? SubjectPermission.SYMBOL : segment);
+                    start = end + 1;
+                }
+                // the order of the claims matters, as a subject may be given several permissions, and the length
+                // makes the subjects unambiguous whatever their characters
+                canonical.append(permissionType.ordinal()).append(normalized.length()).append(':').append(normalized);
+            }
+        }
+        return canonical.toString();
+    }
+
+    private static final class BatchLookup extends RecursiveAction {
+        private final PermissionMatcher permissions;
+        private final String[] subjects;
+        private final int from;
+        private final int to;
+        private final PermissionType[] results;
+        private final int chunkSize;
+
+        BatchLookup(PermissionMatcher permissions, String[] subjects, int from, int to, PermissionType[] results, int chunkSize) {
+            this.permissions = permissions;
+            this.subjects = subjects;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                permissions.getPermissions(subjects, from, to, results);
+            } else {
+                // the halves keep the consecutive subjects together, so each chunk still shares their prefixes
+                int middle = (from + to) >>> 1;
+                invokeAll(new BatchLookup(permissions, subjects, from, middle, results, chunkSize),
+                        new BatchLookup(permissions, subjects, middle, to, results, chunkSize));
+            }
+        }
+    }
+
     public enum PermissionType {
         NONE("none"), SUB("sub"), PUB("pub"), ALL("all");
 
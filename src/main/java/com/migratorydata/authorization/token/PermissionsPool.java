@@ -0,0 +1,106 @@
+package com.migratorydata.authorization.token;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Intern pool of the compiled permissions, so that the tokens with the same permission claims, e.g. the tokens of the
+ * same app with different JWT IDs, share a single immutable Permissions object, and the claims are compiled once.
+ *
+ * The permissions are keyed by the canonical form of their claims, see Permissions.canonicalize(), and are weakly
+ * referenced, so they are dropped from the pool once no token uses them anymore.
+ *
+ * The pooled permissions share the DecisionCache given to the pool, if any.
+ */
+public class PermissionsPool {
+    private final Cache<Key, Permissions> pool = CacheBuilder.newBuilder().weakValues().build();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final DecisionCache decisionCache;
+
+    public PermissionsPool() {
+        this(null);
+    }
+
+    /**
+     * @param decisionCache the cache of the lookups shared by the pooled permissions, or null to disable it
+     */
+    public PermissionsPool(DecisionCache decisionCache) {
+        this.decisionCache = decisionCache;
+    }
+
+    /**
+     * Returns the permissions of the given claims, compiled or shared with another token.
+     *
+     * @throws Exception if the syntax of a subject or a permission is invalid
+     */
+    public Permissions get(Map<String, List<String>> permissionClaims) throws Exception {
+        Key key = new Key(Permissions.canonicalize(permissionClaims));
+        Permissions permissions = pool.getIfPresent(key);
+        if (permissions != null) {
+            hits.increment();
+            return permissions;
+        }
+        misses.increment();
+
+        // the claims may be compiled concurrently by several threads, and all of them use the first permissions pooled
+        permissions = new Permissions(permissionClaims, decisionCache);
+        Permissions pooledPermissions = pool.asMap().putIfAbsent(key, permissions);
+        return pooledPermissions != null ? pooledPermissions : permissions;
+    }
+
+    public long size() {
+        pool.cleanUp();
+        return pool.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns an estimate of the heap retained by the pooled permissions and their keys.
+     */
+    public long getRetainedBytes() {
+        long bytes = 0;
+        for (Map.Entry<Key, Permissions> entry : pool.asMap().entrySet()) {
+            bytes += 40 + 2L * entry.getKey().claims.length() + entry.getValue().getMemoryBytes();
+        }
+        return bytes;
+    }
+
+    private static final class Key {
+        private final String claims;
+        private final long hash;
+
+        Key(String claims) {
+            this.claims = claims;
+            this.hash = RevokedTokenIds.hash(claims);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && claims.equals(key.claims);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+}
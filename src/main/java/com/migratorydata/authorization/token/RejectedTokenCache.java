@@ -0,0 +1,53 @@
+package com.migratorydata.authorization.token;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.migratorydata.extensions.authorization.v2.client.StatusNotification;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the tokens recently rejected, with the status they were rejected with, so that the clients which
+ * keep connecting with the same expired or invalid token are rejected again without decoding, verifying or logging the
+ * token.
+ *
+ * Entries are keyed by the 64-bit hash of the raw token, see RevokedTokenIds.hash(): unlike the TokenCache, a collision
+ * could only reject a token, and finding one requires the token itself. Entries expire after a TTL, and are all dropped
+ * when a signing key is added, as the tokens rejected for an unknown signing key may then be valid.
+ */
+public class RejectedTokenCache {
+    private final Cache<Long, StatusNotification> cache;
+    private final LongAdder hits = new LongAdder();
+
+    public RejectedTokenCache(int maxSize, long ttlMillis) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS).build();
+    }
+
+    /**
+     * Returns the status a token was rejected with, or null if the token was not rejected recently.
+     */
+    public StatusNotification get(String jwtToken) {
+        StatusNotification status = cache.getIfPresent(RevokedTokenIds.hash(jwtToken));
+        if (status != null) {
+            hits.increment();
+        }
+        return status;
+    }
+
+    public void put(String jwtToken, StatusNotification status) {
+        cache.put(RevokedTokenIds.hash(jwtToken), status);
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,454 @@
+package com.migratorydata.authorization.token;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact set of the JWT IDs of the revoked tokens, optimized for the lookups on the subscribe and publish paths.
+ *
+ * The set stores a 64-bit hash of each JWT ID, rather than the JWT ID itself, in an open-addressing table, on the heap
+ * or off-heap, together with the latest expiration time of the tokens having that JWT ID, i.e. 12 bytes per slot and
+ * from 16 to 48 bytes per JWT ID depending on the load of the table, while a HashSet takes more than 100 bytes per
+ * JWT ID of 36 chars. With 10^6 revoked tokens, the probability that a token which is not revoked has the same hash
+ * as a revoked one is about 10^-13.
+ *
+ * The expiration time of a JWT ID is given by the portal, or learned when a token with that JWT ID connects. Once all
+ * the tokens with a JWT ID have expired, the JWT ID is pruned from the set. A JWT ID whose expiration time is unknown
+ * is kept.
+ *
+ * Lookups read an immutable snapshot of the table, so they never lock and never see a partial update. The changes are
+ * made by a single writer on a copy of the table, and become visible all at once when publish() swaps the snapshot.
+ */
+public class RevokedTokenIds {
+    private static final long EMPTY = 0;
+    private static final int MIN_CAPACITY = 16;
+
+    // expiration times are stored as unsigned ints of seconds since epoch, so that a larger value is a later time
+    private static final int UNKNOWN_EXPIRATION = 0;
+    private static final int NO_EXPIRATION = -1;
+
+    private final boolean offHeap;
+
+    private volatile Table snapshot;
+    private Table working; // the copy of the snapshot modified by the writer until the next publish
+    private boolean replacing;
+    private int addedByReplace;
+
+    // expiration times learned from the tokens which connect, applied by the writer on the next prune
+    private final Map<Long, Integer> learnedExpirations = new ConcurrentHashMap<>();
+
+    public RevokedTokenIds(boolean offHeap) {
+        this.offHeap = offHeap;
+        this.snapshot = newTable(MIN_CAPACITY);
+    }
+
+    /**
+     * Returns true if the given JWT ID was revoked as of the last publish.
+     */
+    public boolean contains(String jwtId) {
+        if (jwtId == null) {
+            return false;
+        }
+        return snapshot.find(hash(jwtId)) != -1;
+    }
+
+    /**
+     * Returns true if the JWT ID with the given hash, see hash(), was revoked as of the last publish.
+     */
+    public boolean contains(long jwtIdHash) {
+        return jwtIdHash != EMPTY && snapshot.find(jwtIdHash) != -1;
+    }
+
+    /**
+     * Records the expiration time of a token which connects, if its JWT ID is revoked. Can be called by any thread.
+     */
+    public void learnExpiration(String jwtId, long expirationTimeMillis) {
+        if (jwtId == null) {
+            return;
+        }
+        learnExpiration(hash(jwtId), expirationTimeMillis);
+    }
+
+    /**
+     * Records the expiration time of a token which connects, given the hash of its JWT ID, see hash().
+     */
+    public void learnExpiration(long jwtIdHash, long expirationTimeMillis) {
+        if (jwtIdHash != EMPTY && snapshot.find(jwtIdHash) != -1) {
+            learnedExpirations.merge(jwtIdHash, toSeconds(expirationTimeMillis), RevokedTokenIds::latest);
+        }
+    }
+
+    /**
+     * Adds a JWT ID whose expiration time is unknown, visible to the lookups after the next publish. Must be called by
+     * the writer only.
+     *
+     * @return true if the JWT ID was not already revoked
+     */
+    public boolean add(String jwtId) {
+        return add(jwtId, UNKNOWN_EXPIRATION);
+    }
+
+    /**
+     * Adds a JWT ID with the expiration time of its token, visible to the lookups after the next publish. Must be
+     * called by the writer only.
+     *
+     * @return true if the JWT ID was not already revoked
+     */
+    public boolean add(String jwtId, long expirationTimeMillis) {
+        return add(jwtId, toSeconds(expirationTimeMillis));
+    }
+
+    private boolean add(String jwtId, int expiration) {
+        if (jwtId == null) {
+            return false;
+        }
+        long hash = hash(jwtId);
+        Table table = getWorkingTable();
+        if (table.size + 1 > table.capacity() / 4 * 3) {
+            table = working = table.copy(newTable(table.capacity() * 2));
+        }
+        if (!replacing) {
+            return table.add(hash, expiration);
+        }
+
+        // keep the expiration time known for the JWT ID before the replace
+        int previous = snapshot.find(hash);
+        if (previous != -1) {
+            expiration = latest(expiration, snapshot.getExpiration(previous));
+        }
+        if (table.add(hash, expiration) && previous == -1) {
+            addedByReplace++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes a JWT ID, visible to the lookups after the next publish. Must be called by the writer only.
+     *
+     * @return true if the JWT ID was revoked
+     */
+    public boolean remove(String jwtId) {
+        if (jwtId == null) {
+            return false;
+        }
+        return getWorkingTable().remove(hash(jwtId));
+    }
+
+    /**
+     * Starts to replace the whole set with the JWT IDs added until finishReplace(). Must be called by the writer only.
+     */
+    public void startReplace() {
+        working = newTable(capacityFor(snapshot.size));
+        replacing = true;
+        addedByReplace = 0;
+    }
+
+    /**
+     * Finishes to replace the whole set, visible to the lookups after the next publish. Must be called by the writer
+     * only.
+     *
+     * @return the number of JWT IDs which are not revoked anymore
+     */
+    public int finishReplace() {
+        replacing = false;
+        return snapshot.size - (working.size - addedByReplace);
+    }
+
+    /**
+     * Removes the JWT IDs whose tokens have all expired at the given time, visible to the lookups after the next
+     * publish. Must be called by the writer only.
+     *
+     * @return the number of JWT IDs removed
+     */
+    public int prune(long currentTimeMillis) {
+        Table table = snapshot;
+        if (!learnedExpirations.isEmpty()) {
+            table = getWorkingTable();
+            for (Map.Entry<Long, Integer> learnedExpiration : learnedExpirations.entrySet()) {
+                table.updateExpiration(learnedExpiration.getKey(), learnedExpiration.getValue());
+                learnedExpirations.remove(learnedExpiration.getKey(), learnedExpiration.getValue());
+            }
+        }
+
+        // the time is truncated to seconds, so a JWT ID expired since less than one second is pruned next time
+        int now = (int) (currentTimeMillis / 1000);
+        if (!table.hasExpired(now)) {
+            return 0;
+        }
+        table = getWorkingTable();
+        int removed = table.removeExpired(now);
+        if (table.capacity() > capacityFor(table.size)) {
+            working = table.copy(newTable(capacityFor(table.size)));
+        }
+        return removed;
+    }
+
+    /**
+     * Makes the changes since the previous publish visible to the lookups. Must be called by the writer only.
+     */
+    public void publish() {
+        if (working != null && !replacing) {
+            snapshot = working;
+            working = null;
+        }
+    }
+
+    /**
+     * Discards the changes since the previous publish, e.g. after a payload failed to be read. Must be called by the
+     * writer only.
+     */
+    public void discard() {
+        working = null;
+        replacing = false;
+    }
+
+    /**
+     * Returns the number of JWT IDs as of the last publish.
+     */
+    public int size() {
+        return snapshot.size;
+    }
+
+    /**
+     * Returns the memory used by the table as of the last publish.
+     */
+    public long getMemoryBytes() {
+        return (long) snapshot.capacity() * (Long.BYTES + Integer.BYTES);
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    private Table getWorkingTable() {
+        if (working == null) {
+            // the copy is also sized for the current number of JWT IDs, so the table shrinks after removals
+            working = snapshot.copy(newTable(capacityFor(snapshot.size)));
+        }
+        return working;
+    }
+
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private Table newTable(int capacity) {
+        return offHeap ? new OffHeapTable(capacity) : new HeapTable(capacity);
+    }
+
+    private static int toSeconds(long expirationTimeMillis) {
+        if (expirationTimeMillis == JwtPayload.NO_EXPIRATION || expirationTimeMillis / 1000 >= 0xffffffffL) {
+            return NO_EXPIRATION;
+        }
+        // rounded up, so that a JWT ID is never pruned before its token expires
+        return (int) Math.max(1, (expirationTimeMillis + 999) / 1000);
+    }
+
+    private static int latest(int expiration1, int expiration2) {
+        return Integer.compareUnsigned(expiration1, expiration2) >= 0 ? expiration1 : expiration2;
+    }
+
+    private static boolean hasExpired(int expiration, int now) {
+        return expiration != UNKNOWN_EXPIRATION && Integer.compareUnsigned(expiration, now) < 0;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the chars of the JWT ID, followed by the finalizer of MurmurHash3 to spread its bits. The
+     * hash is never 0.
+     */
+    public static long hash(String jwtId) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < jwtId.length(); i++) {
+            h ^= jwtId.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= jwtId.length();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == EMPTY ? 1 : h;
+    }
+
+    /**
+     * A linear probing table of non-zero hashes and their expiration times, with a power of two capacity. Removals
+     * shift back the next entries of the probe sequence, so there are no tombstones.
+     */
+    private static abstract class Table {
+        private final int mask;
+        private int size;
+
+        Table(int capacity) {
+            this.mask = capacity - 1;
+        }
+
+        abstract long getHash(int index);
+
+        abstract int getExpiration(int index);
+
+        abstract void set(int index, long hash, int expiration);
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        int find(long hash) {
+            for (int index = (int) hash & mask; ; index = (index + 1) & mask) {
+                long slot = getHash(index);
+                if (slot == hash) {
+                    return index;
+                }
+                if (slot == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        boolean add(long hash, int expiration) {
+            for (int index = (int) hash & mask; ; index = (index + 1) & mask) {
+                long slot = getHash(index);
+                if (slot == hash) {
+                    set(index, hash, latest(expiration, getExpiration(index)));
+                    return false;
+                }
+                if (slot == EMPTY) {
+                    set(index, hash, expiration);
+                    size++;
+                    return true;
+                }
+            }
+        }
+
+        void updateExpiration(long hash, int expiration) {
+            int index = find(hash);
+            if (index != -1) {
+                set(index, hash, latest(expiration, getExpiration(index)));
+            }
+        }
+
+        boolean remove(long hash) {
+            int index = find(hash);
+            if (index == -1) {
+                return false;
+            }
+            removeAt(index);
+            return true;
+        }
+
+        private void removeAt(int index) {
+            // move back the next entries which cannot be found anymore because of the hole left at index
+            int hole = index;
+            for (index = (index + 1) & mask; ; index = (index + 1) & mask) {
+                long slot = getHash(index);
+                if (slot == EMPTY) {
+                    break;
+                }
+                int home = (int) slot & mask;
+                // the entry moves to the hole unless its home is cyclically in (hole, index]
+                if (((index - home) & mask) >= ((index - hole) & mask)) {
+                    set(hole, slot, getExpiration(index));
+                    hole = index;
+                }
+            }
+            set(hole, EMPTY, UNKNOWN_EXPIRATION);
+            size--;
+        }
+
+        boolean hasExpired(int now) {
+            for (int index = 0; index < capacity(); index++) {
+                if (getHash(index) != EMPTY && RevokedTokenIds.hasExpired(getExpiration(index), now)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int removeExpired(int now) {
+            int removed = 0;
+            for (int index = 0; index < capacity(); ) {
+                if (getHash(index) != EMPTY && RevokedTokenIds.hasExpired(getExpiration(index), now)) {
+                    // an entry may have been moved back to index, so it is checked again
+                    removeAt(index);
+                    removed++;
+                } else {
+                    index++;
+                }
+            }
+            return removed;
+        }
+
+        Table copy(Table target) {
+            for (int index = 0; index < capacity(); index++) {
+                long slot = getHash(index);
+                if (slot != EMPTY) {
+                    target.add(slot, getExpiration(index));
+                }
+            }
+            return target;
+        }
+    }
+
+    private static final class HeapTable extends Table {
+        private final long[] hashes;
+        private final int[] expirations;
+
+        HeapTable(int capacity) {
+            super(capacity);
+            this.hashes = new long[capacity];
+            this.expirations = new int[capacity];
+        }
+
+        @Override
+        long getHash(int index) {
+            return hashes[index];
+        }
+
+        @Override
+        int getExpiration(int index) {
+            return expirations[index];
+        }
+
+        @Override
+        void set(int index, long hash, int expiration) {
+            hashes[index] = hash;
+            expirations[index] = expiration;
+        }
+    }
+
+    private static final class OffHeapTable extends Table {
+        private final LongBuffer hashes;
+        private final IntBuffer expirations;
+
+        OffHeapTable(int capacity) {
+            super(capacity);
+            // direct buffers are zeroed, and freed when the table is garbage collected
+            this.hashes = ByteBuffer.allocateDirect(capacity * Long.BYTES).asLongBuffer();
+            this.expirations = ByteBuffer.allocateDirect(capacity * Integer.BYTES).asIntBuffer();
+        }
+
+        @Override
+        long getHash(int index) {
+            return hashes.get(index);
+        }
+
+        @Override
+        int getExpiration(int index) {
+            return expirations.get(index);
+        }
+
+        @Override
+        void set(int index, long hash, int expiration) {
+            hashes.put(index, hash);
+            expirations.put(index, expiration);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.migratorydata.authorization.token;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small int IDs of the signing keys, so that a token keeps the ID of its signing key as an int rather than its own copy
+ * of the `secret_id` string.
+ *
+ * An ID is given to a signing key the first time a token signed with that key is verified, so the number of IDs is
+ * bounded by the number of signing keys defined in the portal over the lifetime of the process. The IDs are never
+ * reused.
+ */
+public final class SigningKeyIds {
+    public static final int NO_ID = -1;
+
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private SigningKeyIds() {
+    }
+
+    /**
+     * Returns the ID of a signing key, given on the first call.
+     */
+    public static int idOf(String signingKeyId) {
+        if (signingKeyId == null) {
+            return NO_ID;
+        }
+        Integer id = IDS.get(signingKeyId);
+        if (id == null) {
+            id = IDS.computeIfAbsent(signingKeyId, k -> NEXT_ID.getAndIncrement());
+        }
+        return id;
+    }
+
+    /**
+     * Returns the ID of a signing key, or NO_ID if no token signed with that key was verified.
+     */
+    public static int find(String signingKeyId) {
+        Integer id = signingKeyId != null ? IDS.get(signingKeyId) : null;
+        return id != null ? id : NO_ID;
+    }
+}
@@ -0,0 +1,246 @@
+package com.migratorydata.authorization.token;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded dictionary of the subjects, which gives an int ID to each frequently used subject, so that the string of a
+ * subject is hashed and compared once per request, and then the permissions of the subject are cached by ID.
+ *
+ * The dictionary is a set-associative table of WAYS subjects per bucket, read without locks. When the bucket of a new
+ * subject is full, the new subject replaces the least frequent subject of the bucket only if it is more frequent,
+ * according to a count-min sketch of the recent lookups as in TinyLFU, so a subject looked up once does not evict a hot
+ * subject, and gets no ID.
+ *
+ * A subject which is evicted and looked up again gets a new ID, so an ID kept after its subject was evicted does not
+ * denote another subject until the IDs are recycled. Two threads adding the same subject concurrently may rarely give
+ * it two IDs, both denoting that subject.
+ *
+ * The IDs are recycled by generation: the high bits of an ID are its generation, and the low bits its sequence number
+ * in the generation. When the IDs of a generation start to be given, the subjects which still have an ID of the next
+ * generation, given a full cycle of the IDs ago, are dropped, and the recycle listener, i.e. the decision cache, drops
+ * the decisions cached by ID. So the IDs of the next generation are given again only after a whole generation of new
+ * IDs, and never denote two subjects unless a thread holds an ID across that many admissions.
+ *
+ * The recycle scans the whole table, so it runs on the recycle executor rather than on the thread which gives the first
+ * ID of a generation, and has a whole generation of admissions to complete. Only if it has not completed when the IDs
+ * of its generation start to be given is it run by the thread giving the first of them.
+ */
+public class SubjectDictionary {
+    public static final int NO_ID = -1;
+
+    private static final int WAYS = 8;
+    private static final int ID_BITS = 31;
+    private static final int SEQUENCE_BITS = 24;
+
+    private final AtomicReferenceArray<Subject> table;
+    private final int bucketMask;
+    private final FrequencySketch sketch;
+    private final AtomicLong nextId = new AtomicLong();
+    private final int idMask;
+    private final int sequenceBits;
+    private final int generationMask;
+    private final Executor recycleExecutor;
+    private volatile Runnable recycleListener;
+    private volatile int recycledGeneration = 1; // the IDs of the first generations were never given before
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder recycles = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of subjects, rounded up to a power of two
+     */
+    public SubjectDictionary(int maxSize) {
+        this(maxSize, Runnable::run);
+    }
+
+    /**
+     * @param maxSize the maximum number of subjects, rounded up to a power of two
+     * @param recycleExecutor the executor which recycles the IDs, off the threads looking up the subjects
+     */
+    public SubjectDictionary(int maxSize, Executor recycleExecutor) {
+        this(maxSize, ID_BITS, SEQUENCE_BITS, recycleExecutor);
+    }
+
+    /**
+     * @param idBits the number of bits of the IDs
+     * @param sequenceBits the number of low bits of the IDs numbering the IDs of a generation
+     */
+    SubjectDictionary(int maxSize, int idBits, int sequenceBits, Executor recycleExecutor) {
+        this.recycleExecutor = recycleExecutor;
+        this.idMask = (int) ((1L << idBits) - 1);
+        this.sequenceBits = sequenceBits;
+        this.generationMask = (1 << (idBits - sequenceBits)) - 1;
+        int capacity = Integer.highestOneBit(Math.max(WAYS, maxSize - 1) << 1);
+        this.table = new AtomicReferenceArray<>(capacity);
+        this.bucketMask = capacity / WAYS - 1;
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    /**
+     * Returns the ID of a subject, and adds the subject to the dictionary if it is more frequent than the subject it
+     * would evict.
+     *
+     * @return the ID of the subject, or NO_ID if the subject is not in the dictionary
+     */
+    public int getId(String subject) {
+        return getId(subject, false);
+    }
+
+    /**
+     * Returns the ID of a subject, and adds the subject to the dictionary.
+     *
+     * @param force whether the subject is added even if it is less frequent than the subject it evicts
+     * @return the ID of the subject, or NO_ID if the subject is not forced and is not more frequent than the subject it
+     * would evict
+     */
+    public int getId(String subject, boolean force) {
+        int hash = hash(subject);
+        sketch.increment(hash);
+        int base = (hash & bucketMask) * WAYS;
+        for (int way = 0; way < WAYS; way++) {
+            Subject entry = table.get(base + way);
+            if (entry != null && entry.hash == hash && entry.subject.equals(subject)) {
+                hits.increment();
+                return entry.id;
+            }
+        }
+        misses.increment();
+        return add(subject, hash, base, force);
+    }
+
+    private int add(String subject, int hash, int base, boolean force) {
+        // the racing adds of a subject usually choose the same way, and the losers find the subject of the winner
+        for (int attempt = 0; attempt < 2; attempt++) {
+            int victimIndex = -1;
+            Subject victim = null;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int way = 0; way < WAYS; way++) {
+                Subject entry = table.get(base + way);
+                if (entry == null) {
+                    victimIndex = base + way;
+                    victim = null;
+                    break;
+                }
+                if (entry.hash == hash && entry.subject.equals(subject)) {
+                    return entry.id;
+                }
+                int frequency = sketch.frequency(entry.hash);
+                if (frequency < victimFrequency) {
+                    victimIndex = base + way;
+                    victim = entry;
+                    victimFrequency = frequency;
+                }
+            }
+            if (victim != null && !force && sketch.frequency(hash) <= victimFrequency) {
+                return NO_ID;
+            }
+
+            long count = nextId.getAndIncrement();
+            int id = (int) count & idMask;
+            if (count != 0 && (id & ((1 << sequenceBits) - 1)) == 0) {
+                startGeneration(id >>> sequenceBits);
+            }
+            if (table.compareAndSet(victimIndex, victim, new Subject(subject, hash, id))) {
+                if (victim != null) {
+                    evictions.increment();
+                }
+                return id;
+            }
+        }
+        return NO_ID;
+    }
+
+    private void startGeneration(int generation) {
+        if (recycledGeneration != generation) {
+            recycle(generation); // the recycle started a generation ago did not complete
+        }
+        int nextGeneration = (generation + 1) & generationMask;
+        try {
+            recycleExecutor.execute(() -> recycle(nextGeneration));
+        } catch (RejectedExecutionException e) {
+            // recycled when its IDs start to be given
+        }
+    }
+
+    // drops the subjects with an ID of the given generation, about to be given again, and the decisions cached by ID
+    private void recycle(int generation) {
+        for (int i = 0; i < table.length(); i++) {
+            Subject entry = table.get(i);
+            if (entry != null && (entry.id >>> sequenceBits) == generation) {
+                table.compareAndSet(i, entry, null);
+            }
+        }
+        recycles.increment();
+        Runnable listener = recycleListener;
+        if (listener != null) {
+            listener.run();
+        }
+        recycledGeneration = generation;
+    }
+
+    /**
+     * Sets the listener called when the IDs of a generation are recycled, which must forget the IDs it keeps.
+     */
+    void setRecycleListener(Runnable recycleListener) {
+        this.recycleListener = recycleListener;
+    }
+
+    /**
+     * Returns the number of subjects in the dictionary.
+     */
+    public long size() {
+        long size = 0;
+        for (int i = 0; i < table.length(); i++) {
+            if (table.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public int capacity() {
+        return table.length();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of generations of IDs recycled.
+     */
+    public long getRecycleCount() {
+        return recycles.sum();
+    }
+
+    private static int hash(String subject) {
+        int hash = subject.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Subject {
+        private final String subject;
+        private final int hash;
+        private final int id;
+
+        Subject(String subject, int hash, int id) {
+            this.subject = subject;
+            this.hash = hash;
+            this.id = id;
+        }
+    }
+}
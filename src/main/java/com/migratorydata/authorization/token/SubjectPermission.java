@@ -12,6 +12,7 @@ public class SubjectPermission {
     private final String name;
     private SegmentType segmentType;
     private Permissions.PermissionType permissionType;
+    private int candidates; // the number of candidates among the descendants of this node, at any depth
 
     public SubjectPermission(String name) {
         this(name, Permissions.PermissionType.NONE, SegmentType.NONE);
@@ -24,7 +25,7 @@ public class SubjectPermission {
     }
 
     public void setPermission(String subject, Permissions.PermissionType permissionType) {
-        addPermission(subject.substring(1), permissionType, Permissions.PermissionType.NONE);
+        addPermission(subject, 1, permissionType, Permissions.PermissionType.NONE);
     }
 
     public Permissions.PermissionType getPermission(String subject) {
@@ -35,64 +36,81 @@ public class SubjectPermission {
         return permission.permissionType;
     }
 
-    private SubjectPermission addPermission(String pattern, Permissions.PermissionType permissionType, Permissions.PermissionType wildcardPermissionType) {
-        if (pattern == null) {
+    /**
+     * Returns true if the segment is a symbol, i.e. `{` followed by at least one character and `}`, as SYMBOL_REGEX.
+     */
+    public static boolean isSymbol(String segment) {
+        int length = segment.length();
+        return length >= 3 && segment.charAt(0) == '{' && segment.charAt(length - 1) == '}';
+    }
+
+    // Adds the pattern which starts at the given offset of the subject, where an offset beyond the end of the subject
+    // means no pattern. The subject is never copied, only its segments, so adding a subject is linear in its length.
+    //
+    // Returns the change of the number of candidates of the subtree of this node, this node included, see candidates.
+    private int addPermission(String subject, int start, Permissions.PermissionType permissionType, Permissions.PermissionType wildcardPermissionType) {
+        int before = candidates + (isCandidate() ? 1 : 0);
+
+        if (start > subject.length()) {
             this.update(SegmentType.SUBJECT, permissionType);
-            return this;
+            return candidates + (isCandidate() ? 1 : 0) - before;
         }
 
-        int i = pattern.indexOf("/");
+        int end = subject.indexOf('/', start);
         String segment;
-        if (i != -1) {
-            segment = pattern.substring(0, i);
-            pattern = pattern.substring(i + 1);
+        int next;
+        if (end != -1) {
+            segment = subject.substring(start, end);
+            next = end + 1;
         } else {
-            segment = pattern;
-            pattern = null;
+            segment = subject.substring(start);
+            next = subject.length() + 1;
         }
+        boolean last = next > subject.length();
 
         if (this.segmentType == SegmentType.WILDCARD) {
             wildcardPermissionType = this.permissionType;
         }
 
         if (segment.equals("*")) {
+            // a `*` descendant never has descendants, and is not a candidate
             SubjectPermission subjectPermission = new SubjectPermission(segment, permissionType, SegmentType.WILDCARD);
             this.update(SegmentType.WILDCARD, permissionType);
             descendants.put(segment, subjectPermission);
 
             this.updateForWildcard(permissionType);
-
-            return subjectPermission;
-        } else if (segment.matches(SYMBOL_REGEX)) {
+        } else if (isSymbol(segment)) {
             segment = SYMBOL;
 
             SubjectPermission subjectPermission = descendants.get(segment);
             if (subjectPermission == null) {
-                if (pattern == null) {
+                if (last) {
                     subjectPermission = new SubjectPermission(segment, permissionType, SegmentType.SYMBOL);
                 } else {
                     subjectPermission = new SubjectPermission(segment, wildcardPermissionType, SegmentType.SYMBOL);
                 }
                 descendants.put(segment, subjectPermission);
+                candidates += subjectPermission.isCandidate() ? 1 : 0;
             }
 
-            if (pattern != null) {
-                return subjectPermission.addPermission(pattern, permissionType, wildcardPermissionType);
+            if (!last) {
+                candidates += subjectPermission.addPermission(subject, next, permissionType, wildcardPermissionType);
             }
-            return subjectPermission;
         } else {
             SubjectPermission subjectPermission = descendants.get(segment);
             if (subjectPermission == null) {
-                if (pattern == null) {
+                if (last) {
                     subjectPermission = new SubjectPermission(segment, permissionType, SegmentType.SUBJECT);
                 } else {
                     subjectPermission = new SubjectPermission(segment, wildcardPermissionType, SegmentType.NONE);
                 }
                 descendants.put(segment, subjectPermission);
+                candidates += subjectPermission.isCandidate() ? 1 : 0;
             }
 
-            return subjectPermission.addPermission(pattern, permissionType, wildcardPermissionType);
+            candidates += subjectPermission.addPermission(subject, next, permissionType, wildcardPermissionType);
         }
+        return candidates + (isCandidate() ? 1 : 0) - before;
     }
 
     private SubjectPermission findPermission(String subject, Permissions.PermissionType wildcardPermission) {
@@ -130,13 +148,29 @@ public class SubjectPermission {
         return subjectPermission.findPermission(subject, wildcardPermission);
     }
 
-    private void updateForWildcard(Permissions.PermissionType wildCardPermission) {
-        for (Map.Entry<String, SubjectPermission> entry : descendants.entrySet()) {
-            if (entry.getValue().segmentType != SegmentType.SUBJECT && entry.getValue().permissionType == Permissions.PermissionType.NONE) {
-                entry.getValue().permissionType = wildCardPermission;
+    // Gives the permission of a `*` to the candidates of the subtree of this node. The subtrees without candidates are
+    // skipped, so each node is given the permission once, and adding a `*` does not walk the whole subtree again.
+    //
+    // Returns the number of candidates which were given the permission.
+    private int updateForWildcard(Permissions.PermissionType wildCardPermission) {
+        if (candidates == 0 || wildCardPermission == Permissions.PermissionType.NONE) {
+            return 0;
+        }
+        int updated = 0;
+        for (SubjectPermission descendant : descendants.values()) {
+            if (descendant.isCandidate()) {
+                descendant.permissionType = wildCardPermission;
+                updated++;
             }
-            entry.getValue().updateForWildcard(wildCardPermission);
+            updated += descendant.updateForWildcard(wildCardPermission);
         }
+        candidates -= updated;
+        return updated;
+    }
+
+    // a node which would be given the permission of a `*` added to one of its ancestors
+    private boolean isCandidate() {
+        return segmentType != SegmentType.SUBJECT && permissionType == Permissions.PermissionType.NONE;
     }
 
     private void update(SegmentType segmentType, Permissions.PermissionType permission) {
@@ -144,6 +178,18 @@ public class SubjectPermission {
         this.permissionType = permission;
     }
 
+    Map<String, SubjectPermission> getDescendants() {
+        return descendants;
+    }
+
+    Permissions.PermissionType getPermissionType() {
+        return permissionType;
+    }
+
+    SegmentType getSegmentType() {
+        return segmentType;
+    }
+
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append(name).append(":").append(permissionType).append(":").append(segmentType).append("\n");
@@ -0,0 +1,260 @@
+package com.migratorydata.authorization.token;
+
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel of timers with a deadline in epoch milliseconds, rounded up to the tick of the wheel.
+ *
+ * The wheel has LEVELS levels of SLOTS buckets each. A timer is stored in the bucket given by the highest group of
+ * LEVEL_BITS bits where its deadline tick differs from the current tick, so the buckets of a level are cascaded into
+ * the lower levels only when the current tick enters them. Buckets are intrusive doubly-linked lists, so scheduling
+ * and cancelling a timer are O(1) and allocation-free. A bitmap of the non-empty buckets gives the next tick when a
+ * timer may fire without visiting the empty buckets in between.
+ *
+ * This class is not thread-safe.
+ */
+public class TimingWheel<T> {
+    private static final int LEVEL_BITS = 8;
+    private static final int SLOTS = 1 << LEVEL_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 5;
+
+    private static final int NOT_SCHEDULED = -1;
+    private static final int OVERFLOW = -2;
+
+    private final long tickMillis;
+    private final Timer<T>[] buckets;
+    private final long[] nonEmptyBuckets = new long[LEVELS * SLOTS / Long.SIZE];
+    private Timer<T> overflow; // timers too far in the future for the top level
+    private long currentTick;  // all the timers with a deadline tick up to the current tick have fired
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, long currentTimeMillis) {
+        this.tickMillis = tickMillis;
+        this.buckets = (Timer<T>[]) new Timer[LEVELS * SLOTS];
+        this.currentTick = currentTimeMillis / tickMillis;
+    }
+
+    /**
+     * Schedules a timer, or reschedules it if it is already scheduled. A deadline which has already passed is moved to
+     * the next tick.
+     *
+     * @return the deadline of the timer rounded up to the tick of the wheel, or -1 if the timer is cancelled
+     */
+    public long schedule(Timer<T> timer, long deadlineMillis) {
+        if (timer.cancelled) {
+            return -1;
+        }
+        if (timer.bucket != NOT_SCHEDULED) {
+            unlink(timer);
+        } else {
+            size++;
+        }
+        long deadlineTick = (deadlineMillis + tickMillis - 1) / tickMillis;
+        timer.deadlineTick = Math.max(deadlineTick, currentTick + 1);
+        link(timer);
+        return timer.deadlineTick * tickMillis;
+    }
+
+    /**
+     * Cancels a timer. A cancelled timer cannot be scheduled again.
+     *
+     * @return true if the timer was scheduled
+     */
+    public boolean cancel(Timer<T> timer) {
+        timer.cancelled = true;
+        if (timer.bucket == NOT_SCHEDULED) {
+            return false;
+        }
+        unlink(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Advances the wheel up to the given time and collects the values of the timers which fired.
+     */
+    public void advance(long currentTimeMillis, List<T> fired) {
+        long tick = currentTimeMillis / tickMillis;
+        long nextTick;
+        while ((nextTick = nextTick()) <= tick) {
+            currentTick = nextTick;
+
+            // the level of the bucket of the next tick is given by its lowest non-zero group of bits
+            int level = Long.numberOfTrailingZeros(nextTick) / LEVEL_BITS;
+            if (level >= LEVELS) {
+                Timer<T> timer = overflow;
+                overflow = null;
+                cascade(timer, fired);
+            } else {
+                int bucket = level * SLOTS + slot(nextTick, level);
+                Timer<T> timer = buckets[bucket];
+                buckets[bucket] = null;
+                clearNonEmpty(bucket);
+                if (level == 0) {
+                    fire(timer, fired);
+                } else {
+                    cascade(timer, fired);
+                }
+            }
+        }
+        // no timer fires until the given time, so the wheel can jump there
+        currentTick = Math.max(currentTick, tick);
+    }
+
+    /**
+     * Returns the time of the next tick when a timer may fire, or Long.MAX_VALUE if there is no timer scheduled.
+     */
+    public long nextDeadlineMillis() {
+        long nextTick = nextTick();
+        return nextTick == Long.MAX_VALUE ? Long.MAX_VALUE : nextTick * tickMillis;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private long nextTick() {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = level * LEVEL_BITS;
+            int slot = nextNonEmptySlot(level, slot(currentTick, level) + 1);
+            if (slot != -1) {
+                // the same higher groups of bits as the current tick, the slot as the group of the level, and zeros below
+                long higherGroups = (currentTick >>> (shift + LEVEL_BITS)) << (shift + LEVEL_BITS);
+                return higherGroups | ((long) slot << shift);
+            }
+        }
+        if (overflow != null) {
+            int shift = LEVELS * LEVEL_BITS;
+            return ((currentTick >>> shift) + 1) << shift;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private void cascade(Timer<T> timer, List<T> fired) {
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            if (timer.deadlineTick <= currentTick) {
+                timer.bucket = NOT_SCHEDULED;
+                timer.prev = timer.next = null;
+                size--;
+                fired.add(timer.value);
+            } else {
+                link(timer);
+            }
+            timer = next;
+        }
+    }
+
+    private void fire(Timer<T> timer, List<T> fired) {
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            timer.bucket = NOT_SCHEDULED;
+            timer.prev = timer.next = null;
+            size--;
+            fired.add(timer.value);
+            timer = next;
+        }
+    }
+
+    private void link(Timer<T> timer) {
+        long differentBits = timer.deadlineTick ^ currentTick;
+        int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(differentBits)) / LEVEL_BITS;
+        timer.prev = null;
+        if (level >= LEVELS) {
+            timer.bucket = OVERFLOW;
+            timer.next = overflow;
+            if (overflow != null) {
+                overflow.prev = timer;
+            }
+            overflow = timer;
+        } else {
+            int bucket = level * SLOTS + slot(timer.deadlineTick, level);
+            timer.bucket = bucket;
+            timer.next = buckets[bucket];
+            if (buckets[bucket] != null) {
+                buckets[bucket].prev = timer;
+            } else {
+                setNonEmpty(bucket);
+            }
+            buckets[bucket] = timer;
+        }
+    }
+
+    private void unlink(Timer<T> timer) {
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else if (timer.bucket == OVERFLOW) {
+            overflow = timer.next;
+        } else {
+            buckets[timer.bucket] = timer.next;
+            if (timer.next == null) {
+                clearNonEmpty(timer.bucket);
+            }
+        }
+        timer.bucket = NOT_SCHEDULED;
+        timer.prev = timer.next = null;
+    }
+
+    private static int slot(long tick, int level) {
+        return (int) (tick >>> (level * LEVEL_BITS)) & SLOT_MASK;
+    }
+
+    private int nextNonEmptySlot(int level, int fromSlot) {
+        if (fromSlot >= SLOTS) {
+            return -1;
+        }
+        int firstWord = level * SLOTS / Long.SIZE;
+        int word = fromSlot / Long.SIZE;
+        long bits = nonEmptyBuckets[firstWord + word] & (-1L << (fromSlot % Long.SIZE));
+        while (true) {
+            if (bits != 0) {
+                return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == SLOTS / Long.SIZE) {
+                return -1;
+            }
+            bits = nonEmptyBuckets[firstWord + word];
+        }
+    }
+
+    private void setNonEmpty(int bucket) {
+        nonEmptyBuckets[bucket / Long.SIZE] |= 1L << (bucket % Long.SIZE);
+    }
+
+    private void clearNonEmpty(int bucket) {
+        nonEmptyBuckets[bucket / Long.SIZE] &= ~(1L << (bucket % Long.SIZE));
+    }
+
+    /**
+     * A timer of the wheel, created once for its value and scheduled as many times as needed.
+     */
+    public static class Timer<T> {
+        private final T value;
+        private long deadlineTick;
+        private Timer<T> prev;
+        private Timer<T> next;
+        private int bucket = NOT_SCHEDULED;
+        private boolean cancelled;
+
+        public Timer(T value) {
+            this.value = value;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public boolean isScheduled() {
+            return bucket != NOT_SCHEDULED;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.migratorydata.authorization.token;
 
 import com.migratorydata.extensions.authorization.v2.client.StatusNotification;
 import io.jsonwebtoken.*;
+import io.jsonwebtoken.security.SignatureException;
 
 import java.util.Date;
 import java.util.List;
@@ -35,21 +36,97 @@ public class Token {
     public static final String PUB_FIELD = "pub";
     public static final String ALL_FIELD = "all";
     public static final String SIGNING_KEY_ID_FIELD = "secret_id";
+    public static final String ID_FIELD = "jti";
+    public static final String EXPIRATION_FIELD = "exp";
 
-    private final String token;
+    // A token is shared by all the sessions which connect with it, and only keeps what the sessions need once it is
+    // verified: the raw JWT token and its payload are released by parseToken(), and the claims are not retained
+    private String token;
+    private JwtPayload payload;
 
-    private Jws<Claims> jwsClaims = null;
-    private Permissions permissions = null;
+    private final long idHash;             // 64-bit hash of the JWT ID, see RevokedTokenIds.hash(), or NO_ID_HASH
+    private final int signingKeyId;        // see SigningKeyIds, or SigningKeyIds.NO_ID
+    private final long expirationTimeMillis;
+    private Permissions permissions = null; // shared with the other tokens with the same permission claims
+    private TokenQuota quota = null;        // shared with the other tokens with the same JWT ID or app, or null
+
+    public static final long NO_ID_HASH = 0;
 
     public Token(String token) {
+        this(token, JwtPayload.read(token));
+    }
+
+    /**
+     * @param token the JWT token
+     * @param payload the payload of the JWT token already read with {@link JwtPayload#read(String)}
+     */
+    public Token(String token, JwtPayload payload) {
         this.token = token;
+        this.payload = payload;
+        if (payload != null) {
+            this.idHash = payload.getId() != null ? RevokedTokenIds.hash(payload.getId()) : NO_ID_HASH;
+            this.signingKeyId = SigningKeyIds.idOf(payload.getSigningKeyId());
+            this.expirationTimeMillis = payload.getExpirationTimeMillis();
+        } else {
+            this.idHash = NO_ID_HASH;
+            this.signingKeyId = SigningKeyIds.NO_ID;
+            this.expirationTimeMillis = JwtPayload.NO_EXPIRATION;
+        }
     }
 
     public StatusNotification parseToken(JwtParser jwtParser) {
+        return parseToken(jwtParser, null);
+    }
+
+    /**
+     * @param jwtParser the parser which verifies the signature of the token
+     * @param permissionsPool the pool of the permissions shared with the other tokens, or null to compile them
+     */
+    public StatusNotification parseToken(JwtParser jwtParser, PermissionsPool permissionsPool) {
+        return parseToken(null, jwtParser, permissionsPool);
+    }
+
+    /**
+     * @param hmacVerifier the verifier of the signature of the HMAC tokens, or null to verify all the tokens with the
+     *                     parser; the tokens it does not support are verified with the parser
+     * @param jwtParser the parser which verifies the signature of the token
+     * @param permissionsPool the pool of the permissions shared with the other tokens, or null to compile them
+     */
+    public StatusNotification parseToken(HmacVerifier hmacVerifier, JwtParser jwtParser, PermissionsPool permissionsPool) {
+        try {
+            return parse(hmacVerifier, jwtParser, permissionsPool);
+        } finally {
+            token = null;
+            payload = null;
+        }
+    }
+
+    private StatusNotification parse(HmacVerifier hmacVerifier, JwtParser jwtParser, PermissionsPool permissionsPool) {
+        if (payload == null) {
+            System.err.println("The token is not a valid JWS structure.");
+            return TOKEN_INVALID;
+        }
+        if (payload.hasExpired(System.currentTimeMillis())) {
+            // no need to verify the signature of an expired token
+            System.err.println("The token is expired.");
+            return TOKEN_EXPIRED;
+        }
+
         StatusNotification tokenStatus = TOKEN_VALID;
         try {
-            jwsClaims = jwtParser.parseClaimsJws(token);
-            permissions = new Permissions((Map<String, List<String>>) jwsClaims.getBody().get(PERMISSIONS_FIELD));
+            Map<String, List<String>> permissionClaims;
+            // the tokens with a `nbf` claim are left to the parser which checks it
+            HmacVerifier.Result result = (hmacVerifier != null && !payload.hasNotBefore()) ? hmacVerifier.verify(token) : HmacVerifier.Result.UNSUPPORTED;
+            if (result == HmacVerifier.Result.VALID) {
+                permissionClaims = payload.readPermissions();
+            } else if (result == HmacVerifier.Result.INVALID) {
+                // the same error as the one of the parser, so that the token gets the same status
+                throw new SignatureException("JWT signature does not match locally computed signature.");
+            } else {
+                Jws<Claims> jwsClaims = jwtParser.parseClaimsJws(token);
+                permissionClaims = (Map<String, List<String>>) jwsClaims.getBody().get(PERMISSIONS_FIELD);
+            }
+            permissions = (permissionsPool != null) ? permissionsPool.get(permissionClaims) : new Permissions(permissionClaims);
         } catch (MalformedJwtException e) {
             System.err.println("The token is not a valid JWS structure." + e.getMessage());
             tokenStatus = TOKEN_INVALID;
@@ -64,11 +141,19 @@ public class Token {
     }
 
     /**
-     * Returns the `jti` field of the JWT token.
-     * @return the JWT ID of the token
+     * Returns the hash of the `jti` field of the JWT token.
+     * @return the 64-bit hash of the JWT ID of the token, as stored by RevokedTokenIds, or NO_ID_HASH if missing
+     */
+    public long getIdHash() {
+        return idHash;
+    }
+
+    /**
+     * Returns the ID of the `secret_id` field of the JWT token.
+     * @return the ID of the signing key of the token given by SigningKeyIds, or SigningKeyIds.NO_ID if missing
      */
-    public String getId() {
-        return jwsClaims.getBody().getId();
+    public int getSigningKeyId() {
+        return signingKeyId;
     }
 
     /**
@@ -76,7 +161,28 @@ public class Token {
      * @return the time (epoch in seconds) when the JWT token expires
      */
     public Date getExpirationTime() {
-        return jwsClaims.getBody().getExpiration();
+        long expirationTimeMillis = getExpirationTimeMillis();
+        return expirationTimeMillis != JwtPayload.NO_EXPIRATION ? new Date(expirationTimeMillis) : null;
+    }
+
+    /**
+     * Returns the `exp` field of the JWT token in milliseconds.
+     * @return the time (epoch in milliseconds) when the JWT token expires, or JwtPayload.NO_EXPIRATION
+     */
+    public long getExpirationTimeMillis() {
+        return expirationTimeMillis;
+    }
+
+    /**
+     * Returns the quota of the sessions of this token.
+     * @return the quota, or null if the sessions of this token have no limits
+     */
+    public TokenQuota getQuota() {
+        return quota;
+    }
+
+    public void setQuota(TokenQuota quota) {
+        this.quota = quota;
     }
 
     public boolean authorizeSubscribe(String topic) {
@@ -87,8 +193,37 @@ public class Token {
         return false;
     }
 
+    /**
+     * Authorizes the subscription to a batch of subjects in a single lookup, see Permissions.getPermissions().
+     */
+    public void authorizeSubscribe(String[] topics, boolean[] authorized, int parallelBatchSize) {
+        authorizeSubscribe(topics, null, authorized, parallelBatchSize);
+    }
+
+    /**
+     * Authorizes the subscription to a batch of subjects whose IDs were already given by the SubjectDictionary, see
+     * Permissions.getPermissions().
+     */
+    public void authorizeSubscribe(String[] topics, int[] topicIds, boolean[] authorized, int parallelBatchSize) {
+        Permissions.PermissionType[] permissionTypes = new Permissions.PermissionType[topics.length];
+        permissions.getPermissions(topics, topicIds, permissionTypes, parallelBatchSize);
+        for (int i = 0; i < topics.length; i++) {
+            authorized[i] = permissionTypes[i] == Permissions.PermissionType.SUB || permissionTypes[i] == Permissions.PermissionType.ALL;
+        }
+    }
+
     public boolean authorizePublish(String topic) {
-        Permissions.PermissionType permission = permissions.getPermission(topic);
+        return isPublishAllowed(permissions.getPermission(topic));
+    }
+
+    /**
+     * @param topicId the ID of the subject given by the SubjectDictionary, or SubjectDictionary.NO_ID
+     */
+    public boolean authorizePublish(String topic, int topicId) {
+        return isPublishAllowed(permissions.getPermission(topic, topicId));
+    }
+
+    private static boolean isPublishAllowed(Permissions.PermissionType permission) {
         if ((permission == Permissions.PermissionType.PUB || permission == Permissions.PermissionType.ALL)) {
             return true;
         }
@@ -0,0 +1,133 @@
+package com.migratorydata.authorization.token;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongPredicate;
+
+/**
+ * Bounded cache of the tokens which have already been verified, so that a client reconnecting with the same JWT
+ * token skips the signature verification, the claims parsing and the building of the permissions.
+ *
+ * Entries are keyed by the SHA-256 digest of the raw token together with the ID of the signing key which verified it.
+ * An entry is dropped when its token expires, when its signing key is removed, or when its JWT ID is revoked.
+ */
+public class TokenCache {
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Cache<Key, Entry> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public TokenCache(int maxSize) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Returns the verified token for the given raw token and signing key, or null if not cached or expired.
+     */
+    public Token get(String signingKeyId, String jwtToken) {
+        Key key = new Key(signingKeyId, jwtToken);
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.hasExpired(System.currentTimeMillis())) {
+            cache.asMap().remove(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.token;
+    }
+
+    /**
+     * Caches a token which has been successfully verified with the given signing key.
+     */
+    public void put(String signingKeyId, String jwtToken, Token token) {
+        cache.put(new Key(signingKeyId, jwtToken), new Entry(token));
+    }
+
+    /**
+     * Drops the tokens verified with a signing key which is not among the given signing keys.
+     */
+    public void retainSigningKeys(Set<String> signingKeyIds) {
+        cache.asMap().keySet().removeIf(key -> !signingKeyIds.contains(key.signingKeyId));
+    }
+
+    /**
+     * Drops the tokens whose hash of the JWT ID matches the given predicate, e.g. all the revoked tokens, so it costs one
+     * lookup per cached token whatever the number of JWT IDs.
+     */
+    public void invalidateTokenIds(LongPredicate isInvalid) {
+        cache.asMap().values().removeIf(entry -> isInvalid.test(entry.token.getIdHash()));
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private static final class Key {
+        private final String signingKeyId;
+        private final byte[] digest;
+        private final int hash;
+
+        Key(String signingKeyId, String jwtToken) {
+            this.signingKeyId = signingKeyId;
+            this.digest = SHA_256.get().digest(jwtToken.getBytes(StandardCharsets.US_ASCII));
+            // the digest is uniformly distributed, so its first bytes are a good hash code
+            this.hash = 31 * signingKeyId.hashCode() + ((digest[0] & 0xff) << 24 | (digest[1] & 0xff) << 16 | (digest[2] & 0xff) << 8 | (digest[3] & 0xff));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash && signingKeyId.equals(key.signingKeyId) && Arrays.equals(digest, key.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final Token token;
+        private final long expirationTimeMillis;
+
+        Entry(Token token) {
+            this.token = token;
+            this.expirationTimeMillis = token.getExpirationTimeMillis();
+        }
+
+        boolean hasExpired(long currentTimeMillis) {
+            return currentTimeMillis > expirationTimeMillis;
+        }
+    }
+}
@@ -2,81 +2,159 @@ package com.migratorydata.authorization.token;
 
 import com.migratorydata.authorization.client.Session;
 
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class TokenExpirationHandler {
+    private static final long TICK_MILLIS = 100;
+
     private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
 
-    private final TreeSet<Session> sessionsByExpiration = new TreeSet<>(Session.ORDER_BY_TOKEN_EXPIRATION_TIME);
-    private final TreeSet<Session> sessionsAwaitingTokenRenewal = new TreeSet<>(Session.ORDER_BY_TOKEN_RENEWAL_TIMESTAMP);
+    // Each session has a single timer which fires first when it is time to renew its token, then when the token
+    // renewal times out
+    private final TimingWheel<Session> timingWheel = new TimingWheel<>(TICK_MILLIS, System.currentTimeMillis());
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private ScheduledFuture<?> wakeUp;
+    private long wakeUpTimeMillis = Long.MAX_VALUE;
+    private final List<Session> firedSessions = new ArrayList<>(); // only accessed by the executor
 
     private final long millisBeforeRenewal;
 
+    private enum Action { NONE, RENEW, DISCONNECT }
+
     public TokenExpirationHandler(long millisBeforeRenewal) {
         this.millisBeforeRenewal = millisBeforeRenewal;
+    }
+
+    private void handleTimers() {
+        lock.lock();
+        try {
+            wakeUpTimeMillis = Long.MAX_VALUE;
+            timingWheel.advance(System.currentTimeMillis(), firedSessions);
+        } finally {
+            lock.unlock();
+        }
 
-        executor.scheduleAtFixedRate(() -> {
-            handleTokenExpiration();
-            handleTokenRenewal();
-        }, 1000, 200, TimeUnit.MILLISECONDS);
+        for (Session session : firedSessions) {
+            try {
+                switch (fire(session)) {
+                    case RENEW:
+                        // sent outside the lock, so that a slow client does not stall the connects and disconnects
+                        session.notifyTokenToExpire();
+                        break;
+                    case DISCONNECT:
+                        // If the session failed to renew its token, i.e. token renewal timed out, then disconnect the client
+                        session.disconnect();
+                        break;
+                    default:
+                        break;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        firedSessions.clear();
+
+        lock.lock();
+        try {
+            long nextDeadlineMillis = timingWheel.nextDeadlineMillis();
+            if (nextDeadlineMillis < wakeUpTimeMillis) {
+                scheduleWakeUp(nextDeadlineMillis);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private void handleTokenExpiration() {
-        Iterator<Session> sessionIterator = sessionsByExpiration.iterator();
-        while (sessionIterator.hasNext()) {
-            Session session = sessionIterator.next();
-            if (session.isTimeToRenewToken(millisBeforeRenewal)) {
+    // Starts the token renewal of a fired session, or finds that its token renewal timed out. Checked under the lock,
+    // so that a session removed after its timer fired, e.g. whose token was just updated, is left alone. The client is
+    // notified or disconnected by the caller, after the lock is released
+    private Action fire(Session session) {
+        lock.lock();
+        try {
+            if (session.getExpirationTimer().isCancelled()) {
+                return Action.NONE;
+            }
+            if (!session.hasTokenRenewalStarted()) {
                 session.startTokenRenewal();
-                // the current session is moved to the list of sessions awaiting token renewal
-                sessionIterator.remove();
-                sessionsAwaitingTokenRenewal.add(session);
-            } else {
-                // Once we find a session that does not need token renewal,
-                // all following sessions will not need it either, since they are ordered.
-                break;
+                // the session is scheduled again to check whether its token renewal timed out
+                schedule(session, session.getTokenRenewalStartTimestamp() + millisBeforeRenewal + 1);
+                return Action.RENEW;
             }
+            return session.hasTokenRenewalCompleted() ? Action.NONE : Action.DISCONNECT;
+        } finally {
+            lock.unlock();
         }
     }
 
-    private void handleTokenRenewal() {
-        long currentTimeMillis = System.currentTimeMillis();
-        Iterator<Session> sessionIterator = sessionsAwaitingTokenRenewal.iterator();
-        while (sessionIterator.hasNext()) {
-            Session session = sessionIterator.next();
-            if (session.hasTokenRenewalCompleted()) {
-                // If the current session awaiting token renewal successfully renewed its token,
-                // remove it from sessionsAwaitingTokenRenewal
-                sessionIterator.remove();
-                continue;
+    private void schedule(Session session, long deadlineMillis) {
+        lock.lock();
+        try {
+            long timerDeadlineMillis = timingWheel.schedule(session.getExpirationTimer(), deadlineMillis);
+            if (timerDeadlineMillis != -1 && timerDeadlineMillis < wakeUpTimeMillis) {
+                scheduleWakeUp(timerDeadlineMillis);
             }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            if (session.hasTokenRenewalTimedOut(currentTimeMillis, millisBeforeRenewal)) {
-                // If the current session awaiting token renewal failed to renew its token,
-                // i.e. token renewal timed out, then disconnect the client
-                session.disconnect();
-                sessionIterator.remove();
-            } else {
-                // Once we find a session awaiting token renewal that has not timed out,
-                // we can stop, since the sessions are ordered.
-                break;
-            }
+    // must be called with the lock held
+    private void scheduleWakeUp(long deadlineMillis) {
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
         }
+        wakeUpTimeMillis = deadlineMillis;
+        long delay = Math.max(0, deadlineMillis - System.currentTimeMillis());
+        wakeUp = executor.schedule(this::handleTimers, delay, TimeUnit.MILLISECONDS);
     }
 
     public void add(Session session) {
-        executor.execute(() -> {
-            sessionsByExpiration.add(session);
-        });
+        long expirationTimeMillis = session.getToken().getExpirationTimeMillis();
+        if (expirationTimeMillis == JwtPayload.NO_EXPIRATION) {
+            return;
+        }
+        // it is time to renew the token when the token expires in less than millisBeforeRenewal
+        schedule(session, expirationTimeMillis - millisBeforeRenewal + 1);
+    }
+
+    /**
+     * Starts the token renewal of a session at the given time, or earlier if it is time to renew its token before,
+     * e.g. when the signing key of its token is retired.
+     */
+    public void renewBefore(Session session, long renewalTimeMillis) {
+        long expirationTimeMillis = session.getToken().getExpirationTimeMillis();
+        if (expirationTimeMillis != JwtPayload.NO_EXPIRATION) {
+            renewalTimeMillis = Math.min(renewalTimeMillis, expirationTimeMillis - millisBeforeRenewal + 1);
+        }
+        // under the lock, so that the timer does not fire between the check and the reschedule
+        lock.lock();
+        try {
+            if (session.getExpirationTimer().isCancelled() || session.hasTokenRenewalStarted()) {
+                return; // the session was removed, or its timer already checks whether its token renewal times out
+            }
+            schedule(session, renewalTimeMillis);
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void remove(Session session) {
-        executor.execute(() -> {
-            sessionsByExpiration.remove(session);
-            sessionsAwaitingTokenRenewal.remove(session);
-        });
+        lock.lock();
+        try {
+            timingWheel.cancel(session.getExpirationTimer());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
     }
 }
@@ -0,0 +1,157 @@
+package com.migratorydata.authorization.token;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The publish rate and the number of subscriptions allowed to the sessions of a JWT token or of an app, shared by all
+ * these sessions and checked without allocating on the publish and subscribe paths.
+ *
+ * The publish rate is enforced by a token bucket striped across a few cache lines, each stripe earning its share of the
+ * rate, so that the sessions publishing on several threads do not contend on a single counter. The burst is split across
+ * the stripes, the first stripes holding one more token when the burst is not a multiple of the stripes. A thread takes
+ * a token from its own stripe first, and from the other stripes only when its own is empty, so the whole rate and burst
+ * are available to a single thread. Each stripe is a single timestamp, the time when it is full again, as in
+ * ConnectRateLimiter.
+ */
+public class TokenQuota {
+    private static final int PADDING = 8; // longs per stripe, so that the stripes are on distinct cache lines
+    private static final int MAX_STRIPES = Math.min(8, Runtime.getRuntime().availableProcessors());
+
+    private final String key;
+    private final TokenQuotas quotas;
+
+    private final AtomicLongArray publishBuckets; // null when the publish rate is not limited
+    private final int stripes;
+    private final long stripeIntervalNanos; // time for a stripe to earn a token
+    private final long[] burstNanos;        // time for each stripe to earn its tokens of a full bucket
+    private final int maxSubscriptions;     // 0 when the subscriptions are not limited
+    private final AtomicInteger subscriptions = new AtomicInteger();
+
+    private final LongAdder publishDenied = new LongAdder();
+    private final LongAdder subscribeDenied = new LongAdder();
+
+    /**
+     * @param key the JWT ID or the app whose sessions share this quota, or null if only shared by the sessions of a token
+     * @param publishRate the number of messages per second allowed, 0 for no limit
+     * @param publishBurst the number of messages allowed at once
+     * @param maxSubscriptions the number of subscriptions allowed, 0 for no limit
+     */
+    TokenQuota(String key, TokenQuotas quotas, double publishRate, int publishBurst, int maxSubscriptions) {
+        this(key, quotas, publishRate, publishBurst, maxSubscriptions, MAX_STRIPES);
+    }
+
+    // maxStripes is the maximum number of stripes of the publish bucket, at most the burst
+    TokenQuota(String key, TokenQuotas quotas, double publishRate, int publishBurst, int maxSubscriptions, int maxStripes) {
+        this.key = key;
+        this.quotas = quotas;
+        this.maxSubscriptions = Math.max(0, maxSubscriptions);
+        if (publishRate > 0) {
+            int burst = Math.max(1, publishBurst);
+            // each stripe must hold at least one token
+            this.stripes = Math.max(1, Math.min(maxStripes, burst));
+            long intervalNanos = (long) (1_000_000_000L / publishRate);
+            this.stripeIntervalNanos = intervalNanos * stripes;
+            this.burstNanos = new long[stripes];
+            for (int i = 0; i < stripes; i++) {
+                int stripeBurst = burst / stripes + (i < burst % stripes ? 1 : 0);
+                this.burstNanos[i] = stripeIntervalNanos * stripeBurst;
+            }
+            this.publishBuckets = new AtomicLongArray(stripes * PADDING);
+            long nowNanos = System.nanoTime();
+            for (int i = 0; i < stripes; i++) {
+                publishBuckets.set(i * PADDING, nowNanos);
+            }
+        } else {
+            this.stripes = 0;
+            this.stripeIntervalNanos = 0;
+            this.burstNanos = null;
+            this.publishBuckets = null;
+        }
+    }
+
+    /**
+     * Takes a token from the publish bucket.
+     *
+     * @return false if the publish rate is exceeded
+     */
+    public boolean tryPublish() {
+        if (publishBuckets == null) {
+            return true;
+        }
+        long nowNanos = System.nanoTime();
+        int first = (int) (Thread.currentThread().getId() % stripes);
+        for (int i = 0; i < stripes; i++) {
+            int stripe = (first + i) % stripes;
+            int index = stripe * PADDING;
+            while (true) {
+                long fullNanos = publishBuckets.get(index);
+                long newFullNanos = Math.max(fullNanos, nowNanos) + stripeIntervalNanos;
+                if (newFullNanos - nowNanos > burstNanos[stripe]) {
+                    break; // this stripe is empty
+                }
+                if (publishBuckets.compareAndSet(index, fullNanos, newFullNanos)) {
+                    return true;
+                }
+            }
+        }
+        publishDenied.increment();
+        quotas.publishDenied.increment();
+        return false;
+    }
+
+    /**
+     * Counts a new subscription.
+     *
+     * @return false if the maximum number of subscriptions is reached
+     */
+    public boolean tryAddSubscription() {
+        if (maxSubscriptions == 0) {
+            subscriptions.incrementAndGet();
+            return true;
+        }
+        while (true) {
+            int count = subscriptions.get();
+            if (count >= maxSubscriptions) {
+                subscribeDenied.increment();
+                quotas.subscribeDenied.increment();
+                return false;
+            }
+            if (subscriptions.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Counts the subscriptions which a session already has, even over the maximum number of subscriptions, e.g. when
+     * the client of the session updated its token.
+     */
+    public void addSubscriptions(int count) {
+        subscriptions.addAndGet(count);
+    }
+
+    /**
+     * Releases the subscriptions of a session which ended.
+     */
+    public void releaseSubscriptions(int count) {
+        subscriptions.addAndGet(-count);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public int getSubscriptionCount() {
+        return subscriptions.get();
+    }
+
+    public long getPublishDeniedCount() {
+        return publishDenied.sum();
+    }
+
+    public long getSubscribeDeniedCount() {
+        return subscribeDenied.sum();
+    }
+}
@@ -0,0 +1,127 @@
+package com.migratorydata.authorization.token;
+
+import com.google.common.collect.MapMaker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The quotas of the sessions, shared by the sessions of the same JWT ID, or of the same app with the scope APP.
+ *
+ * The limits of a token are read from its optional `quota` claim once the token is verified, and default to the limits
+ * of the configuration. The quota of a JWT ID or app is created with the limits of the first token verified, and is
+ * dropped once no session and no cached token use it.
+ */
+public class TokenQuotas {
+    public enum Scope {
+        TOKEN, APP
+    }
+
+    public static final String PUBLISH_RATE_CLAIM = "pub_rate";
+    public static final String PUBLISH_BURST_CLAIM = "pub_burst";
+    public static final String MAX_SUBSCRIPTIONS_CLAIM = "max_subscriptions";
+
+    // weak values, so that a quota is dropped with its last token
+    private final ConcurrentMap<String, TokenQuota> quotas = new MapMaker().weakValues().makeMap();
+    private final Scope scope;
+    private final double publishRate;
+    private final int publishBurst;
+    private final int maxSubscriptions;
+
+    final LongAdder publishDenied = new LongAdder();
+    final LongAdder subscribeDenied = new LongAdder();
+
+    /**
+     * @param scope whether a quota is shared by the sessions of a JWT ID or of an app
+     * @param publishRate the default number of messages per second allowed, 0 for no limit
+     * @param publishBurst the default number of messages allowed at once, 0 for the publish rate
+     * @param maxSubscriptions the default number of subscriptions allowed, 0 for no limit
+     */
+    public TokenQuotas(Scope scope, double publishRate, int publishBurst, int maxSubscriptions) {
+        this.scope = scope;
+        this.publishRate = publishRate;
+        this.publishBurst = publishBurst;
+        this.maxSubscriptions = maxSubscriptions;
+    }
+
+    /**
+     * Returns the quota of a verified token.
+     *
+     * @return the quota, or null if the token has no limits
+     */
+    public TokenQuota get(JwtPayload payload) {
+        Claims claims;
+        try {
+            claims = payload.readQuotaClaims();
+        } catch (IOException e) {
+            System.err.println("The quota of the token is not valid, using the default quota." + e.getMessage());
+            claims = new Claims();
+        }
+        double rate = claims.publishRate >= 0 ? claims.publishRate : publishRate;
+        int burst = claims.publishBurst >= 0 ? claims.publishBurst : publishBurst;
+        int subscriptions = claims.maxSubscriptions >= 0 ? claims.maxSubscriptions : maxSubscriptions;
+        if (rate <= 0 && subscriptions <= 0) {
+            return null;
+        }
+        int finalBurst = burst > 0 ? burst : (int) Math.ceil(rate);
+
+        String key;
+        if (scope == Scope.APP && claims.app != null) {
+            key = "app:" + claims.app;
+        } else if (payload.getId() != null) {
+            key = "jti:" + payload.getId();
+        } else {
+            return new TokenQuota(null, this, rate, finalBurst, subscriptions);
+        }
+        return quotas.computeIfAbsent(key, k -> new TokenQuota(k, this, rate, finalBurst, subscriptions));
+    }
+
+    /**
+     * Returns the denials of the quotas which denied the most publications and subscriptions, e.g. to find the abusive
+     * apps.
+     *
+     * @param count the maximum number of quotas returned
+     * @return the number of denials keyed by JWT ID or app, in decreasing order
+     */
+    public Map<String, Long> getTopDenials(int count) {
+        List<TokenQuota> denied = new ArrayList<>();
+        for (TokenQuota quota : quotas.values()) {
+            if (quota.getPublishDeniedCount() + quota.getSubscribeDeniedCount() > 0) {
+                denied.add(quota);
+            }
+        }
+        denied.sort((a, b) -> Long.compare(b.getPublishDeniedCount() + b.getSubscribeDeniedCount(),
+                a.getPublishDeniedCount() + a.getSubscribeDeniedCount()));
+        Map<String, Long> topDenials = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(count, denied.size()); i++) {
+            TokenQuota quota = denied.get(i);
+            topDenials.put(quota.getKey(), quota.getPublishDeniedCount() + quota.getSubscribeDeniedCount());
+        }
+        return topDenials;
+    }
+
+    public long size() {
+        return quotas.size();
+    }
+
+    public long getPublishDeniedCount() {
+        return publishDenied.sum();
+    }
+
+    public long getSubscribeDeniedCount() {
+        return subscribeDenied.sum();
+    }
+
+    // the claims of a token read by JwtPayload.readQuotaClaims(), negative when missing
+    static final class Claims {
+        String app;
+        double publishRate = -1;
+        int publishBurst = -1;
+        int maxSubscriptions = -1;
+    }
+}
@@ -0,0 +1,88 @@
+package com.migratorydata.authorization.benchmark;
+
+import com.migratorydata.authorization.AuthorizationHandler;
+import com.migratorydata.authorization.config.Configuration;
+import com.migratorydata.authorization.helper.ClientCredentials;
+import com.migratorydata.authorization.helper.TimedEventConnect;
+import com.migratorydata.authorization.token.Token;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static com.migratorydata.authorization.token.SessionOrderTest.generateToken;
+import static com.migratorydata.authorization.token.SessionOrderTest.jwtVerifyParser;
+
+/**
+ * Time to authorize 200k clients connecting at once with distinct tokens, delivered by a few server threads, with the
+ * tokens verified inline by these threads or by the verification pool. Each storm hits a new handler, so that no token
+ * is cached, and the p50, p99 and max times to authorize a client of each storm are printed.
+ *
+ * ./gradlew jmh -PjmhInclude=ConnectStormBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+public class ConnectStormBenchmark {
+    private static final int CLIENTS = 200_000;
+    private static final int SERVER_THREADS = 4;
+
+    @Param({Configuration.CONNECT_VERIFICATION_MODE_INLINE, Configuration.CONNECT_VERIFICATION_MODE_POOL})
+    public String mode;
+
+    private String[] tokens;
+    private AuthorizationHandler handler;
+    private TimedEventConnect.Responses responses;
+
+    @Setup(Level.Trial)
+    public void generateTokens() {
+        tokens = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            tokens[i] = generateToken(600, "/s/" + i, Token.ALL_FIELD);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createHandler() {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.CONNECT_VERIFICATION_MODE, mode);
+        properties.setProperty(Configuration.CONNECT_VERIFICATION_QUEUE_SIZE, String.valueOf(CLIENTS));
+        Configuration conf = new Configuration(properties);
+        handler = new AuthorizationHandler(conf.getMillisBeforeRenewal(), conf.getPortalRevokedTokensUrl(), conf.getPortalSigningKeysUrl(),
+                conf.getPortalApiKey(), conf.getPortalRequestIntervalSeconds(), Collections.singletonMap("testKeyId", jwtVerifyParser), conf);
+        responses = new TimedEventConnect.Responses(CLIENTS);
+    }
+
+    @Benchmark
+    public int connectStorm() throws InterruptedException {
+        Thread[] serverThreads = new Thread[SERVER_THREADS];
+        for (int t = 0; t < SERVER_THREADS; t++) {
+            int first = t;
+            serverThreads[t] = new Thread(() -> {
+                for (int i = first; i < CLIENTS; i += SERVER_THREADS) {
+                    handler.onClientConnect(new TimedEventConnect(new ClientCredentials(tokens[i], "10.0.0.1:" + i), responses));
+                }
+            });
+            serverThreads[t].start();
+        }
+        for (Thread serverThread : serverThreads) {
+            serverThread.join();
+        }
+        if (!responses.await(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("The connect storm was not authorized in time");
+        }
+        return responses.getValid();
+    }
+
+    @TearDown(Level.Invocation)
+    public void dispose() {
+        System.out.println(String.format("%s: %d connects, %d authorized, time to authorize p50 %d ms, p99 %d ms, max %d ms",
+                mode, responses.getCount(), responses.getValid(), responses.getTimeToAuthorizeMillis(0.5),
+                responses.getTimeToAuthorizeMillis(0.99), responses.getTimeToAuthorizeMillis(1)));
+        handler.onDispose();
+    }
+}
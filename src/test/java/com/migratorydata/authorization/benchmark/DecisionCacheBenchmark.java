@@ -0,0 +1,76 @@
+package com.migratorydata.authorization.benchmark;
+
+import com.migratorydata.authorization.token.DecisionCache;
+import com.migratorydata.authorization.token.Permissions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the authorization of a publish by a dashboard token of 2000 subjects, walking the automaton for each lookup,
+ * or through the decision cache shared by all the threads, with 4096 hot subjects out of 65536 looked up 9 times in 10.
+ * The cached lookups either give the ID of the subject with the subject dictionary first, as on publish, or reuse an ID
+ * already given, which leaves only int comparisons.
+ *
+ * ./gradlew jmh -PjmhInclude=DecisionCacheBenchmark -PjmhArgs="-t 8"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DecisionCacheBenchmark {
+    private static final int SUBJECTS = 65536;
+    private static final int HOT_SUBJECTS = 4096;
+
+    private Permissions permissions;
+    private Permissions cachedPermissions;
+    private DecisionCache decisionCache;
+    private String[] subjects;
+    private int[] subjectIds;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        permissions = new Permissions(PermissionsBenchmark.claims(2000));
+        decisionCache = new DecisionCache(16384);
+        cachedPermissions = new Permissions(PermissionsBenchmark.claims(2000), decisionCache);
+        subjects = new String[SUBJECTS];
+        for (int i = 0; i < SUBJECTS; i++) {
+            subjects[i] = "/market/region" + (i % 4) + "/desk" + (i % 16) + "/instrument" + i + "/quotes";
+        }
+        subjectIds = new int[SUBJECTS];
+        for (int i = 0; i < SUBJECTS; i++) {
+            subjectIds[i] = decisionCache.getSubjectDictionary().getId(subjects[i], i < HOT_SUBJECTS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long lookups = decisionCache.getHitCount() + decisionCache.getMissCount();
+        System.out.println("decision cache hit rate " + (lookups == 0 ? 0 : decisionCache.getHitCount() * 100 / lookups)
+                + "%, evictions " + decisionCache.getEvictionCount());
+    }
+
+    private int nextIndex() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return random.nextInt(10) < 9 ? random.nextInt(HOT_SUBJECTS) : random.nextInt(SUBJECTS);
+    }
+
+    @Benchmark
+    public Permissions.PermissionType automaton() {
+        return permissions.getPermission(subjects[nextIndex()]);
+    }
+
+    @Benchmark
+    public Permissions.PermissionType cached() {
+        return cachedPermissions.getPermission(subjects[nextIndex()]);
+    }
+
+    @Benchmark
+    public Permissions.PermissionType cachedById() {
+        int index = nextIndex();
+        return cachedPermissions.getPermission(subjects[index], subjectIds[index]);
+    }
+}
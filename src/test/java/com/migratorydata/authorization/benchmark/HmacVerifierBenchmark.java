@@ -0,0 +1,71 @@
+package com.migratorydata.authorization.benchmark;
+
+import com.migratorydata.authorization.config.Util;
+import com.migratorydata.authorization.token.HmacVerifier;
+import com.migratorydata.authorization.token.Token;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the verification of the HS256 tokens on connect, i.e. Token.parseToken() on a cache miss, with jjwt
+ * compared with the HmacVerifier which reuses a Mac per thread and reads the permissions with a streaming parser.
+ *
+ * ./gradlew jmh -PjmhInclude=HmacVerifierBenchmark -PjmhArgs="-t 1"
+ * ./gradlew jmh -PjmhInclude=HmacVerifierBenchmark -PjmhArgs="-t 8"
+ * ./gradlew jmh -PjmhInclude=HmacVerifierBenchmark -PjmhArgs="-t 32"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HmacVerifierBenchmark {
+    private static final String SIGNING_KEY = "He39zDQW7RdkOcxe3L9qvoSQ/ef40BG6Ro4hrHDjE+U=";
+    private static final int TOKENS = 1024;
+
+    @Param({"jjwt", "hmacVerifier"})
+    public String verification;
+
+    private JwtParser jwtParser;
+    private HmacVerifier hmacVerifier;
+    private String[] tokens;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        jwtParser = Util.createJwtParser(SIGNING_KEY);
+        hmacVerifier = "hmacVerifier".equals(verification) ? new HmacVerifier(SIGNING_KEY) : null;
+
+        tokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            Map<String, List<String>> permissions = new HashMap<>();
+            permissions.put(Token.SUB_FIELD, Arrays.asList("/app/" + i + "/notifications", "/app/" + i + "/status"));
+            permissions.put(Token.ALL_FIELD, Arrays.asList("/app/" + i + "/chat/*"));
+            tokens[i] = Jwts.builder()
+                    .setId(Integer.toHexString(i))
+                    .claim(Token.PERMISSIONS_FIELD, permissions)
+                    .claim(Token.SIGNING_KEY_ID_FIELD, "e967c7")
+                    .setIssuedAt(new Date())
+                    .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+                    .signWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SIGNING_KEY))).compact();
+        }
+    }
+
+    @Benchmark
+    public Object parseToken() {
+        Token token = new Token(tokens[ThreadLocalRandom.current().nextInt(TOKENS)]);
+        token.parseToken(hmacVerifier, jwtParser, null);
+        return token;
+    }
+}
@@ -0,0 +1,74 @@
+package com.migratorydata.authorization.benchmark;
+
+import com.migratorydata.authorization.token.Permissions;
+import com.migratorydata.authorization.token.Token;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup latency and build cost of the permissions of the three shapes of tokens: a device token with three exact
+ * subjects, a service token with `/*`, and a dashboard token with 300 subjects and patterns.
+ *
+ * The estimated heap retained per token by each shape is printed at setup. Run with `-prof gc` for the bytes allocated
+ * to build the permissions of a token.
+ *
+ * ./gradlew jmh -PjmhInclude=PermissionShapesBenchmark -PjmhArgs='-prof gc'
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PermissionShapesBenchmark {
+
+    @Param({"device", "service", "dashboard"})
+    public String shape;
+
+    private Map<String, List<String>> permissionClaims;
+    private Permissions permissions;
+    private String grantedSubject;
+    private String deniedSubject;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        permissionClaims = new LinkedHashMap<>();
+        if ("device".equals(shape)) {
+            permissionClaims.put(Token.SUB_FIELD, Arrays.asList("/device/4711/commands", "/device/4711/config"));
+            permissionClaims.put(Token.PUB_FIELD, Collections.singletonList("/device/4711/telemetry"));
+            grantedSubject = "/device/4711/telemetry";
+            deniedSubject = "/device/4712/telemetry";
+        } else if ("service".equals(shape)) {
+            permissionClaims.put(Token.ALL_FIELD, Collections.singletonList("/*"));
+            grantedSubject = "/market/eu/equities/instrument42/quotes";
+            deniedSubject = "";
+        } else {
+            permissionClaims = PermissionsBenchmark.claims(300);
+            grantedSubject = "/market/region1/desk1/instrument1/quotes";
+            deniedSubject = "/market/region1/desk2/instrument1/quotes";
+        }
+        permissions = new Permissions(permissionClaims);
+        System.out.println("\n" + shape + ": " + permissions.getShape() + ", about " + permissions.getMemoryBytes() + " bytes per token");
+    }
+
+    @Benchmark
+    public Permissions.PermissionType lookupGranted() {
+        return permissions.getPermission(grantedSubject);
+    }
+
+    @Benchmark
+    public Permissions.PermissionType lookupDenied() {
+        return permissions.getPermission(deniedSubject);
+    }
+
+    @Benchmark
+    public Permissions build() throws Exception {
+        return new Permissions(permissionClaims);
+    }
+}
@@ -0,0 +1,74 @@
+package com.migratorydata.authorization.benchmark;
+
+import com.migratorydata.authorization.token.Permissions;
+import com.migratorydata.authorization.token.PermissionsPool;
+import com.migratorydata.authorization.token.Token;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building the permissions of a token from its permission claims with 1, 20, 200 and 2000 subjects, i.e. the
+ * validation of the subjects and the compilation of the permissions, and the cost of a hit in the permissions pool.
+ *
+ * The subjects share prefixes like the subjects of a dashboard app, and one in ten is a `{s}` or a `*` pattern.
+ *
+ * ./gradlew jmh -PjmhInclude=PermissionsBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PermissionsBenchmark {
+
+    @Param({"1", "20", "200", "2000"})
+    public int subjects;
+
+    private Map<String, List<String>> permissionClaims;
+    private PermissionsPool permissionsPool;
+    private Permissions pooledPermissions; // keeps the permissions in the weak pool
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        permissionClaims = claims(subjects);
+        permissionsPool = new PermissionsPool();
+        pooledPermissions = permissionsPool.get(permissionClaims);
+    }
+
+    static Map<String, List<String>> claims(int subjects) {
+        List<String> sub = new ArrayList<>();
+        List<String> pub = new ArrayList<>();
+        List<String> all = new ArrayList<>();
+        for (int i = 0; i < subjects; i++) {
+            String prefix = "/market/region" + (i % 4) + "/desk" + (i % 16);
+            if (i % 10 == 5) {
+                all.add(prefix + "/*");
+            } else if (i % 10 == 9) {
+                pub.add(prefix + "/{instrument}/orders");
+            } else {
+                sub.add(prefix + "/instrument" + i + "/quotes");
+            }
+        }
+        Map<String, List<String>> claims = new LinkedHashMap<>();
+        claims.put(Token.SUB_FIELD, sub);
+        claims.put(Token.PUB_FIELD, pub);
+        claims.put(Token.ALL_FIELD, all);
+        return claims;
+    }
+
+    @Benchmark
+    public Permissions compile() throws Exception {
+        return new Permissions(permissionClaims);
+    }
+
+    @Benchmark
+    public Permissions poolHit() throws Exception {
+        return permissionsPool.get(permissionClaims);
+    }
+}
@@ -0,0 +1,82 @@
+package com.migratorydata.authorization.benchmark;
+
+import com.migratorydata.authorization.portal.PortalPayloads;
+import com.migratorydata.authorization.token.RevokedTokenIds;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and allocation to ingest a payload of the revoked tokens endpoint with 10k to 5M JWT IDs, with the streaming
+ * parser compared with the former path which read the whole response into a String, parsed it with org.json, and
+ * added the JWT IDs to a HashSet.
+ *
+ * ./gradlew jmh -PjmhInclude=PortalPayloadBenchmark -PjmhArgs="-prof gc"
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class PortalPayloadBenchmark {
+
+    @Param({"10000", "100000", "1000000", "5000000"})
+    public int size;
+
+    private byte[] payload;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("\"").append(new UUID(i * 31L, i)).append("\"");
+        }
+        payload = sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public RevokedTokenIds streaming() throws IOException {
+        RevokedTokenIds revokedTokens = new RevokedTokenIds(false);
+        PortalPayloads.readRevokedTokens(new ByteArrayInputStream(payload), revokedTokens);
+        revokedTokens.publish();
+        return revokedTokens;
+    }
+
+    @Benchmark
+    public Set<String> orgJson() throws IOException {
+        Set<String> revokedTokens = new HashSet<>();
+        JSONArray jwtIds = new JSONArray(readToString(new ByteArrayInputStream(payload)));
+        for (int i = 0; i < jwtIds.length(); i++) {
+            revokedTokens.add(jwtIds.getString(i));
+        }
+        return revokedTokens;
+    }
+
+    // the former Util.inputStreamToString
+    private static String readToString(InputStream inputStream) throws IOException {
+        final int bufferSize = 8 * 1024;
+        byte[] buffer = new byte[bufferSize];
+        final StringBuilder builder = new StringBuilder();
+        try (BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream, bufferSize)) {
+            int bytesRead = bufferedInputStream.read(buffer);
+            while (bytesRead != -1) {
+                builder.append(new String(buffer, 0, bytesRead));
+                bytesRead = bufferedInputStream.read(buffer);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.migratorydata.authorization.benchmark;
+
+import com.migratorydata.authorization.token.RevokedTokenIds;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the lookups in the set of the revoked tokens, alone and while a writer thread keeps rebuilding the set
+ * with a sync of 1000 revocations and 1000 un-revocations at a time.
+ *
+ * ./gradlew jmh -PjmhInclude=RevokedTokenIdsBenchmark
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RevokedTokenIdsBenchmark {
+    private static final int SYNC_SIZE = 1_000;
+
+    @Param({"100000", "1000000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean offHeap;
+
+    private RevokedTokenIds revokedTokens;
+    private String[] revokedJwtIds;
+    private String[] validJwtIds;
+    private long syncs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        revokedTokens = new RevokedTokenIds(offHeap);
+        revokedJwtIds = new String[size];
+        validJwtIds = new String[size];
+        for (int i = 0; i < size; i++) {
+            revokedJwtIds[i] = UUID.randomUUID().toString();
+            validJwtIds[i] = UUID.randomUUID().toString();
+            revokedTokens.add(revokedJwtIds[i]);
+        }
+        revokedTokens.publish();
+    }
+
+    // most of the lookups on the publish path are for tokens which are not revoked
+    private boolean lookup() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String[] jwtIds = random.nextInt(10) == 0 ? revokedJwtIds : validJwtIds;
+        return revokedTokens.contains(jwtIds[random.nextInt(size)]);
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    @GroupThreads(8)
+    public boolean uncontendedContains() {
+        return lookup();
+    }
+
+    @Benchmark
+    @Group("rebuilding")
+    @GroupThreads(7)
+    public boolean rebuildingContains() {
+        return lookup();
+    }
+
+    @Benchmark
+    @Group("rebuilding")
+    @GroupThreads(1)
+    public long rebuildingSync() {
+        // un-revoke a range of JWT IDs and revoke them back in the next sync
+        int from = (int) ((syncs / 2 * SYNC_SIZE) % (size - SYNC_SIZE));
+        for (int i = from; i < from + SYNC_SIZE; i++) {
+            if (syncs % 2 == 0) {
+                revokedTokens.remove(revokedJwtIds[i]);
+            } else {
+                revokedTokens.add(revokedJwtIds[i]);
+            }
+        }
+        revokedTokens.publish();
+        return ++syncs;
+    }
+}
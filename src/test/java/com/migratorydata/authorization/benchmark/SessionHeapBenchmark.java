@@ -0,0 +1,98 @@
+package com.migratorydata.authorization.benchmark;
+
+import com.migratorydata.authorization.client.Session;
+import com.migratorydata.authorization.client.SessionRegistry;
+import com.migratorydata.authorization.helper.ClientCredentials;
+import com.migratorydata.authorization.token.JwtPayload;
+import com.migratorydata.authorization.token.PermissionsPool;
+import com.migratorydata.authorization.token.SessionOrderTest;
+import com.migratorydata.authorization.token.Token;
+import io.jsonwebtoken.Jwts;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained per session by 1M sessions, each connected with its own token, as the token is reduced to a compact
+ * record once verified (compact), compared with the former retention of the raw JWT token, its payload, its parsed
+ * claims and a HashSet of subscriptions by each session (retainRawToken).
+ *
+ * The heap is measured after a full GC before and after the sessions are connected, so the heap per session is
+ * printed at the end of the run, next to the time to connect the sessions.
+ *
+ * ./gradlew jmh -PjmhInclude=SessionHeapBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class SessionHeapBenchmark {
+    private static final int APPS = 10; // the sessions share the permissions of a few apps
+
+    @Param({"1000000"})
+    public int sessions;
+
+    @Param({"compact", "retainRawToken"})
+    public String retention;
+
+    private ClientCredentials[] clients;
+    private SessionRegistry sessionRegistry;
+    private PermissionsPool permissionsPool;
+    private Object[] retained;
+    private long heapBeforeBytes;
+    private long heapAfterBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        clients = new ClientCredentials[sessions];
+        for (int i = 0; i < sessions; i++) {
+            // the server keeps the token of the client, so it is not counted here
+            clients[i] = new ClientCredentials(null, "10.0." + (i >>> 16) + "." + (i & 0xffff));
+        }
+        sessionRegistry = new SessionRegistry(64);
+        permissionsPool = new PermissionsPool();
+        retained = "retainRawToken".equals(retention) ? new Object[sessions] : null;
+        heapBeforeBytes = usedHeapBytes();
+    }
+
+    @Benchmark
+    public SessionRegistry connect() {
+        boolean retainRawToken = retained != null;
+        for (int i = 0; i < sessions; i++) {
+            String jwtToken = Jwts.builder()
+                    .setId("jti-" + i)
+                    .claim(Token.PERMISSIONS_FIELD, PermissionsBenchmark.claims(20 + i % APPS))
+                    .claim(Token.SIGNING_KEY_ID_FIELD, "testKeyId")
+                    .setIssuedAt(new Date())
+                    .setExpiration(new Date(System.currentTimeMillis() + 3_600_000 + i))
+                    .signWith(SessionOrderTest.signKey).compact();
+            Token token = new Token(jwtToken);
+            token.parseToken(SessionOrderTest.jwtVerifyParser, permissionsPool);
+            if (retainRawToken) {
+                retained[i] = new Object[]{jwtToken, JwtPayload.read(jwtToken), SessionOrderTest.jwtVerifyParser.parseClaimsJws(jwtToken), new HashSet<String>()};
+            }
+            sessionRegistry.put(new Session(clients[i], token));
+        }
+        heapAfterBytes = usedHeapBytes();
+        return sessionRegistry;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println();
+        System.out.println(retention + ": " + (heapAfterBytes - heapBeforeBytes) / sessions + " bytes of heap per session, "
+                + (heapAfterBytes - heapBeforeBytes) / (1024 * 1024) + " MB for " + sessionRegistry.size() + " sessions");
+    }
+
+    private static long usedHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
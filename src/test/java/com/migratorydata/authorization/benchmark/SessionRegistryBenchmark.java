@@ -0,0 +1,96 @@
+package com.migratorydata.authorization.benchmark;
+
+import com.migratorydata.authorization.client.Session;
+import com.migratorydata.authorization.client.SessionRegistry;
+import com.migratorydata.authorization.helper.ClientCredentials;
+import com.migratorydata.extensions.authorization.v2.client.Client;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention on the registry of sessions, compared with a synchronized HashMap, when many I/O threads look up the
+ * sessions on the publish path while other clients connect and disconnect.
+ *
+ * ./gradlew jmh -PjmhInclude=SessionRegistryBenchmark -PjmhArgs="-t 8"
+ * ./gradlew jmh -PjmhInclude=SessionRegistryBenchmark -PjmhArgs="-t 32"
+ * ./gradlew jmh -PjmhInclude=SessionRegistryBenchmark -PjmhArgs="-t 64"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SessionRegistryBenchmark {
+    private static final int SESSIONS = 100_000;
+
+    @Param({"registry", "synchronizedHashMap"})
+    public String implementation;
+
+    private Registry registry;
+    private Client[] clients;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if ("registry".equals(implementation)) {
+            SessionRegistry sessionRegistry = new SessionRegistry(64);
+            registry = new Registry() {
+                public Session get(Client client) { return sessionRegistry.get(client); }
+                public void put(Session session) { sessionRegistry.put(session); }
+                public void remove(Client client) { sessionRegistry.remove(client); }
+            };
+        } else {
+            Map<Client, Session> map = Collections.synchronizedMap(new HashMap<>());
+            registry = new Registry() {
+                public Session get(Client client) { return map.get(client); }
+                public void put(Session session) { map.put(session.getClient(), session); }
+                public void remove(Client client) { map.remove(client); }
+            };
+        }
+
+        clients = new Client[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            // all the clients share a few addresses, as behind a carrier-grade NAT
+            clients[i] = new ClientCredentials("token", "10.0.0." + (i % 4));
+            registry.put(new Session(clients[i], null));
+        }
+    }
+
+    /**
+     * The publish and subscribe paths.
+     */
+    @Benchmark
+    public Session lookup() {
+        return registry.get(clients[ThreadLocalRandom.current().nextInt(SESSIONS)]);
+    }
+
+    /**
+     * Nine lookups for each client which connects and disconnects.
+     */
+    @Benchmark
+    @OperationsPerInvocation(10)
+    public Session mixed() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Session session = null;
+        for (int i = 0; i < 9; i++) {
+            session = registry.get(clients[random.nextInt(SESSIONS)]);
+        }
+        Client client = new ClientCredentials("token", "10.0.0.1");
+        registry.put(new Session(client, null));
+        registry.remove(client);
+        return session;
+    }
+
+    private interface Registry {
+        Session get(Client client);
+
+        void put(Session session);
+
+        void remove(Client client);
+    }
+}
@@ -0,0 +1,71 @@
+package com.migratorydata.authorization.benchmark;
+
+import com.migratorydata.authorization.token.Permissions;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authorizing a subscribe request with 1 to 10k subjects sharing long prefixes, with a dashboard token of
+ * 2000 subjects: one lookup per subject into a default HashMap as before, the batch lookup into a pre-sized map, and
+ * the batch lookup split across the common ForkJoin pool in chunks of 1000 subjects.
+ *
+ * ./gradlew jmh -PjmhInclude=SubscribeBatchBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SubscribeBatchBenchmark {
+    private static final int PARALLEL_BATCH_SIZE = 1000;
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int batchSize;
+
+    private Permissions permissions;
+    private String[] subjects;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        permissions = new Permissions(PermissionsBenchmark.claims(2000));
+        subjects = new String[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            // grouped by desk like the subjects of a dashboard, granted or not
+            subjects[i] = "/market/region" + (i / 500 % 4) + "/desk" + (i / 125 % 16) + "/instrument" + i + "/quotes";
+        }
+    }
+
+    @Benchmark
+    public Map<String, Boolean> perSubject() {
+        Map<String, Boolean> results = new HashMap<>();
+        for (String subject : subjects) {
+            Permissions.PermissionType permission = permissions.getPermission(subject);
+            results.put(subject, permission == Permissions.PermissionType.SUB || permission == Permissions.PermissionType.ALL);
+        }
+        return results;
+    }
+
+    @Benchmark
+    public Map<String, Boolean> batch() {
+        return batch(0);
+    }
+
+    @Benchmark
+    public Map<String, Boolean> batchParallel() {
+        return batch(PARALLEL_BATCH_SIZE);
+    }
+
+    private Map<String, Boolean> batch(int parallelBatchSize) {
+        Map<String, Boolean> results = new HashMap<>((int) (subjects.length / 0.75f) + 1);
+        Permissions.PermissionType[] permissionTypes = new Permissions.PermissionType[subjects.length];
+        permissions.getPermissions(subjects, permissionTypes, parallelBatchSize);
+        for (int i = 0; i < subjects.length; i++) {
+            results.put(subjects[i], permissionTypes[i] == Permissions.PermissionType.SUB || permissionTypes[i] == Permissions.PermissionType.ALL);
+        }
+        return results;
+    }
+}
@@ -0,0 +1,89 @@
+package com.migratorydata.authorization.benchmark;
+
+import com.migratorydata.authorization.token.TimingWheel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the operations of the TimingWheel used by the TokenExpirationHandler with 10^5, 10^6 and 10^7 sessions.
+ *
+ * The deadlines of the sessions are spread over one hour with a tick of 100 ms, so `fire` advances the wheel by one
+ * tick and fires about sessions / 36000 timers, which are scheduled again one hour later.
+ *
+ * ./gradlew jmh -PjmhInclude=TimingWheelBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TimingWheelBenchmark {
+    private static final long TICK_MILLIS = 100;
+    private static final long SPAN_MILLIS = 3_600_000;
+
+    @Param({"100000", "1000000", "10000000"})
+    public int sessions;
+
+    private TimingWheel<Integer> timingWheel;
+    private TimingWheel.Timer<Integer>[] timers;
+    private long[] deadlineOffsets;
+    private final List<Integer> fired = new ArrayList<>();
+    private long currentTimeMillis;
+    private int next;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        Random random = new Random(1);
+        currentTimeMillis = System.currentTimeMillis();
+        timingWheel = new TimingWheel<>(TICK_MILLIS, currentTimeMillis);
+        timers = (TimingWheel.Timer<Integer>[]) new TimingWheel.Timer[sessions];
+        deadlineOffsets = new long[sessions];
+        for (int i = 0; i < sessions; i++) {
+            deadlineOffsets[i] = 1 + (long) (random.nextDouble() * SPAN_MILLIS);
+            timers[i] = new TimingWheel.Timer<>(i);
+            timingWheel.schedule(timers[i], currentTimeMillis + deadlineOffsets[i]);
+        }
+    }
+
+    /**
+     * A new session is added to the wheel, then removed, e.g. a client connects and disconnects.
+     */
+    @Benchmark
+    public boolean insertAndCancel() {
+        TimingWheel.Timer<Integer> timer = new TimingWheel.Timer<>(next);
+        timingWheel.schedule(timer, currentTimeMillis + deadlineOffsets[next]);
+        next = (next + 1) % sessions;
+        return timingWheel.cancel(timer);
+    }
+
+    /**
+     * A scheduled session is moved to another deadline, e.g. a token renewal starts.
+     */
+    @Benchmark
+    public long reschedule() {
+        TimingWheel.Timer<Integer> timer = timers[next];
+        next = (next + 1) % sessions;
+        return timingWheel.schedule(timer, currentTimeMillis + deadlineOffsets[next]);
+    }
+
+    /**
+     * The wheel advances by one tick and the sessions which fired are scheduled again.
+     */
+    @Benchmark
+    public int fire() {
+        currentTimeMillis += TICK_MILLIS;
+        timingWheel.advance(currentTimeMillis, fired);
+        int count = fired.size();
+        for (int i = 0; i < count; i++) {
+            timingWheel.schedule(timers[fired.get(i)], currentTimeMillis + SPAN_MILLIS);
+        }
+        fired.clear();
+        return count;
+    }
+}
@@ -0,0 +1,74 @@
+package com.migratorydata.authorization.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class ConnectLimiterTest {
+
+    private static final long FAST_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    @Test
+    public void test_limit_in_flight() {
+        ConnectLimiter limiter = new ConnectLimiter(4, 1, 100, 100);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+        }
+        Assert.assertFalse(limiter.tryAcquire());
+        Assert.assertEquals(4, limiter.getInFlight());
+        Assert.assertEquals(1, limiter.getRejectedCount());
+
+        limiter.release(FAST_NANOS);
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void test_increase_when_fast_and_used() {
+        ConnectLimiter limiter = new ConnectLimiter(4, 1, 5, 100);
+        limiter.tryAcquire();
+        limiter.release(FAST_NANOS);
+        Assert.assertEquals(4, limiter.getLimit()); // only 1 of 4 in flight, the limit is not needed
+
+        for (int i = 0; i < 4; i++) {
+            limiter.tryAcquire();
+        }
+        limiter.release(FAST_NANOS);
+        Assert.assertEquals(5, limiter.getLimit());
+        limiter.release(FAST_NANOS);
+        limiter.release(FAST_NANOS);
+        Assert.assertEquals(5, limiter.getLimit()); // the max limit
+    }
+
+    @Test
+    public void test_decrease_once_per_latency_target() throws InterruptedException {
+        ConnectLimiter limiter = new ConnectLimiter(100, 1, 100, 50);
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire();
+        }
+        limiter.release(SLOW_NANOS);
+        Assert.assertEquals(90, limiter.getLimit());
+        limiter.release(SLOW_NANOS);
+        Assert.assertEquals(90, limiter.getLimit()); // slow for the same reason as the previous one
+
+        Thread.sleep(60);
+        limiter.releaseDropped();
+        Assert.assertEquals(81, limiter.getLimit());
+        Assert.assertEquals(7, limiter.getInFlight());
+    }
+
+    @Test
+    public void test_min_limit() throws InterruptedException {
+        ConnectLimiter limiter = new ConnectLimiter(2, 2, 100, 1);
+        limiter.tryAcquire();
+        limiter.release(SLOW_NANOS);
+        Thread.sleep(2);
+        limiter.tryAcquire();
+        limiter.release(SLOW_NANOS);
+        Assert.assertEquals(2, limiter.getLimit());
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertFalse(limiter.tryAcquire());
+    }
+}
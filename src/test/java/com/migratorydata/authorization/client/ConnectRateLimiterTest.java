@@ -0,0 +1,77 @@
+package com.migratorydata.authorization.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class ConnectRateLimiterTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void test_rate_and_burst() {
+        ConnectRateLimiter limiter = new ConnectRateLimiter(10, 5, 1024, Collections.emptyList());
+        long now = 123 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(limiter.tryAcquire("10.0.0.1:" + (5000 + i), now));
+        }
+        Assert.assertFalse(limiter.tryAcquire("10.0.0.1:6000", now));
+        Assert.assertEquals(1, limiter.getRejectedCount());
+
+        // another address has its own bucket
+        Assert.assertTrue(limiter.tryAcquire("10.0.0.2:5000", now));
+
+        // a token is earned every 100 ms
+        Assert.assertFalse(limiter.tryAcquire("10.0.0.1:6001", now + SECOND / 20));
+        Assert.assertTrue(limiter.tryAcquire("10.0.0.1:6002", now + SECOND / 10));
+        Assert.assertFalse(limiter.tryAcquire("10.0.0.1:6003", now + SECOND / 10));
+
+        // the bucket is full again after the burst
+        now += 10 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(limiter.tryAcquire("10.0.0.1:7000", now));
+        }
+        Assert.assertFalse(limiter.tryAcquire("10.0.0.1:7000", now));
+        Assert.assertEquals(2, limiter.size());
+    }
+
+    @Test
+    public void test_allowlist() {
+        ConnectRateLimiter limiter = new ConnectRateLimiter(1, 1, 1024, Collections.singletonList("10.0.0.1"));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(limiter.tryAcquire("10.0.0.1:5000", 0));
+        }
+        Assert.assertTrue(limiter.tryAcquire("10.0.0.2:5000", 0));
+        Assert.assertFalse(limiter.tryAcquire("10.0.0.2:5000", 0));
+        Assert.assertEquals(1, limiter.size());
+    }
+
+    @Test
+    public void test_bounded_with_rotating_addresses() {
+        ConnectRateLimiter limiter = new ConnectRateLimiter(1, 2, 1024, Collections.emptyList());
+        long now = 0;
+        // a throttled address
+        Assert.assertTrue(limiter.tryAcquire("192.168.0.1:1", now));
+        Assert.assertTrue(limiter.tryAcquire("192.168.0.1:1", now));
+        Assert.assertFalse(limiter.tryAcquire("192.168.0.1:1", now));
+
+        // each address connects once, 100 times more addresses than the capacity of the table
+        for (int i = 0; i < 102_400; i++) {
+            Assert.assertTrue(limiter.tryAcquire("10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff) + ":1", now));
+        }
+        Assert.assertTrue(limiter.size() <= limiter.capacity());
+        Assert.assertTrue(limiter.getEvictionCount() > 100_000);
+
+        // the throttled address is evicted last, so it is still throttled
+        Assert.assertFalse(limiter.tryAcquire("192.168.0.1:1", now));
+    }
+
+    @Test
+    public void test_ip_of() {
+        Assert.assertEquals("10.0.0.1", ConnectRateLimiter.ipOf("10.0.0.1:5000"));
+        Assert.assertEquals("10.0.0.1", ConnectRateLimiter.ipOf("10.0.0.1"));
+        Assert.assertEquals("::1", ConnectRateLimiter.ipOf("[::1]:5000"));
+        Assert.assertEquals("fe80::1", ConnectRateLimiter.ipOf("fe80::1"));
+        Assert.assertEquals("", ConnectRateLimiter.ipOf(null));
+    }
+}
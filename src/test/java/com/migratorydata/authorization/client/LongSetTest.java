@@ -0,0 +1,40 @@
+package com.migratorydata.authorization.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class LongSetTest {
+
+    @Test
+    public void test_same_as_hash_set() {
+        Random random = new Random(5);
+        LongSet longSet = new LongSet();
+        Set<Long> hashSet = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            long value = value(random.nextInt(2000));
+            switch (random.nextInt(3)) {
+                case 0:
+                    Assert.assertEquals(hashSet.add(value), longSet.add(value));
+                    break;
+                case 1:
+                    Assert.assertEquals(hashSet.remove(value), longSet.remove(value));
+                    break;
+                default:
+                    Assert.assertEquals(hashSet.contains(value), longSet.contains(value));
+            }
+            Assert.assertEquals(hashSet.size(), longSet.size());
+        }
+        for (int i = 0; i < 2000; i++) {
+            Assert.assertEquals(hashSet.contains(value(i)), longSet.contains(value(i)));
+        }
+    }
+
+    // non-zero values which differ in their high bits too, as hashes
+    private static long value(int i) {
+        return (i + 1) * 0x100000001L;
+    }
+}
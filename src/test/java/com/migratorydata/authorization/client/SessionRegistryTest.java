@@ -0,0 +1,137 @@
+package com.migratorydata.authorization.client;
+
+import com.migratorydata.authorization.helper.ClientCredentials;
+import com.migratorydata.authorization.token.RevokedTokenIds;
+import com.migratorydata.authorization.token.Token;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class SessionRegistryTest {
+
+    @Test
+    public void test_keyed_by_client_identity() {
+        SessionRegistry sessionRegistry = new SessionRegistry(4);
+        ClientCredentials client1 = new ClientCredentials("token", "127.0.0.1:35274");
+        ClientCredentials client2 = new ClientCredentials("token", "127.0.0.1:35274");
+        Session session1 = new Session(client1, null);
+        Session session2 = new Session(client2, null);
+
+        Assert.assertNull(sessionRegistry.put(session1));
+        Assert.assertNull(sessionRegistry.put(session2));
+        Assert.assertEquals(2, sessionRegistry.size());
+        Assert.assertSame(session1, sessionRegistry.get(client1));
+        Assert.assertSame(session2, sessionRegistry.get(client2));
+
+        Session session3 = new Session(client1, null);
+        Assert.assertSame(session1, sessionRegistry.put(session3));
+        Assert.assertSame(session3, sessionRegistry.get(client1));
+
+        Assert.assertSame(session3, sessionRegistry.remove(client1));
+        Assert.assertNull(sessionRegistry.get(client1));
+        Assert.assertSame(session2, sessionRegistry.get(client2));
+        Assert.assertEquals(1, sessionRegistry.size());
+    }
+
+    @Test
+    public void test_keyed_by_identity_of_equal_clients() {
+        SessionRegistry sessionRegistry = new SessionRegistry(4);
+        ClientCredentials client1 = new EqualClient();
+        ClientCredentials client2 = new EqualClient();
+        Assert.assertEquals(client1, client2);
+
+        Session session1 = new Session(client1, null);
+        Session session2 = new Session(client2, null);
+        Assert.assertNull(sessionRegistry.put(session1));
+        Assert.assertNull(sessionRegistry.put(session2));
+        Assert.assertSame(session1, sessionRegistry.get(client1));
+        Assert.assertSame(session2, sessionRegistry.get(client2));
+    }
+
+    // a client whose equals() does not tell the connections apart
+    private static class EqualClient extends ClientCredentials {
+        EqualClient() {
+            super("token", "127.0.0.1:35274");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EqualClient;
+        }
+
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+    }
+
+    private static Token token(String claims) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return new Token(encoder.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8)) + "." +
+                encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + ".signature");
+    }
+
+    @Test
+    public void test_sessions_by_token_claims() {
+        SessionRegistry sessionRegistry = new SessionRegistry(4);
+        ClientCredentials client1 = new ClientCredentials("token", "127.0.0.1:35274");
+        ClientCredentials client2 = new ClientCredentials("token", "127.0.0.1:35275");
+        Session session1 = new Session(client1, token("{\"jti\":\"jti-1\",\"secret_id\":\"key-1\"}"));
+        Session session2 = new Session(client2, token("{\"jti\":\"jti-1\",\"secret_id\":\"key-1\"}"));
+        sessionRegistry.put(session1);
+        sessionRegistry.put(session2);
+        Assert.assertEquals(2, sessionRegistry.getSessionsByTokenId("jti-1").size());
+        Assert.assertTrue(sessionRegistry.getSessionsByTokenId("jti-2").isEmpty());
+
+        // the token of client1 is updated
+        Session session3 = new Session(client1, token("{\"jti\":\"jti-2\",\"secret_id\":\"key-2\"}"));
+        sessionRegistry.put(session3);
+        Assert.assertEquals(Collections.singletonList(session2), sessionRegistry.getSessionsByTokenId("jti-1"));
+        Assert.assertEquals(Collections.singletonList(session3), sessionRegistry.getSessionsByTokenId("jti-2"));
+        Assert.assertEquals(Collections.singletonList(session2), sessionRegistry.getSessionsBySigningKeyId("key-1"));
+        Assert.assertEquals(Collections.singletonList(session3), sessionRegistry.getSessionsBySigningKeyId("key-2"));
+
+        sessionRegistry.remove(client2);
+        Assert.assertTrue(sessionRegistry.getSessionsByTokenId("jti-1").isEmpty());
+        Assert.assertTrue(sessionRegistry.getSessionsBySigningKeyId("key-1").isEmpty());
+        Assert.assertEquals(Collections.singleton(RevokedTokenIds.hash("jti-2")), sessionRegistry.getTokenIdHashes());
+    }
+
+    @Test
+    public void test_concurrent_connect_and_disconnect() throws Exception {
+        SessionRegistry sessionRegistry = new SessionRegistry(16);
+        int threads = 8;
+        int clientsPerThread = 10_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < clientsPerThread; i++) {
+                    ClientCredentials client = new ClientCredentials("token", "127.0.0.1:35274");
+                    sessionRegistry.put(new Session(client, null));
+                    if (i % 2 == 0) {
+                        sessionRegistry.remove(client);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Assert.assertEquals(threads * clientsPerThread / 2, sessionRegistry.size());
+    }
+}
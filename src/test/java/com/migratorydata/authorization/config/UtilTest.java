@@ -20,4 +20,16 @@ public class UtilTest {
         Assert.assertTrue(result);
     }
 
+    @Test
+    public void testInvalidSubjectSyntax() {
+        String[] invalidSubjects = {"", "/", "//", "/a/", "/a//b", "//a", "a/b", "/*/", "/a/b/"};
+        for (String subject : invalidSubjects) {
+            Assert.assertFalse(subject, Util.isSubjectValid(subject));
+        }
+        String[] validSubjects = {"/a/b/c", "/a/{s}", "/a/b c/*", "/{x}/*/b"};
+        for (String subject : validSubjects) {
+            Assert.assertTrue(subject, Util.isSubjectValid(subject));
+        }
+    }
+
 }
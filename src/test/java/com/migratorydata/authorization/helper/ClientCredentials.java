@@ -17,6 +17,10 @@ public class ClientCredentials implements Client {
         this.clientAddress = clientAddress;
     }
 
+    public void setToken(String token) {
+        this.token = token;
+    }
+
     @Override
     public String getToken() {
         return token;
@@ -0,0 +1,127 @@
+package com.migratorydata.authorization.helper;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stands in for the revoked tokens endpoint of the portal, with the history of the changes of the list so that it can
+ * answer the requests for the changes since a version.
+ */
+public class RevokedTokensPortal implements HttpHandler {
+
+    private final Set<String> revoked = new LinkedHashSet<>();
+    private final List<Change> history = new ArrayList<>();
+    private long version = 0;
+    private long oldestVersion = 0; // the changes since older versions are forgotten
+    private boolean legacy = false;  // respond with a plain JSON array, without version
+
+    private final List<String> requests = new ArrayList<>();
+    private final List<Integer> statuses = new ArrayList<>();
+
+    public synchronized void revoke(String... jwtIds) {
+        version++;
+        for (String jwtId : jwtIds) {
+            revoked.add(jwtId);
+            history.add(new Change(version, jwtId, true));
+        }
+    }
+
+    public synchronized void unrevoke(String... jwtIds) {
+        version++;
+        for (String jwtId : jwtIds) {
+            revoked.remove(jwtId);
+            history.add(new Change(version, jwtId, false));
+        }
+    }
+
+    public synchronized void forgetHistory() {
+        history.clear();
+        oldestVersion = version;
+    }
+
+    public synchronized void setLegacy(boolean legacy) {
+        this.legacy = legacy;
+    }
+
+    public synchronized List<String> getRequests() {
+        return new ArrayList<>(requests);
+    }
+
+    public synchronized List<Integer> getStatuses() {
+        return new ArrayList<>(statuses);
+    }
+
+    @Override
+    public synchronized void handle(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        requests.add((query == null ? "" : query) + (ifNoneMatch == null ? "" : " If-None-Match: " + ifNoneMatch));
+
+        String entityTag = "\"v" + version + "\"";
+        if (entityTag.equals(ifNoneMatch)) {
+            respond(exchange, 304, null);
+            return;
+        }
+
+        exchange.getResponseHeaders().add("ETag", entityTag);
+        if (legacy) {
+            respond(exchange, 200, toJson(revoked));
+        } else if (query != null && query.startsWith("since=")) {
+            long since = Long.parseLong(query.substring("since=".length()));
+            if (since < oldestVersion) {
+                respond(exchange, 410, null);
+                return;
+            }
+            Map<String, Boolean> changes = new LinkedHashMap<>();
+            for (Change change : history) {
+                if (change.version > since) {
+                    changes.put(change.jwtId, change.revoked);
+                }
+            }
+            List<String> added = new ArrayList<>();
+            List<String> removed = new ArrayList<>();
+            for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+                (change.getValue() ? added : removed).add(change.getKey());
+            }
+            respond(exchange, 200, "{\"version\":" + version + ",\"added\":" + toJson(added) + ",\"removed\":" + toJson(removed) + "}");
+        } else {
+            respond(exchange, 200, "{\"version\":" + version + ",\"revoked\":" + toJson(revoked) + "}");
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        statuses.add(status);
+        PortalServer.respond(exchange, status, body);
+    }
+
+    private static String toJson(Iterable<String> jwtIds) {
+        StringBuilder sb = new StringBuilder("[");
+        for (String jwtId : jwtIds) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append('"').append(jwtId).append('"');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static class Change {
+        private final long version;
+        private final String jwtId;
+        private final boolean revoked;
+
+        Change(long version, String jwtId, boolean revoked) {
+            this.version = version;
+            this.jwtId = jwtId;
+            this.revoked = revoked;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.migratorydata.authorization.helper;
+
+import com.migratorydata.extensions.authorization.v2.client.Client;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.migratorydata.authorization.AuthorizationHandler.*;
+
+/**
+ * Connect event which records the time to authorize its client and the status it was authorized with into responses
+ * shared by many connects, e.g. of a connect storm.
+ */
+public class TimedEventConnect implements com.migratorydata.extensions.authorization.v2.client.EventConnect {
+    private final Client client;
+    private final Responses responses;
+    private final long startNanos = System.nanoTime();
+
+    public TimedEventConnect(Client client, Responses responses) {
+        this.client = client;
+        this.responses = responses;
+    }
+
+    @Override
+    public Client getClient() {
+        return client;
+    }
+
+    @Override
+    public void authorize(boolean permission, String reason) {
+        responses.add(System.nanoTime() - startNanos, permission, reason);
+    }
+
+    public static class Responses {
+        private final long[] timeToAuthorizeNanos;
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicInteger valid = new AtomicInteger();
+        private final AtomicInteger retry = new AtomicInteger();
+        private final AtomicInteger overloaded = new AtomicInteger();
+        private final CountDownLatch done;
+
+        public Responses(int clients) {
+            this.timeToAuthorizeNanos = new long[clients];
+            this.done = new CountDownLatch(clients);
+        }
+
+        private void add(long nanos, boolean permission, String reason) {
+            int i = count.getAndIncrement();
+            if (i < timeToAuthorizeNanos.length) {
+                timeToAuthorizeNanos[i] = nanos;
+            }
+            if (permission && TOKEN_VALID.getStatus().equals(reason)) {
+                valid.incrementAndGet();
+            } else if (RETRY_LATER.getStatus().equals(reason)) {
+                retry.incrementAndGet();
+            } else if (SERVER_OVERLOADED.getStatus().equals(reason)) {
+                overloaded.incrementAndGet();
+            }
+            done.countDown();
+        }
+
+        /**
+         * Waits until all the clients are authorized or rejected.
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return done.await(timeout, unit);
+        }
+
+        public int getCount() {
+            return Math.min(count.get(), timeToAuthorizeNanos.length);
+        }
+
+        public int getValid() {
+            return valid.get();
+        }
+
+        public int getRetry() {
+            return retry.get();
+        }
+
+        public int getOverloaded() {
+            return overloaded.get();
+        }
+
+        /**
+         * Returns the given percentile of the times to authorize the clients authorized or rejected so far.
+         */
+        public long getTimeToAuthorizeMillis(double percentile) {
+            long[] sorted = Arrays.copyOf(timeToAuthorizeNanos, getCount());
+            Arrays.sort(sorted);
+            return TimeUnit.NANOSECONDS.toMillis(sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))]);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.migratorydata.authorization.hub;
+
+import com.migratorydata.authorization.AuthorizationHandler;
+import com.migratorydata.authorization.config.Configuration;
+import com.migratorydata.authorization.helper.ClientCredentials;
+import com.migratorydata.authorization.helper.EventPublish;
+import com.migratorydata.authorization.helper.EventSubscribe;
+import com.migratorydata.authorization.helper.TimedEventConnect;
+import com.migratorydata.authorization.token.Token;
+import com.migratorydata.extensions.authorization.v2.client.Client;
+import io.jsonwebtoken.JwtParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.migratorydata.authorization.token.SessionOrderTest.generateToken;
+import static com.migratorydata.authorization.token.SessionOrderTest.jwtVerifyParser;
+
+/**
+ * Synthetic overload: a slow node, which takes 2 ms to verify a token on a single verification thread, receives a flood
+ * of connects with distinct tokens while its connected clients keep subscribing and publishing. The new connects over the
+ * adaptive limit are shed at once, so that neither the connected clients nor the connects accepted wait for a backlog of
+ * verifications. The p99 latencies of both are printed.
+ */
+public class ConnectOverloadTest extends EventBase {
+    private static final int CONNECTED = 20;
+    private static final int STORM = 10_000;
+    private static final int SERVER_THREADS = 2;
+    private static final long VERIFICATION_MILLIS = 2;
+
+    @Test
+    public void test_overload_sheds_connects() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.CONNECT_VERIFICATION_MODE, Configuration.CONNECT_VERIFICATION_MODE_POOL);
+        properties.setProperty(Configuration.CONNECT_VERIFICATION_THREADS, "1");
+        properties.setProperty(Configuration.CONNECT_VERIFICATION_QUEUE_SIZE, String.valueOf(STORM));
+        properties.setProperty(Configuration.CONNECT_LOAD_SHEDDING, "true");
+        properties.setProperty(Configuration.CONNECT_LATENCY_TARGET_MILLIS, "20");
+        properties.setProperty(Configuration.CONNECT_CONCURRENCY_MIN_LIMIT, "2");
+        AuthorizationHandler handler = createHandler(properties, slow(jwtVerifyParser));
+        try {
+            Client[] connected = new Client[CONNECTED];
+            TimedEventConnect.Responses established = new TimedEventConnect.Responses(CONNECTED);
+            for (int i = 0; i < CONNECTED; i++) {
+                connected[i] = new ClientCredentials(generateToken(600, "/s/" + i, Token.ALL_FIELD), "10.0.0.1:" + i);
+                handler.onClientConnect(new TimedEventConnect(connected[i], established));
+            }
+            Assert.assertTrue(established.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(CONNECTED, established.getValid());
+
+            String[] tokens = new String[STORM];
+            for (int i = 0; i < STORM; i++) {
+                tokens[i] = generateToken(600, "/s/" + i, Token.ALL_FIELD);
+            }
+
+            TimedEventConnect.Responses storm = new TimedEventConnect.Responses(STORM);
+            long[][] sessionEventNanos = new long[SERVER_THREADS][];
+            AtomicInteger denied = new AtomicInteger();
+            Thread[] serverThreads = new Thread[SERVER_THREADS];
+            for (int t = 0; t < SERVER_THREADS; t++) {
+                int first = t;
+                long[] eventNanos = sessionEventNanos[t] = new long[STORM / SERVER_THREADS / 10 + 1];
+                serverThreads[t] = new Thread(() -> {
+                    int events = 0;
+                    for (int i = first; i < STORM; i += SERVER_THREADS) {
+                        handler.onClientConnect(new TimedEventConnect(new ClientCredentials(tokens[i], "10.0.1.1:" + i), storm));
+                        if (i % (SERVER_THREADS * 10) == first) {
+                            // a connected client subscribes and publishes between the connects delivered by this thread
+                            Client client = connected[i % CONNECTED];
+                            String subject = "/s/" + (i % CONNECTED);
+                            long start = System.nanoTime();
+                            EventSubscribe eventSubscribe = new EventSubscribe(client, Collections.singletonList(subject));
+                            handler.onClientSubscribe(eventSubscribe);
+                            EventPublish eventPublish = new EventPublish(client, subject);
+                            handler.onClientPublish(eventPublish);
+                            eventNanos[events++] = System.nanoTime() - start;
+                            if (!Boolean.TRUE.equals(eventSubscribe.getPermissions().get(subject)) || !eventPublish.getPermission()) {
+                                denied.incrementAndGet();
+                            }
+                        }
+                    }
+                });
+                serverThreads[t].start();
+            }
+            for (Thread serverThread : serverThreads) {
+                serverThread.join();
+            }
+            Assert.assertTrue(storm.await(5, TimeUnit.MINUTES));
+            Map<String, Long> metrics = handler.getMetrics();
+
+            // the connected clients are always served
+            Assert.assertEquals(0, denied.get());
+
+            // the connects are either verified without a backlog or shed at once, none waits for the other connects,
+            // which would take STORM * VERIFICATION_MILLIS = 20 s with a single verification thread
+            Assert.assertTrue(storm.getOverloaded() > 0);
+            Assert.assertEquals(STORM, storm.getValid() + storm.getOverloaded());
+            Assert.assertEquals((long) storm.getOverloaded(), (long) metrics.get("connectLimiter.rejected"));
+            Assert.assertEquals(0L, (long) metrics.get("connectLimiter.inFlight"));
+            Assert.assertTrue(metrics.get("connectLimiter.limit") < Long.parseLong(Configuration.CONNECT_CONCURRENCY_INITIAL_LIMIT_DEFAULT));
+
+            // the latencies depend on the machine, so they are only reported
+            long[] sorted = new long[0];
+            for (long[] eventNanos : sessionEventNanos) {
+                sorted = concat(sorted, eventNanos);
+            }
+            long sessionP99Millis = percentileMillis(sorted, 0.99);
+            long connectP99Millis = storm.getTimeToAuthorizeMillis(0.99);
+            System.out.println(String.format("overload: %d connects, %d verified, %d shed, connect p99 %d ms, connected clients p99 %d ms, limit %d",
+                    STORM, storm.getValid(), storm.getOverloaded(), connectP99Millis, sessionP99Millis, metrics.get("connectLimiter.limit")));
+        } finally {
+            handler.onDispose();
+        }
+    }
+
+    // a parser which takes VERIFICATION_MILLIS more to verify a token, as on an overloaded node
+    private static JwtParser slow(JwtParser jwtParser) {
+        return (JwtParser) Proxy.newProxyInstance(JwtParser.class.getClassLoader(), new Class<?>[]{JwtParser.class}, (proxy, method, args) -> {
+            if (method.getName().startsWith("parse")) {
+                Thread.sleep(VERIFICATION_MILLIS);
+            }
+            try {
+                return method.invoke(jwtParser, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        long[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    private static long percentileMillis(long[] nanos, double percentile) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return TimeUnit.NANOSECONDS.toMillis(sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))]);
+    }
+}
@@ -0,0 +1,141 @@
+package com.migratorydata.authorization.hub;
+
+import com.migratorydata.authorization.AuthorizationHandler;
+import com.migratorydata.authorization.config.Configuration;
+import com.migratorydata.authorization.helper.ClientCredentials;
+import com.migratorydata.authorization.helper.EventDisconnect;
+import com.migratorydata.authorization.helper.TimedEventConnect;
+import com.migratorydata.authorization.token.Token;
+import com.migratorydata.extensions.authorization.v2.client.Client;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static com.migratorydata.authorization.token.SessionOrderTest.generateToken;
+
+/**
+ * Clients connecting at once with distinct tokens verified by the verification pool, which rejects the connects over its
+ * queue, and drops the clients which disconnect or fail while verified. The time to authorize a connect storm is
+ * measured by ConnectStormBenchmark.
+ */
+public class ConnectStormTest extends EventBase {
+    private static final int CLIENTS = 2_000;
+    private static final int SERVER_THREADS = 4;
+
+    private static String[] tokens;
+
+    @BeforeClass
+    public static void generateTokens() {
+        tokens = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            tokens[i] = generateToken(600, "/s/" + i, Token.ALL_FIELD);
+        }
+    }
+
+    @Test
+    public void test_full_queue_rejects_with_retry() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.CONNECT_VERIFICATION_MODE, Configuration.CONNECT_VERIFICATION_MODE_POOL);
+        properties.setProperty(Configuration.CONNECT_VERIFICATION_THREADS, "1");
+        properties.setProperty(Configuration.CONNECT_VERIFICATION_QUEUE_SIZE, "100");
+        AuthorizationHandler handler = createHandler(properties);
+        try {
+            TimedEventConnect.Responses responses = connect(handler);
+            Assert.assertTrue(responses.getRetry() > 0);
+            Assert.assertEquals(CLIENTS, responses.getValid() + responses.getRetry());
+            Assert.assertEquals((long) responses.getRetry(), (long) handler.getMetrics().get("verificationPool.rejected"));
+        } finally {
+            handler.onDispose();
+        }
+    }
+
+    @Test
+    public void test_disconnect_while_verified() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.CONNECT_VERIFICATION_MODE, Configuration.CONNECT_VERIFICATION_MODE_POOL);
+        AuthorizationHandler handler = createHandler(properties);
+        try {
+            TimedEventConnect.Responses responses = new TimedEventConnect.Responses(CLIENTS);
+            for (int i = 0; i < CLIENTS; i++) {
+                Client client = new ClientCredentials(tokens[i], "10.0.0.1:" + i);
+                handler.onClientConnect(new TimedEventConnect(client, responses));
+                handler.onClientDisconnect(new EventDisconnect(client));
+            }
+            // the clients which disconnected before their token was verified are either not authorized, or authorized
+            // and then removed when their disconnect event is delivered
+            Assert.assertTrue(awaitQueue(handler));
+            Assert.assertEquals(0L, (long) handler.getMetrics().get("sessions"));
+        } finally {
+            handler.onDispose();
+        }
+    }
+
+    @Test
+    public void test_failed_verification_retries_later() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.CONNECT_VERIFICATION_MODE, Configuration.CONNECT_VERIFICATION_MODE_POOL);
+        properties.setProperty(Configuration.CONNECT_LOAD_SHEDDING, "true");
+        AuthorizationHandler handler = createHandler(properties);
+        try {
+            TimedEventConnect.Responses responses = new TimedEventConnect.Responses(1);
+            Client client = new ClientCredentials(tokens[0], "10.0.0.1:0");
+            handler.onClientConnect(new TimedEventConnect(client, responses) {
+                private boolean failed;
+
+                @Override
+                public Client getClient() {
+                    // fails once while the token is verified by the pool
+                    if (!failed && Thread.currentThread().getName().startsWith("authorization-verification")) {
+                        failed = true;
+                        throw new IllegalStateException("verification failed");
+                    }
+                    return super.getClient();
+                }
+            });
+
+            // the client is told to retry, rather than left pending, and the verification leaves the limit
+            Assert.assertTrue(responses.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, responses.getRetry());
+            Map<String, Long> metrics = handler.getMetrics();
+            Assert.assertEquals(0L, (long) metrics.get("connectLimiter.inFlight"));
+            Assert.assertEquals(0L, (long) metrics.get("sessions"));
+        } finally {
+            handler.onDispose();
+        }
+    }
+
+    private static boolean awaitQueue(AuthorizationHandler handler) throws InterruptedException {
+        for (int i = 0; i < 1000; i++) {
+            if (handler.getMetrics().get("verificationPool.queueSize") == 0) {
+                Thread.sleep(100); // the batches in progress
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    // the clients connect at once, delivered by a few server threads
+    private static TimedEventConnect.Responses connect(AuthorizationHandler handler) throws Exception {
+        TimedEventConnect.Responses responses = new TimedEventConnect.Responses(CLIENTS);
+        Thread[] serverThreads = new Thread[SERVER_THREADS];
+        for (int t = 0; t < SERVER_THREADS; t++) {
+            int first = t;
+            serverThreads[t] = new Thread(() -> {
+                for (int i = first; i < CLIENTS; i += SERVER_THREADS) {
+                    handler.onClientConnect(new TimedEventConnect(new ClientCredentials(tokens[i], "10.0.0.1:" + i), responses));
+                }
+            });
+            serverThreads[t].start();
+        }
+        for (Thread serverThread : serverThreads) {
+            serverThread.join();
+        }
+        Assert.assertTrue(responses.await(1, TimeUnit.MINUTES));
+        return responses;
+    }
+}
@@ -1,7 +1,9 @@
 package com.migratorydata.authorization.hub;
 
 import java.security.Key;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Properties;
 
 import com.migratorydata.authorization.AuthorizationHandler;
 import com.migratorydata.authorization.config.Configuration;
@@ -12,6 +14,8 @@ import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
 
+import static com.migratorydata.authorization.token.SessionOrderTest.jwtVerifyParser;
+
 public class EventBase {
 
     protected MigratoryDataAuthorizationListener authorizationListener;
@@ -27,4 +31,16 @@ public class EventBase {
         authorizationListener = new AuthorizationHandler(conf.getMillisBeforeRenewal(), conf.getPortalRevokedTokensUrl(), conf.getPortalSigningKeysUrl(), conf.getPortalApiKey(), conf.getPortalRequestIntervalSeconds(), jwtParsers);
     }
 
+    /**
+     * Creates a handler with the given configuration, which verifies the tokens signed with the test signing key.
+     */
+    protected static AuthorizationHandler createHandler(Properties properties) {
+        return createHandler(properties, jwtVerifyParser);
+    }
+
+    protected static AuthorizationHandler createHandler(Properties properties, JwtParser jwtParser) {
+        Configuration conf = new Configuration(properties);
+        return new AuthorizationHandler(conf.getMillisBeforeRenewal(), conf.getPortalRevokedTokensUrl(), conf.getPortalSigningKeysUrl(),
+                conf.getPortalApiKey(), conf.getPortalRequestIntervalSeconds(), Collections.singletonMap("testKeyId", jwtParser), conf);
+    }
 }
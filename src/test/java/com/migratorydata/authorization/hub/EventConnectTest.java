@@ -1,12 +1,16 @@
 package com.migratorydata.authorization.hub;
 
+import com.migratorydata.authorization.AuthorizationHandler;
 import com.migratorydata.authorization.helper.ClientCredentials;
 import com.migratorydata.authorization.helper.EventConnect;
+import com.migratorydata.authorization.config.Configuration;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Properties;
+
 import static com.migratorydata.authorization.token.SessionOrderTest.generateToken;
 import static com.migratorydata.authorization.AuthorizationHandler.*;
 
@@ -40,6 +44,13 @@ public class EventConnectTest extends EventBase {
         Assert.assertTrue(eventConnect.getReason() == TOKEN_INVALID.getStatus());
     }
 
+    @Test
+    public void test_malformed_token() {
+        EventConnect eventConnect = new EventConnect(new ClientCredentials("not.a-token", clientAddress));
+        authorizationListener.onClientConnect(eventConnect);
+        Assert.assertTrue(eventConnect.getReason() == TOKEN_INVALID.getStatus());
+    }
+
     @Test
     public void test_expired_token() {
         EventConnect eventConnect = new EventConnect(new ClientCredentials(expiredToken, clientAddress));
@@ -54,4 +65,65 @@ public class EventConnectTest extends EventBase {
         Assert.assertTrue(eventConnect.getReason() == TOKEN_VALID.getStatus());
     }
 
+    @Test
+    public void test_reconnect_with_same_token() {
+        EventConnect eventConnect = new EventConnect(new ClientCredentials(validToken, clientAddress));
+        authorizationListener.onClientConnect(eventConnect);
+        Assert.assertTrue(eventConnect.getReason() == TOKEN_VALID.getStatus());
+
+        eventConnect = new EventConnect(new ClientCredentials(validToken, "127.0.0.1:35275"));
+        authorizationListener.onClientConnect(eventConnect);
+        Assert.assertTrue(eventConnect.getReason() == TOKEN_VALID.getStatus());
+
+        AuthorizationHandler authorizationHandler = (AuthorizationHandler) authorizationListener;
+        Assert.assertEquals(1L, (long) authorizationHandler.getMetrics().get("tokenCache.hits"));
+        Assert.assertEquals(1L, (long) authorizationHandler.getMetrics().get("tokenCache.misses"));
+    }
+
+    @Test
+    public void test_repeated_rejection_is_cached() {
+        String badSignatureToken = validToken.substring(0, validToken.lastIndexOf('.') + 1) + "AAAA";
+        for (String rejectedToken : new String[]{expiredToken, badSignatureToken, "not.a.token!"}) {
+            EventConnect eventConnect = new EventConnect(new ClientCredentials(rejectedToken, clientAddress));
+            authorizationListener.onClientConnect(eventConnect);
+            String status = eventConnect.getReason();
+
+            eventConnect = new EventConnect(new ClientCredentials(rejectedToken, "127.0.0.1:35275"));
+            authorizationListener.onClientConnect(eventConnect);
+            Assert.assertEquals(status, eventConnect.getReason());
+            Assert.assertFalse(eventConnect.getPermission());
+        }
+
+        AuthorizationHandler authorizationHandler = (AuthorizationHandler) authorizationListener;
+        // the malformed token is rejected by the pre-filter, which is not cached
+        Assert.assertEquals(2L, (long) authorizationHandler.getMetrics().get("rejectedTokens.size"));
+        Assert.assertEquals(2L, (long) authorizationHandler.getMetrics().get("rejectedTokens.hits"));
+        Assert.assertEquals(2L, (long) authorizationHandler.getMetrics().get("tokenCache.misses"));
+    }
+
+    @Test
+    public void test_connect_rate_limit() {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.CONNECT_RATE_LIMIT, "1");
+        properties.setProperty(Configuration.CONNECT_RATE_LIMIT_BURST, "2");
+        AuthorizationHandler authorizationHandler = createHandler(properties);
+        try {
+            for (int i = 0; i < 2; i++) {
+                EventConnect eventConnect = new EventConnect(new ClientCredentials(validToken, "10.0.0.1:" + i));
+                authorizationHandler.onClientConnect(eventConnect);
+                Assert.assertEquals(TOKEN_VALID.getStatus(), eventConnect.getReason());
+            }
+            // rejected before its token is read
+            EventConnect eventConnect = new EventConnect(new ClientCredentials("not a token", "10.0.0.1:2"));
+            authorizationHandler.onClientConnect(eventConnect);
+            Assert.assertEquals(RETRY_LATER.getStatus(), eventConnect.getReason());
+            Assert.assertFalse(eventConnect.getPermission());
+
+            Assert.assertEquals(1L, (long) authorizationHandler.getMetrics().get("connectRateLimiter.rejected"));
+            Assert.assertEquals(1L, (long) authorizationHandler.getMetrics().get("connectRateLimiter.size"));
+        } finally {
+            authorizationHandler.onDispose();
+        }
+    }
+
 }
@@ -1,14 +1,22 @@
 package com.migratorydata.authorization.hub;
 
+import com.migratorydata.authorization.AuthorizationHandler;
+import com.migratorydata.authorization.config.Configuration;
 import com.migratorydata.authorization.token.Token;
 import com.migratorydata.authorization.helper.ClientCredentials;
 import com.migratorydata.authorization.helper.EventConnect;
+import com.migratorydata.authorization.helper.EventDisconnect;
 import com.migratorydata.authorization.helper.EventPublish;
+import com.migratorydata.authorization.helper.EventSubscribe;
+import com.migratorydata.authorization.helper.EventUpdate;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Properties;
+
 import static com.migratorydata.authorization.token.SessionOrderTest.generateToken;
 
 public class EventPublishTest extends EventBase {
@@ -132,4 +140,108 @@ public class EventPublishTest extends EventBase {
         Assert.assertTrue(eventPublish.getPermission());
     }
 
+    @Test
+    public void test_clients_with_same_address() {
+        ClientCredentials publisher = new ClientCredentials(validTokenWithPublishPermission, clientAddress);
+        ClientCredentials subscriber = new ClientCredentials(validTokenWithSubscribePermission, clientAddress);
+
+        authorizationListener.onClientConnect(new EventConnect(publisher));
+        authorizationListener.onClientConnect(new EventConnect(subscriber));
+
+        EventPublish eventPublish = new EventPublish(publisher, subject);
+        authorizationListener.onClientPublish(eventPublish);
+        Assert.assertTrue(eventPublish.getPermission());
+
+        eventPublish = new EventPublish(subscriber, subject);
+        authorizationListener.onClientPublish(eventPublish);
+        Assert.assertFalse(eventPublish.getPermission());
+
+        authorizationListener.onClientDisconnect(new EventDisconnect(subscriber));
+
+        eventPublish = new EventPublish(publisher, subject);
+        authorizationListener.onClientPublish(eventPublish);
+        Assert.assertTrue(eventPublish.getPermission());
+    }
+
+    @Test
+    public void test_quota() {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.PUBLISH_RATE_LIMIT, "0.001");
+        properties.setProperty(Configuration.PUBLISH_RATE_BURST, "3");
+        properties.setProperty(Configuration.MAX_SUBSCRIPTIONS, "2");
+        AuthorizationHandler authorizationHandler = createHandler(properties);
+        try {
+            // two clients with the same token share its quota
+            ClientCredentials client1 = new ClientCredentials(validTokenWithWildcardPermission, clientAddress);
+            ClientCredentials client2 = new ClientCredentials(validTokenWithWildcardPermission, "127.0.0.1:35275");
+            authorizationHandler.onClientConnect(new EventConnect(client1));
+            authorizationHandler.onClientConnect(new EventConnect(client2));
+
+            int published = 0;
+            for (int i = 0; i < 5; i++) {
+                for (ClientCredentials client : new ClientCredentials[]{client1, client2}) {
+                    EventPublish eventPublish = new EventPublish(client, subject);
+                    authorizationHandler.onClientPublish(eventPublish);
+                    published += eventPublish.getPermission() ? 1 : 0;
+                }
+            }
+            Assert.assertEquals(3, published);
+
+            EventSubscribe eventSubscribe = new EventSubscribe(client1, Arrays.asList("/a", "/b", "/c"));
+            authorizationHandler.onClientSubscribe(eventSubscribe);
+            Assert.assertEquals(2, eventSubscribe.getPermissions().values().stream().filter(b -> b).count());
+            // a subscription again to the same subject is not counted
+            eventSubscribe = new EventSubscribe(client1, Arrays.asList("/a", "/b"));
+            authorizationHandler.onClientSubscribe(eventSubscribe);
+            Assert.assertEquals(2, eventSubscribe.getPermissions().values().stream().filter(b -> b).count());
+
+            // the subscriptions of a client are released when it disconnects
+            authorizationHandler.onClientDisconnect(new EventDisconnect(client1));
+            eventSubscribe = new EventSubscribe(client2, Arrays.asList("/c"));
+            authorizationHandler.onClientSubscribe(eventSubscribe);
+            Assert.assertTrue(eventSubscribe.getPermissions().get("/c"));
+
+            Assert.assertEquals(7L, (long) authorizationHandler.getMetrics().get("quota.publishDenied"));
+            Assert.assertEquals(1L, (long) authorizationHandler.getMetrics().get("quota.subscribeDenied"));
+            Assert.assertEquals(1, authorizationHandler.getTopQuotaDenials(10).size());
+        } finally {
+            authorizationHandler.onDispose();
+        }
+    }
+
+    @Test
+    public void test_quota_kept_on_token_update() {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.MAX_SUBSCRIPTIONS, "2");
+        AuthorizationHandler authorizationHandler = createHandler(properties);
+        try {
+            ClientCredentials client = new ClientCredentials(validTokenWithWildcardPermission, clientAddress);
+            authorizationHandler.onClientConnect(new EventConnect(client));
+            EventSubscribe eventSubscribe = new EventSubscribe(client, Arrays.asList("/a", "/b"));
+            authorizationHandler.onClientSubscribe(eventSubscribe);
+            Assert.assertEquals(2, eventSubscribe.getPermissions().values().stream().filter(b -> b).count());
+
+            // the subscriptions are moved to the quota of a token with another JWT ID, and stay on the same quota
+            String newToken = generateToken(100, "/*", Token.ALL_FIELD);
+            for (String token : new String[]{newToken, newToken}) {
+                client.setToken(token);
+                authorizationHandler.onClientUpdateToken(new EventUpdate(client));
+                Assert.assertEquals(AuthorizationHandler.TOKEN_UPDATED.getStatus(), client.getNotification().getStatus());
+
+                eventSubscribe = new EventSubscribe(client, Arrays.asList("/a", "/c"));
+                authorizationHandler.onClientSubscribe(eventSubscribe);
+                Assert.assertTrue(eventSubscribe.getPermissions().get("/a"));
+                Assert.assertFalse(eventSubscribe.getPermissions().get("/c"));
+            }
+
+            // the subscriptions of the previous token were released
+            ClientCredentials client2 = new ClientCredentials(validTokenWithWildcardPermission, "127.0.0.1:35275");
+            authorizationHandler.onClientConnect(new EventConnect(client2));
+            eventSubscribe = new EventSubscribe(client2, Arrays.asList("/a", "/b"));
+            authorizationHandler.onClientSubscribe(eventSubscribe);
+            Assert.assertEquals(2, eventSubscribe.getPermissions().values().stream().filter(b -> b).count());
+        } finally {
+            authorizationHandler.onDispose();
+        }
+    }
 }
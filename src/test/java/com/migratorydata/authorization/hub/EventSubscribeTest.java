@@ -1,5 +1,7 @@
 package com.migratorydata.authorization.hub;
 
+import com.migratorydata.authorization.AuthorizationHandler;
+import com.migratorydata.authorization.config.Configuration;
 import com.migratorydata.authorization.token.Token;
 import com.migratorydata.authorization.helper.ClientCredentials;
 import com.migratorydata.authorization.helper.EventConnect;
@@ -9,7 +11,10 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
 
 import static com.migratorydata.authorization.token.SessionOrderTest.generateToken;
 
@@ -117,4 +122,61 @@ public class EventSubscribeTest extends EventBase {
 
         Assert.assertTrue(eventSubscribe.getPermissions().get(subject));
     }
+
+    @Test
+    public void test_subscription_counted_once_after_subject_eviction() {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.SUBJECT_DICTIONARY_MAX_SIZE, "8");
+        properties.setProperty(Configuration.MAX_SUBSCRIPTIONS, "2");
+        AuthorizationHandler authorizationHandler = createHandler(properties);
+        try {
+            ClientCredentials clientCredentials = new ClientCredentials(generateToken(100, "/*", Token.ALL_FIELD), clientAddress);
+            authorizationHandler.onClientConnect(new EventConnect(clientCredentials));
+
+            EventSubscribe eventSubscribe = new EventSubscribe(clientCredentials, Arrays.asList("/a", "/b"));
+            authorizationHandler.onClientSubscribe(eventSubscribe);
+            Assert.assertTrue(eventSubscribe.getPermissions().get("/a"));
+
+            // many more subjects than the subject dictionary holds, denied by the quota
+            List<String> subjects = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                subjects.add("/x/" + i);
+            }
+            eventSubscribe = new EventSubscribe(clientCredentials, subjects);
+            authorizationHandler.onClientSubscribe(eventSubscribe);
+            Assert.assertFalse(eventSubscribe.getPermissions().containsValue(true));
+
+            // the subscriptions of the client do not depend on the subjects kept by the dictionary
+            eventSubscribe = new EventSubscribe(clientCredentials, Arrays.asList("/a", "/b"));
+            authorizationHandler.onClientSubscribe(eventSubscribe);
+            Assert.assertTrue(eventSubscribe.getPermissions().get("/a"));
+            Assert.assertTrue(eventSubscribe.getPermissions().get("/b"));
+        } finally {
+            authorizationHandler.onDispose();
+        }
+    }
+
+    @Test
+    public void test_subjects_without_id_count_against_quota() {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.SUBJECT_DICTIONARY_MAX_SIZE, "8");
+        properties.setProperty(Configuration.MAX_SUBSCRIPTIONS, "10");
+        AuthorizationHandler authorizationHandler = createHandler(properties);
+        try {
+            ClientCredentials clientCredentials = new ClientCredentials(generateToken(100, "/*", Token.ALL_FIELD), clientAddress);
+            authorizationHandler.onClientConnect(new EventConnect(clientCredentials));
+
+            // most of these subjects are looked up once, so the full subject dictionary gives them no ID
+            int subscribed = 0;
+            for (int i = 0; i < 1000; i++) {
+                EventSubscribe eventSubscribe = new EventSubscribe(clientCredentials, Arrays.asList("/x/" + i));
+                authorizationHandler.onClientSubscribe(eventSubscribe);
+                subscribed += eventSubscribe.getPermissions().get("/x/" + i) ? 1 : 0;
+            }
+            Assert.assertEquals(10, subscribed);
+            Assert.assertEquals(990L, (long) authorizationHandler.getMetrics().get("quota.subscribeDenied"));
+        } finally {
+            authorizationHandler.onDispose();
+        }
+    }
 }
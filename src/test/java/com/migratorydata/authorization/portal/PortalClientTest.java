@@ -0,0 +1,142 @@
+package com.migratorydata.authorization.portal;
+
+import com.migratorydata.authorization.helper.PortalServer;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+public class PortalClientTest {
+
+    private PortalServer portalServer;
+    private PortalClient portalClient;
+    private final List<Integer> remotePorts = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch hungRequest = new CountDownLatch(1);
+
+    @Before
+    public void onStart() throws Exception {
+        portalServer = new PortalServer();
+        portalServer.addHandler("/plain", exchange -> {
+            remotePorts.add(exchange.getRemoteAddress().getPort());
+            PortalServer.respond(exchange, 200, "[\"jti-1\"]");
+        });
+        portalServer.addHandler("/gzip", exchange -> {
+            Assert.assertTrue(exchange.getRequestHeaders().getFirst("Accept-Encoding").contains("gzip"));
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+                for (int i = 0; i < 1000; i++) {
+                    gzipOutputStream.write("jti-0123456789;".getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, outputStream.size());
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                outputStream.writeTo(responseBody);
+            }
+        });
+        portalServer.addHandler("/error", exchange -> PortalServer.respond(exchange, 500, "internal error"));
+        portalServer.addHandler("/hung", exchange -> {
+            try {
+                hungRequest.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            PortalServer.respond(exchange, 200, "[]");
+        });
+        portalClient = new PortalClient("my-password", 1000, 500);
+    }
+
+    @After
+    public void onDispose() {
+        hungRequest.countDown();
+        portalClient.shutdown();
+        portalServer.stop();
+    }
+
+    private PortalEndpoint endpoint(String path) {
+        return new PortalEndpoint(path.substring(1), portalServer.getUrl(path), 10_000, 300_000);
+    }
+
+    private static String readBody(PortalClient.Response response) throws IOException {
+        if (response.getStatus() != 200) {
+            throw new IOException("Unexpected HTTP status " + response.getStatus());
+        }
+        return response.getBodyAsString();
+    }
+
+    @Test
+    public void test_connection_reused() throws Exception {
+        PortalEndpoint endpoint = endpoint("/plain");
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals("[\"jti-1\"]", portalClient.get(endpoint, endpoint.getUrl(), Collections.emptyMap(), PortalClientTest::readBody).get());
+        }
+        Assert.assertEquals(3, remotePorts.size());
+        Assert.assertEquals(remotePorts.get(0), remotePorts.get(1));
+        Assert.assertEquals(remotePorts.get(0), remotePorts.get(2));
+    }
+
+    @Test
+    public void test_gzip_response() throws Exception {
+        PortalEndpoint endpoint = endpoint("/gzip");
+        String body = portalClient.get(endpoint, endpoint.getUrl(), Collections.emptyMap(), PortalClientTest::readBody).get();
+        Assert.assertEquals(15_000, body.length());
+
+        Map<String, Long> metrics = new HashMap<>();
+        endpoint.putMetrics(metrics);
+        Assert.assertEquals(1L, (long) metrics.get("portal.gzip.requests"));
+        Assert.assertEquals(0L, (long) metrics.get("portal.gzip.errors"));
+        // the bytes received are compressed
+        Assert.assertTrue(metrics.get("portal.gzip.bytes") < 1000);
+    }
+
+    @Test
+    public void test_error_status() throws Exception {
+        PortalEndpoint endpoint = endpoint("/error");
+        try {
+            portalClient.get(endpoint, endpoint.getUrl(), Collections.emptyMap(), PortalClientTest::readBody).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+
+        Map<String, Long> metrics = new HashMap<>();
+        endpoint.putMetrics(metrics);
+        Assert.assertEquals(1L, (long) metrics.get("portal.error.requests"));
+        Assert.assertEquals(1L, (long) metrics.get("portal.error.errors"));
+    }
+
+    @Test
+    public void test_hung_request_times_out_without_blocking_other_endpoints() throws Exception {
+        PortalEndpoint hungEndpoint = endpoint("/hung");
+        PortalEndpoint plainEndpoint = endpoint("/plain");
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> hung = portalClient.get(hungEndpoint, hungEndpoint.getUrl(), Collections.emptyMap(), PortalClientTest::readBody);
+        CompletableFuture<String> plain = portalClient.get(plainEndpoint, plainEndpoint.getUrl(), Collections.emptyMap(), PortalClientTest::readBody);
+
+        Assert.assertEquals("[\"jti-1\"]", plain.get(400, TimeUnit.MILLISECONDS));
+        try {
+            hung.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 3000);
+    }
+}
@@ -0,0 +1,46 @@
+package com.migratorydata.authorization.portal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PortalEndpointTest {
+
+    @Test
+    public void test_one_poll_at_a_time() {
+        PortalEndpoint endpoint = new PortalEndpoint("revokedTokens", "http://127.0.0.1:8080", 10_000, 300_000);
+        Assert.assertTrue(endpoint.startPoll(0));
+        Assert.assertFalse(endpoint.startPoll(0));
+        endpoint.completePoll(0, true);
+        Assert.assertTrue(endpoint.startPoll(0));
+    }
+
+    @Test
+    public void test_exponential_backoff_with_jitter() {
+        PortalEndpoint endpoint = new PortalEndpoint("revokedTokens", "http://127.0.0.1:8080", 10_000, 300_000);
+        for (int failures = 1; failures <= 10; failures++) {
+            long backoffMillis = Math.min(300_000, 10_000L << (failures - 1));
+            for (int i = 0; i < 100; i++) {
+                long jitteredBackoffMillis = endpoint.getBackoffMillis(failures);
+                Assert.assertTrue(jitteredBackoffMillis >= backoffMillis / 2);
+                Assert.assertTrue(jitteredBackoffMillis <= backoffMillis);
+            }
+        }
+
+        long now = 1_000_000;
+        Assert.assertTrue(endpoint.startPoll(now));
+        endpoint.completePoll(now, false);
+        // the first failure backs off between 5 and 10 seconds
+        Assert.assertFalse(endpoint.startPoll(now + 4_999));
+        Assert.assertTrue(endpoint.startPoll(now + 10_000));
+        now += 10_000;
+        endpoint.completePoll(now, false);
+        Assert.assertEquals(2, endpoint.getFailures());
+        // the second failure backs off between 10 and 20 seconds
+        Assert.assertFalse(endpoint.startPoll(now + 9_999));
+        Assert.assertTrue(endpoint.startPoll(now + 20_000));
+        now += 20_000;
+        endpoint.completePoll(now, true);
+        Assert.assertEquals(0, endpoint.getFailures());
+        Assert.assertTrue(endpoint.startPoll(now));
+    }
+}
@@ -0,0 +1,101 @@
+package com.migratorydata.authorization.portal;
+
+import com.migratorydata.authorization.token.RevokedTokenIds;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+public class PortalPayloadsTest {
+
+    // returns the bytes one by one, so the multi-byte characters are split across reads
+    private static InputStream slowStream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    private static RevokedTokenIds revokedTokenIds(String... jwtIds) {
+        RevokedTokenIds revokedTokens = new RevokedTokenIds(false);
+        for (String jwtId : jwtIds) {
+            revokedTokens.add(jwtId);
+        }
+        revokedTokens.publish();
+        return revokedTokens;
+    }
+
+    private static void assertRevoked(RevokedTokenIds revokedTokens, String... jwtIds) {
+        Assert.assertEquals(jwtIds.length, revokedTokens.size());
+        for (String jwtId : jwtIds) {
+            Assert.assertTrue(revokedTokens.contains(jwtId));
+        }
+    }
+
+    @Test
+    public void test_revoked_tokens_array() throws Exception {
+        RevokedTokenIds revokedTokens = revokedTokenIds("jti-1");
+        PortalPayloads.RevokedTokensChanges changes = PortalPayloads.readRevokedTokens(slowStream("[\"jti-1\", \"jti-ü€\", \"jti-😀\"]"), revokedTokens);
+
+        Assert.assertTrue(changes.isSnapshot());
+        Assert.assertEquals(RevokedTokensSync.NO_VERSION, changes.getVersion());
+        Assert.assertEquals(2, changes.getAddedCount());
+        revokedTokens.publish();
+        assertRevoked(revokedTokens, "jti-1", "jti-ü€", "jti-😀");
+    }
+
+    @Test
+    public void test_revoked_tokens_delta() throws Exception {
+        RevokedTokenIds revokedTokens = revokedTokenIds("jti-1", "jti-2");
+        String json = "{\"added\": [\"jti-3\"], \"extra\": {\"a\": [1, 2]}, \"removed\": [\"jti-1\", \"jti-4\"], \"version\": 7}";
+        PortalPayloads.RevokedTokensChanges changes = PortalPayloads.readRevokedTokens(slowStream(json), revokedTokens);
+
+        Assert.assertFalse(changes.isSnapshot());
+        Assert.assertEquals(7, changes.getVersion());
+        Assert.assertEquals(1, changes.getAddedCount());
+        Assert.assertEquals(Collections.singletonList("jti-3"), changes.getAddedIds());
+        Assert.assertEquals(1, changes.getRemovedCount());
+        revokedTokens.publish();
+        assertRevoked(revokedTokens, "jti-2", "jti-3");
+    }
+
+    @Test
+    public void test_revoked_tokens_snapshot_replaces() throws Exception {
+        RevokedTokenIds revokedTokens = revokedTokenIds("jti-1", "jti-2");
+        String json = "{\"version\": 8, \"revoked\": [{\"jti\": \"jti-2\", \"exp\": 1700000000}, {\"exp\": 1}, \"jti-3\"]}";
+        PortalPayloads.RevokedTokensChanges changes = PortalPayloads.readRevokedTokens(slowStream(json), revokedTokens);
+
+        Assert.assertTrue(changes.isSnapshot());
+        Assert.assertEquals(1, changes.getAddedCount());
+        Assert.assertEquals(1, changes.getRemovedCount());
+        revokedTokens.publish();
+        assertRevoked(revokedTokens, "jti-2", "jti-3");
+
+        // jti-2 expired, jti-3 has no known expiration time
+        Assert.assertEquals(1, revokedTokens.prune(1_700_000_001_000L));
+        revokedTokens.publish();
+        assertRevoked(revokedTokens, "jti-3");
+    }
+
+    @Test(expected = IOException.class)
+    public void test_truncated_revoked_tokens() throws Exception {
+        PortalPayloads.readRevokedTokens(slowStream("{\"version\": 7, \"revoked\": [\"jti-1\", \"jt"), new RevokedTokenIds(false));
+    }
+
+    @Test
+    public void test_signing_keys() throws Exception {
+        String json = "[{\"uuid\": \"key-1\", \"signKey\": \"secret-1\", \"name\": \"x\"}, {\"uuid\": \"key-2\"}, {\"signKey\": \"secret-3\", \"uuid\": \"key-3\"}]";
+        Map<String, String> signingKeys = PortalPayloads.readSigningKeys(slowStream(json));
+
+        Assert.assertEquals(2, signingKeys.size());
+        Assert.assertEquals("secret-1", signingKeys.get("key-1"));
+        Assert.assertEquals("secret-3", signingKeys.get("key-3"));
+    }
+}
@@ -0,0 +1,147 @@
+package com.migratorydata.authorization.portal;
+
+import com.migratorydata.authorization.helper.PortalServer;
+import com.migratorydata.authorization.helper.RevokedTokensPortal;
+import com.migratorydata.authorization.token.RevokedTokenIds;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+public class RevokedTokensSyncTest {
+
+    private PortalServer portalServer;
+    private RevokedTokensPortal portal;
+    private PortalClient portalClient;
+    private RevokedTokensSync revokedTokensSync;
+    private RevokedTokenIds revokedTokens;
+
+    @Before
+    public void onStart() throws Exception {
+        portalServer = new PortalServer();
+        portal = new RevokedTokensPortal();
+        portalServer.addHandler("/api/v1/gateway/revoked_tokens", portal);
+        portalClient = new PortalClient("my-password", 1000, 5000);
+        PortalEndpoint endpoint = new PortalEndpoint("revokedTokens", portalServer.getUrl("/api/v1/gateway/revoked_tokens"), 10_000, 300_000);
+        revokedTokensSync = new RevokedTokensSync(portalClient, endpoint);
+        revokedTokens = new RevokedTokenIds(false);
+    }
+
+    @After
+    public void onDispose() {
+        portalClient.shutdown();
+        portalServer.stop();
+    }
+
+    private void assertRevoked(String... jwtIds) {
+        Assert.assertEquals(jwtIds.length, revokedTokens.size());
+        for (String jwtId : jwtIds) {
+            Assert.assertTrue(revokedTokens.contains(jwtId));
+        }
+    }
+
+    @Test
+    public void test_snapshot_then_delta() throws Exception {
+        portal.revoke("jti-1", "jti-2");
+
+        RevokedTokensSync.Result result = revokedTokensSync.sync(revokedTokens).get();
+        Assert.assertEquals(RevokedTokensSync.Mode.SNAPSHOT, result.getMode());
+        Assert.assertEquals(1, result.getVersion());
+        Assert.assertEquals(2, result.getAddedCount());
+        Assert.assertTrue(result.getBytes() > 0);
+        assertRevoked("jti-1", "jti-2");
+
+        portal.revoke("jti-3");
+        portal.unrevoke("jti-1");
+
+        result = revokedTokensSync.sync(revokedTokens).get();
+        Assert.assertEquals(RevokedTokensSync.Mode.DELTA, result.getMode());
+        Assert.assertEquals(3, result.getVersion());
+        Assert.assertEquals(1, result.getAddedCount());
+        Assert.assertEquals(1, result.getRemovedCount());
+        assertRevoked("jti-2", "jti-3");
+
+        Assert.assertEquals(Arrays.asList("", "since=1 If-None-Match: \"v1\""), portal.getRequests());
+    }
+
+    @Test
+    public void test_not_modified() throws Exception {
+        portal.revoke("jti-1");
+        revokedTokensSync.sync(revokedTokens).get();
+
+        RevokedTokensSync.Result result = revokedTokensSync.sync(revokedTokens).get();
+        Assert.assertEquals(RevokedTokensSync.Mode.NOT_MODIFIED, result.getMode());
+        Assert.assertEquals(0, result.getBytes());
+        Assert.assertEquals(1, revokedTokensSync.getVersion());
+        Assert.assertEquals(Arrays.asList(200, 304), portal.getStatuses());
+        Assert.assertEquals(1, revokedTokens.size());
+    }
+
+    @Test
+    public void test_cursor_lost_falls_back_to_snapshot() throws Exception {
+        portal.revoke("jti-1", "jti-2");
+        revokedTokensSync.sync(revokedTokens).get();
+
+        portal.revoke("jti-3");
+        portal.forgetHistory();
+
+        RevokedTokensSync.Result result = revokedTokensSync.sync(revokedTokens).get();
+        Assert.assertEquals(RevokedTokensSync.Mode.SNAPSHOT, result.getMode());
+        Assert.assertEquals(2, result.getVersion());
+        Assert.assertEquals(1, result.getAddedCount());
+        Assert.assertEquals(Arrays.asList(200, 410, 200), portal.getStatuses());
+        assertRevoked("jti-1", "jti-2", "jti-3");
+
+        // the delta mode resumes from the version of the snapshot
+        portal.revoke("jti-4");
+        result = revokedTokensSync.sync(revokedTokens).get();
+        Assert.assertEquals(RevokedTokensSync.Mode.DELTA, result.getMode());
+        Assert.assertEquals(1, result.getAddedCount());
+    }
+
+    @Test
+    public void test_snapshot_without_version() throws Exception {
+        portal.setLegacy(true);
+        portal.revoke("jti-1");
+
+        RevokedTokensSync.Result result = revokedTokensSync.sync(revokedTokens).get();
+        Assert.assertEquals(RevokedTokensSync.Mode.SNAPSHOT, result.getMode());
+        Assert.assertEquals(RevokedTokensSync.NO_VERSION, revokedTokensSync.getVersion());
+
+        portal.revoke("jti-2");
+        result = revokedTokensSync.sync(revokedTokens).get();
+        Assert.assertEquals(RevokedTokensSync.Mode.SNAPSHOT, result.getMode());
+        Assert.assertEquals(1, result.getAddedCount());
+        Assert.assertEquals(Arrays.asList("", " If-None-Match: \"v1\""), portal.getRequests());
+    }
+
+    @Test
+    public void test_snapshot_is_authoritative() throws Exception {
+        portal.setLegacy(true);
+        portal.revoke("jti-1", "jti-2");
+        revokedTokensSync.sync(revokedTokens).get();
+
+        portal.unrevoke("jti-1");
+        RevokedTokensSync.Result result = revokedTokensSync.sync(revokedTokens).get();
+        Assert.assertEquals(RevokedTokensSync.Mode.SNAPSHOT, result.getMode());
+        Assert.assertEquals(0, result.getAddedCount());
+        Assert.assertEquals(1, result.getRemovedCount());
+        assertRevoked("jti-2");
+    }
+
+    @Test
+    public void test_portal_unreachable() throws Exception {
+        portalServer.stop();
+        try {
+            revokedTokensSync.sync(revokedTokens).get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        Assert.assertNull(revokedTokensSync.getLastResult());
+    }
+}
@@ -0,0 +1,111 @@
+package com.migratorydata.authorization.token;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class DecisionCacheTest {
+
+    private static Map<String, List<String>> claims(String prefix) {
+        // enough wildcard subjects to be compiled into an automaton
+        Map<String, List<String>> claims = new LinkedHashMap<>();
+        claims.put(Token.SUB_FIELD, Arrays.asList(prefix + "/sub/*", prefix + "/a/{s}/b"));
+        claims.put(Token.PUB_FIELD, Collections.singletonList(prefix + "/pub/*"));
+        claims.put(Token.ALL_FIELD, Collections.singletonList(prefix + "/all/*"));
+        return claims;
+    }
+
+    @Test
+    public void test_cached_permissions() throws Exception {
+        DecisionCache decisionCache = new DecisionCache(1024);
+        Permissions permissions = new Permissions(claims(""), decisionCache);
+        Assert.assertEquals(Permissions.Shape.AUTOMATON, permissions.getShape());
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(Permissions.PermissionType.SUB, permissions.getPermission("/sub/x"));
+            Assert.assertEquals(Permissions.PermissionType.PUB, permissions.getPermission("/pub/x"));
+            Assert.assertEquals(Permissions.PermissionType.ALL, permissions.getPermission("/all/x"));
+            Assert.assertEquals(Permissions.PermissionType.NONE, permissions.getPermission("/none/x"));
+        }
+        Assert.assertEquals(4, decisionCache.getMissCount());
+        Assert.assertEquals(8, decisionCache.getHitCount());
+        Assert.assertEquals(4, decisionCache.size());
+
+        // the same subjects of other permissions have their own entries
+        Permissions otherPermissions = new Permissions(claims("/other"), decisionCache);
+        Assert.assertEquals(Permissions.PermissionType.NONE, otherPermissions.getPermission("/sub/x"));
+        Assert.assertEquals(Permissions.PermissionType.SUB, otherPermissions.getPermission("/other/sub/x"));
+        Assert.assertEquals(6, decisionCache.getMissCount());
+
+        String[] subjects = {"/sub/x", "/sub/y", "/a/z/b", "/pub/x", "/all/y"};
+        Permissions.PermissionType[] results = new Permissions.PermissionType[subjects.length];
+        permissions.getPermissions(subjects, results, 0);
+        Assert.assertArrayEquals(new Permissions.PermissionType[]{Permissions.PermissionType.SUB, Permissions.PermissionType.SUB,
+                Permissions.PermissionType.SUB, Permissions.PermissionType.PUB, Permissions.PermissionType.ALL}, results);
+        Assert.assertEquals(9, decisionCache.getMissCount());
+        Assert.assertEquals(Permissions.PermissionType.SUB, permissions.getPermission("/sub/y"));
+        Assert.assertEquals(9, decisionCache.getMissCount());
+    }
+
+    @Test
+    public void test_hot_subjects_survive_a_scan() throws Exception {
+        DecisionCache decisionCache = new DecisionCache(256);
+        Permissions permissions = new Permissions(claims(""), decisionCache);
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 64; i++) {
+                permissions.getPermission("/sub/hot" + i);
+            }
+        }
+        // subjects looked up once, 16 times more than the capacity of the cache, while the hot subjects are still used
+        for (int i = 0; i < 4096; i++) {
+            permissions.getPermission("/sub/cold" + i);
+            if (i % 256 == 0) {
+                for (int j = 0; j < 64; j++) {
+                    permissions.getPermission("/sub/hot" + j);
+                }
+            }
+        }
+
+        long misses = decisionCache.getMissCount();
+        for (int i = 0; i < 64; i++) {
+            permissions.getPermission("/sub/hot" + i);
+        }
+        Assert.assertTrue(decisionCache.getMissCount() - misses < 8);
+        Assert.assertTrue(decisionCache.getEvictionCount() > 0);
+        Assert.assertTrue(decisionCache.size() <= decisionCache.capacity());
+    }
+
+    @Test
+    public void test_entries_of_unused_permissions_are_cleared() throws Exception {
+        DecisionCache decisionCache = new DecisionCache(1024);
+        PermissionsPool permissionsPool = new PermissionsPool(decisionCache);
+        for (int i = 0; i < 10; i++) {
+            Permissions permissions = permissionsPool.get(claims("/p" + i));
+            permissions.getPermission("/p" + i + "/sub/x");
+            permissions.getPermission("/p" + i + "/pub/x");
+        }
+        Assert.assertEquals(20, decisionCache.getMissCount());
+
+        for (int i = 0; i < 50 && decisionCache.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(0, decisionCache.size());
+        Assert.assertEquals(0, permissionsPool.size());
+    }
+
+    @Test
+    public void test_small_permissions_are_not_cached() throws Exception {
+        DecisionCache decisionCache = new DecisionCache(1024);
+        Permissions permissions = new Permissions(Collections.singletonMap(Token.SUB_FIELD, Collections.singletonList("/a/b")), decisionCache);
+        Assert.assertEquals(Permissions.PermissionType.SUB, permissions.getPermission("/a/b"));
+        Assert.assertEquals(0, decisionCache.getMissCount());
+        Assert.assertEquals(0, decisionCache.size());
+    }
+}
@@ -0,0 +1,117 @@
+package com.migratorydata.authorization.token;
+
+import com.migratorydata.extensions.authorization.v2.client.StatusNotification;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import java.util.Base64;
+import java.util.Date;
+
+import static com.migratorydata.authorization.AuthorizationHandler.*;
+import static com.migratorydata.authorization.token.SessionOrderTest.*;
+
+public class HmacVerifierTest {
+
+    private final HmacVerifier hmacVerifier = new HmacVerifier(secretKey);
+
+    @Test
+    public void test_valid_token() {
+        String jwtToken = generateToken(100, "/a/b", Token.ALL_FIELD);
+        Assert.assertEquals(HmacVerifier.Result.VALID, hmacVerifier.verify(jwtToken));
+
+        Token token = new Token(jwtToken);
+        Assert.assertEquals(TOKEN_VALID, token.parseToken(hmacVerifier, jwtVerifyParser, null));
+        Assert.assertTrue(token.authorizeSubscribe("/a/b"));
+        Assert.assertTrue(token.authorizePublish("/a/b"));
+        Assert.assertFalse(token.authorizeSubscribe("/a/c"));
+    }
+
+    @Test
+    public void test_tampered_signature() {
+        String jwtToken = generateToken(100);
+        int last = jwtToken.length() - 2; // not the last character, whose low bits may be ignored by the decoder
+        String tampered = jwtToken.substring(0, last) + (jwtToken.charAt(last) == 'A' ? 'B' : 'A') + jwtToken.charAt(last + 1);
+        Assert.assertEquals(HmacVerifier.Result.INVALID, hmacVerifier.verify(tampered));
+
+        String otherKeyToken = Jwts.builder().claim(Token.SIGNING_KEY_ID_FIELD, "testKeyId")
+                .signWith(Keys.hmacShaKeyFor(new byte[32])).compact();
+        Assert.assertEquals(HmacVerifier.Result.INVALID, hmacVerifier.verify(otherKeyToken));
+
+        // the same status as with jjwt
+        for (String jwtTokenWithBadSignature : new String[]{tampered, otherKeyToken}) {
+            StatusNotification expected = new Token(jwtTokenWithBadSignature).parseToken(jwtVerifyParser);
+            Assert.assertEquals(expected, new Token(jwtTokenWithBadSignature).parseToken(hmacVerifier, jwtVerifyParser, null));
+        }
+    }
+
+    @Test
+    public void test_unsupported_tokens() {
+        String jwtToken = generateToken(100);
+        String payloadAndSignature = jwtToken.substring(jwtToken.indexOf('.'));
+
+        Assert.assertEquals(HmacVerifier.Result.VALID, hmacVerifier.verify(reSign("{\"alg\":\"HS256\",\"typ\":\"JWT\",\"kid\":\"k\"}", jwtToken)));
+        Assert.assertEquals(HmacVerifier.Result.UNSUPPORTED, hmacVerifier.verify(encode("{\"alg\":\"RS256\"}") + payloadAndSignature));
+        Assert.assertEquals(HmacVerifier.Result.UNSUPPORTED, hmacVerifier.verify(encode("{\"alg\":\"none\"}") + payloadAndSignature));
+        Assert.assertEquals(HmacVerifier.Result.UNSUPPORTED, hmacVerifier.verify(encode("{\"alg\":\"HS256\",\"crit\":[\"x\"]}") + payloadAndSignature));
+        Assert.assertEquals(HmacVerifier.Result.UNSUPPORTED, hmacVerifier.verify(encode("{\"alg\":\"HS256\",\"zip\":\"DEF\"}") + payloadAndSignature));
+        Assert.assertEquals(HmacVerifier.Result.UNSUPPORTED, hmacVerifier.verify(encode("{\"typ\":\"JWT\"}") + payloadAndSignature));
+        Assert.assertEquals(HmacVerifier.Result.UNSUPPORTED, hmacVerifier.verify(encode("[1]") + payloadAndSignature));
+        Assert.assertEquals(HmacVerifier.Result.UNSUPPORTED, hmacVerifier.verify("!!!" + payloadAndSignature));
+        Assert.assertEquals(HmacVerifier.Result.UNSUPPORTED, hmacVerifier.verify(jwtToken + "!"));
+        Assert.assertEquals(HmacVerifier.Result.UNSUPPORTED, hmacVerifier.verify(jwtToken + ".x"));
+
+        // the key of 32 bytes is too short for HS512
+        Assert.assertEquals(HmacVerifier.Result.UNSUPPORTED, hmacVerifier.verify(reSign("{\"alg\":\"HS512\"}", jwtToken)));
+        byte[] longKey = new byte[64];
+        longKey[0] = 1;
+        String hs512Token = Jwts.builder().claim(Token.SIGNING_KEY_ID_FIELD, "testKeyId").signWith(Keys.hmacShaKeyFor(longKey)).compact();
+        Assert.assertEquals(HmacVerifier.Result.VALID, new HmacVerifier(Base64.getEncoder().encodeToString(longKey)).verify(hs512Token));
+    }
+
+    @Test
+    public void test_not_before_is_left_to_jjwt() {
+        String jwtToken = Jwts.builder().claim(Token.SIGNING_KEY_ID_FIELD, "testKeyId")
+                .claim("nbf", new Date().getTime() / 1000).signWith(signKey).compact();
+        JwtPayload payload = JwtPayload.read(jwtToken);
+        Assert.assertTrue(payload.hasNotBefore());
+        Assert.assertFalse(JwtPayload.read(generateToken(100)).hasNotBefore());
+    }
+
+    @Test
+    public void test_same_results_as_jjwt() {
+        HmacVerifier otherVerifier = new HmacVerifier(Base64.getEncoder().encodeToString(new byte[32]));
+        for (int i = 0; i < 200; i++) {
+            String field = (i % 3 == 0) ? Token.SUB_FIELD : (i % 3 == 1) ? Token.PUB_FIELD : Token.ALL_FIELD;
+            String jwtToken = generateToken(100, "/s/" + i + "/*", field);
+
+            Token jjwtToken = new Token(jwtToken);
+            Token fastToken = new Token(jwtToken);
+            Assert.assertEquals(jjwtToken.parseToken(jwtVerifyParser), fastToken.parseToken(hmacVerifier, jwtVerifyParser, null));
+            String subject = "/s/" + i + "/x";
+            Assert.assertEquals(jjwtToken.authorizeSubscribe(subject), fastToken.authorizeSubscribe(subject));
+            Assert.assertEquals(jjwtToken.authorizePublish(subject), fastToken.authorizePublish(subject));
+            Assert.assertEquals(jjwtToken.authorizeSubscribe("/t"), fastToken.authorizeSubscribe("/t"));
+
+            Assert.assertEquals(HmacVerifier.Result.INVALID, otherVerifier.verify(jwtToken));
+        }
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes());
+    }
+
+    // returns the token with the given header, signed again with the key of the tests
+    private static String reSign(String header, String jwtToken) {
+        String signingInput = encode(header) + jwtToken.substring(jwtToken.indexOf('.'), jwtToken.lastIndexOf('.'));
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(signKey);
+            return signingInput + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal(signingInput.getBytes()));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
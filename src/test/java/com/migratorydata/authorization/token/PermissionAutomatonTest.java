@@ -0,0 +1,105 @@
+package com.migratorydata.authorization.token;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.migratorydata.authorization.token.Permissions.PermissionType.*;
+
+public class PermissionAutomatonTest {
+
+    private static final String[] SEGMENTS = {"a", "b", "c", "d", "q", "w", "x", "*", "{s}", "{x}", ""};
+
+    // the patterns of SubjectPermissionTypeTest, in the order they are set
+    private static final Object[][][] PATTERNS = {
+            {{"/*", ALL}},
+            {{"/a", ALL}},
+            {{"/*", ALL}, {"/a", PUB}},
+            {{"/*", ALL}, {"/a/b", PUB}},
+            {{"/a/b/c/d", ALL}},
+            {{"/a/b/c/d", ALL}, {"/a/b", SUB}, {"/a", PUB}},
+            {{"/a", PUB}, {"/a/b", SUB}, {"/a/b/c/d", ALL}},
+            {{"/q/w/*", PUB}},
+            {{"/a/b/c/d", ALL}, {"/a/b/*", PUB}},
+            {{"/a/b/*", PUB}, {"/a/b/c/d", ALL}},
+            {{"/a/b/c/d", ALL}, {"/q/w/*", PUB}},
+            {{"/a/b/c/d", PUB}, {"/a/*/c/d", ALL}},
+            {{"/a/b/{s}", PUB}},
+            {{"/a/{s}/b", PUB}, {"/a/c/b", SUB}, {"/a/c/d", ALL}},
+            {{"/a/{s}/b", ALL}, {"/a/{s}/{s}/b", SUB}, {"/a/c/b", PUB}, {"/a/c/d", PUB}},
+            {{"/a/{s}/b/{s}", PUB}, {"/a/{s}/b", ALL}, {"/a/{s}/{s}/b", SUB}, {"/a/c/b", PUB}, {"/a/c/d", PUB}, {"/a/*", SUB}},
+            {{"/a/*", SUB}, {"/a/c/d", PUB}, {"/a/c/b", PUB}, {"/a/{s}/{s}/b", SUB}, {"/a/{s}/b", ALL}, {"/a/{s}/b/{s}", PUB}},
+            {{"/a/{s}/b/*", ALL}},
+            {{"/a/*/b/{s}", ALL}},
+            {{"/a/b/{s}/a", ALL}},
+    };
+
+    @Test
+    public void test_same_permissions_as_trie() {
+        List<String> subjects = allSubjects(4);
+        for (Object[][] patterns : PATTERNS) {
+            SubjectPermission trie = new SubjectPermission("");
+            for (Object[] pattern : patterns) {
+                trie.setPermission((String) pattern[0], (Permissions.PermissionType) pattern[1]);
+            }
+            assertSamePermissions(trie, PermissionAutomaton.compile(trie), subjects);
+        }
+    }
+
+    @Test
+    public void test_same_permissions_as_trie_random() {
+        Random random = new Random(7);
+        Permissions.PermissionType[] types = {SUB, PUB, ALL};
+        List<String> subjects = allSubjects(4);
+        for (int i = 0; i < 200; i++) {
+            SubjectPermission trie = new SubjectPermission("");
+            int count = 1 + random.nextInt(8);
+            for (int j = 0; j < count; j++) {
+                StringBuilder pattern = new StringBuilder();
+                int depth = 1 + random.nextInt(4);
+                for (int k = 0; k < depth; k++) {
+                    // empty segments are not valid in patterns
+                    pattern.append('/').append(SEGMENTS[random.nextInt(SEGMENTS.length - 1)]);
+                }
+                trie.setPermission(pattern.toString(), types[random.nextInt(types.length)]);
+            }
+            assertSamePermissions(trie, PermissionAutomaton.compile(trie), subjects);
+        }
+    }
+
+    @Test
+    public void test_empty_automaton() {
+        PermissionAutomaton automaton = PermissionAutomaton.compile(new SubjectPermission(""));
+        Assert.assertEquals(NONE, automaton.getPermission("/a"));
+        Assert.assertEquals(NONE, automaton.getPermission("/a/b"));
+        Assert.assertEquals(NONE, automaton.getPermission(""));
+    }
+
+    private static void assertSamePermissions(SubjectPermission trie, PermissionAutomaton automaton, List<String> subjects) {
+        for (String subject : subjects) {
+            if (trie.getPermission(subject) != automaton.getPermission(subject)) {
+                Assert.fail("Different permission for subject " + subject + " with trie\n" + trie);
+            }
+        }
+    }
+
+    private static List<String> allSubjects(int maxDepth) {
+        List<String> subjects = new ArrayList<>();
+        List<String> level = new ArrayList<>();
+        level.add("");
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            List<String> nextLevel = new ArrayList<>();
+            for (String prefix : level) {
+                for (String segment : SEGMENTS) {
+                    nextLevel.add(prefix + "/" + segment);
+                }
+            }
+            subjects.addAll(nextLevel);
+            level = nextLevel;
+        }
+        return subjects;
+    }
+}
@@ -0,0 +1,70 @@
+package com.migratorydata.authorization.token;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PermissionsPoolTest {
+
+    private final PermissionsPool permissionsPool = new PermissionsPool();
+
+    private static Map<String, List<String>> claims(String sub, String... all) {
+        Map<String, List<String>> claims = new LinkedHashMap<>();
+        claims.put(Token.SUB_FIELD, Collections.singletonList(sub));
+        claims.put(Token.ALL_FIELD, Arrays.asList(all));
+        return claims;
+    }
+
+    @Test
+    public void test_equal_claims_share_permissions() throws Exception {
+        Permissions permissions1 = permissionsPool.get(claims("/a/b", "/c/{id}", "/d/*"));
+        Permissions permissions2 = permissionsPool.get(claims("/a/b", "/c/{s}", "/d/*/e"));
+        Permissions permissions3 = permissionsPool.get(claims("/a/b", "/c/{s}"));
+
+        Assert.assertSame(permissions1, permissions2);
+        Assert.assertNotSame(permissions1, permissions3);
+        Assert.assertEquals(Permissions.PermissionType.ALL, permissions2.getPermission("/d/x"));
+        Assert.assertEquals(Permissions.PermissionType.SUB, permissions2.getPermission("/a/b"));
+
+        Assert.assertEquals(2, permissionsPool.size());
+        Assert.assertEquals(1, permissionsPool.getHitCount());
+        Assert.assertEquals(2, permissionsPool.getMissCount());
+        Assert.assertTrue(permissionsPool.getRetainedBytes() > 0);
+    }
+
+    @Test
+    public void test_order_of_claims_matters() throws Exception {
+        Map<String, List<String>> claims1 = new LinkedHashMap<>();
+        claims1.put(Token.SUB_FIELD, Collections.singletonList("/a/b"));
+        claims1.put(Token.PUB_FIELD, Collections.singletonList("/a/b"));
+        Map<String, List<String>> claims2 = new LinkedHashMap<>();
+        claims2.put(Token.PUB_FIELD, Collections.singletonList("/a/b"));
+        claims2.put(Token.SUB_FIELD, Collections.singletonList("/a/b"));
+
+        Assert.assertEquals(Permissions.PermissionType.PUB, permissionsPool.get(claims1).getPermission("/a/b"));
+        Assert.assertEquals(Permissions.PermissionType.SUB, permissionsPool.get(claims2).getPermission("/a/b"));
+    }
+
+    @Test(expected = Exception.class)
+    public void test_invalid_subject() throws Exception {
+        permissionsPool.get(claims("/a//b"));
+    }
+
+    @Test
+    public void test_unused_permissions_are_dropped() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            permissionsPool.get(claims("/a/" + i));
+        }
+        for (int i = 0; i < 50 && permissionsPool.size() > 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(0, permissionsPool.size());
+        Assert.assertEquals(0, permissionsPool.getRetainedBytes());
+    }
+}
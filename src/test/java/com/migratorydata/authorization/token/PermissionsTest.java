@@ -0,0 +1,141 @@
+package com.migratorydata.authorization.token;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class PermissionsTest {
+
+    private static final String[] SEGMENTS = {"a", "b", "c", "*", "{s}", "{x}"};
+    private static final String[] CODES = {Token.SUB_FIELD, Token.PUB_FIELD, Token.ALL_FIELD};
+
+    @Test
+    public void test_shapes() throws Exception {
+        Map<String, List<String>> claims = new LinkedHashMap<>();
+        claims.put(Token.SUB_FIELD, Collections.singletonList("/*"));
+        claims.put(Token.ALL_FIELD, Collections.singletonList("/*"));
+        Permissions permissions = new Permissions(claims);
+        Assert.assertEquals(Permissions.Shape.CONSTANT, permissions.getShape());
+        Assert.assertEquals(Permissions.PermissionType.ALL, permissions.getPermission("/a/b"));
+        Assert.assertEquals(Permissions.PermissionType.NONE, permissions.getPermission(""));
+
+        claims.clear();
+        claims.put(Token.SUB_FIELD, Arrays.asList("/device/1/commands", "/device/1/status"));
+        claims.put(Token.PUB_FIELD, Collections.singletonList("/device/1/status"));
+        permissions = new Permissions(claims);
+        Assert.assertEquals(Permissions.Shape.EXACT, permissions.getShape());
+        Assert.assertEquals(Permissions.PermissionType.SUB, permissions.getPermission("/device/1/commands"));
+        Assert.assertEquals(Permissions.PermissionType.PUB, permissions.getPermission("/device/1/status"));
+        Assert.assertEquals(Permissions.PermissionType.NONE, permissions.getPermission("/device/1"));
+
+        List<String> subjects = new ArrayList<>();
+        for (int i = 0; i <= Permissions.MAX_EXACT_SUBJECTS; i++) {
+            subjects.add("/device/" + i);
+        }
+        claims.clear();
+        claims.put(Token.SUB_FIELD, subjects);
+        Assert.assertEquals(Permissions.Shape.AUTOMATON, new Permissions(claims).getShape());
+
+        claims.clear();
+        claims.put(Token.SUB_FIELD, Arrays.asList("/*", "/device/{s}"));
+        Assert.assertEquals(Permissions.Shape.AUTOMATON, new Permissions(claims).getShape());
+    }
+
+    @Test
+    public void test_same_permissions_as_trie_random() throws Exception {
+        Random random = new Random(5);
+        List<String> subjects = new ArrayList<>();
+        for (String segment1 : SEGMENTS) {
+            subjects.add("/" + segment1);
+            subjects.add("x" + segment1);
+            for (String segment2 : SEGMENTS) {
+                subjects.add("/" + segment1 + "/" + segment2);
+                for (String segment3 : SEGMENTS) {
+                    subjects.add("/" + segment1 + "/" + segment2 + "/" + segment3);
+                }
+            }
+        }
+
+        for (int i = 0; i < 2_000; i++) {
+            // mostly exact subjects, so that all the shapes are built
+            String[] segments = random.nextInt(3) == 0 ? SEGMENTS : Arrays.copyOf(SEGMENTS, 3);
+            Map<String, List<String>> claims = new LinkedHashMap<>();
+            SubjectPermission trie = new SubjectPermission("");
+            int count = 1 + random.nextInt(10);
+            for (int j = 0; j < count; j++) {
+                StringBuilder subject = new StringBuilder();
+                int depth = random.nextInt(5) == 0 ? 1 : 2 + random.nextInt(2);
+                for (int k = 0; k < depth; k++) {
+                    subject.append('/').append(depth == 1 ? "*" : segments[random.nextInt(segments.length)]);
+                }
+                String code = CODES[random.nextInt(CODES.length)];
+                claims.computeIfAbsent(code, c -> new ArrayList<>()).add(subject.toString());
+            }
+            for (Map.Entry<String, List<String>> entry : claims.entrySet()) {
+                for (String subject : entry.getValue()) {
+                    trie.setPermission(subject, Permissions.PermissionType.fromCode(entry.getKey()));
+                }
+            }
+
+            Permissions permissions = new Permissions(claims);
+            for (String subject : subjects) {
+                if (trie.getPermission(subject) != permissions.getPermission(subject)) {
+                    Assert.fail("Different permission for subject " + subject + " with " + permissions.getShape() + " " + claims);
+                }
+            }
+            Assert.assertEquals(Permissions.PermissionType.NONE, permissions.getPermission(""));
+        }
+    }
+
+    @Test
+    public void test_batch_same_as_single_lookups() throws Exception {
+        Random random = new Random(9);
+        List<String> subjects = new ArrayList<>();
+        subjects.add("");
+        for (String segment1 : SEGMENTS) {
+            subjects.add("/" + segment1);
+            for (String segment2 : SEGMENTS) {
+                subjects.add("/" + segment1 + "/" + segment2);
+                for (String segment3 : SEGMENTS) {
+                    subjects.add("/" + segment1 + "/" + segment2 + "/" + segment3);
+                    subjects.add("/" + segment1 + "/" + segment2 + "/" + segment3 + "/" + segment1);
+                }
+            }
+        }
+
+        for (int i = 0; i < 500; i++) {
+            Map<String, List<String>> claims = new LinkedHashMap<>();
+            int count = 1 + random.nextInt(20);
+            for (int j = 0; j < count; j++) {
+                StringBuilder subject = new StringBuilder();
+                int depth = 2 + random.nextInt(3);
+                for (int k = 0; k < depth; k++) {
+                    subject.append('/').append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+                }
+                claims.computeIfAbsent(CODES[random.nextInt(CODES.length)], c -> new ArrayList<>()).add(subject.toString());
+            }
+            Permissions permissions = new Permissions(claims);
+
+            // in order, so that the consecutive subjects share prefixes, then shuffled
+            if (i % 2 == 1) {
+                Collections.shuffle(subjects, random);
+            }
+            String[] batch = subjects.toArray(new String[0]);
+            Permissions.PermissionType[] results = new Permissions.PermissionType[batch.length];
+            Permissions.PermissionType[] parallelResults = new Permissions.PermissionType[batch.length];
+            permissions.getPermissions(batch, results, 0);
+            permissions.getPermissions(batch, parallelResults, 7);
+            for (int j = 0; j < batch.length; j++) {
+                Assert.assertEquals(batch[j], permissions.getPermission(batch[j]), results[j]);
+                Assert.assertEquals(batch[j], results[j], parallelResults[j]);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.migratorydata.authorization.token;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.migratorydata.authorization.AuthorizationHandler.*;
+
+public class RejectedTokenCacheTest {
+
+    @Test
+    public void test_rejected_tokens() {
+        RejectedTokenCache rejectedTokens = new RejectedTokenCache(100, 60_000);
+        rejectedTokens.put("a.b.c", TOKEN_INVALID);
+        rejectedTokens.put("d.e.f", TOKEN_EXPIRED);
+
+        Assert.assertEquals(TOKEN_INVALID, rejectedTokens.get("a.b.c"));
+        Assert.assertEquals(TOKEN_EXPIRED, rejectedTokens.get("d.e.f"));
+        Assert.assertNull(rejectedTokens.get("g.h.i"));
+        Assert.assertEquals(2, rejectedTokens.getHitCount());
+
+        rejectedTokens.clear();
+        Assert.assertNull(rejectedTokens.get("a.b.c"));
+        Assert.assertEquals(0, rejectedTokens.size());
+    }
+
+    @Test
+    public void test_bounded_and_expiring() throws Exception {
+        RejectedTokenCache rejectedTokens = new RejectedTokenCache(100, 100);
+        for (int i = 0; i < 1000; i++) {
+            rejectedTokens.put("a.b." + i, TOKEN_INVALID);
+        }
+        Assert.assertTrue(rejectedTokens.size() <= 100);
+        Assert.assertEquals(TOKEN_INVALID, rejectedTokens.get("a.b.999"));
+
+        Thread.sleep(200);
+        Assert.assertNull(rejectedTokens.get("a.b.999"));
+    }
+}
@@ -0,0 +1,220 @@
+package com.migratorydata.authorization.token;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RevokedTokenIdsTest {
+
+    @Test
+    public void test_changes_visible_after_publish() {
+        RevokedTokenIds revokedTokens = new RevokedTokenIds(false);
+        Assert.assertTrue(revokedTokens.add("jti-1"));
+        Assert.assertFalse(revokedTokens.add("jti-1"));
+        Assert.assertFalse(revokedTokens.contains("jti-1"));
+        Assert.assertEquals(0, revokedTokens.size());
+
+        revokedTokens.publish();
+        Assert.assertTrue(revokedTokens.contains("jti-1"));
+        Assert.assertFalse(revokedTokens.contains("jti-2"));
+        Assert.assertFalse(revokedTokens.contains(null));
+        Assert.assertEquals(1, revokedTokens.size());
+
+        Assert.assertTrue(revokedTokens.remove("jti-1"));
+        Assert.assertFalse(revokedTokens.remove("jti-1"));
+        Assert.assertTrue(revokedTokens.contains("jti-1"));
+        revokedTokens.publish();
+        Assert.assertFalse(revokedTokens.contains("jti-1"));
+    }
+
+    @Test
+    public void test_random_changes() {
+        test_random_changes(false);
+    }
+
+    @Test
+    public void test_random_changes_off_heap() {
+        test_random_changes(true);
+    }
+
+    private void test_random_changes(boolean offHeap) {
+        Random random = new Random(7);
+        RevokedTokenIds revokedTokens = new RevokedTokenIds(offHeap);
+        Set<String> expected = new HashSet<>();
+        List<String> jwtIds = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            jwtIds.add(new UUID(random.nextLong(), random.nextLong()).toString());
+        }
+
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 500; i++) {
+                String jwtId = jwtIds.get(random.nextInt(jwtIds.size()));
+                if (random.nextInt(3) == 0) {
+                    Assert.assertEquals(expected.remove(jwtId), revokedTokens.remove(jwtId));
+                } else {
+                    Assert.assertEquals(expected.add(jwtId), revokedTokens.add(jwtId));
+                }
+            }
+            revokedTokens.publish();
+            Assert.assertEquals(expected.size(), revokedTokens.size());
+            for (String jwtId : jwtIds) {
+                Assert.assertEquals(expected.contains(jwtId), revokedTokens.contains(jwtId));
+            }
+        }
+    }
+
+    @Test
+    public void test_memory() {
+        RevokedTokenIds revokedTokens = new RevokedTokenIds(false);
+        for (int i = 0; i < 100_000; i++) {
+            revokedTokens.add(UUID.randomUUID().toString());
+        }
+        revokedTokens.publish();
+        // 12 bytes per slot of a table which is at least a quarter full
+        Assert.assertTrue(revokedTokens.getMemoryBytes() / revokedTokens.size() <= 48);
+
+        RevokedTokenIds remainingTokens = new RevokedTokenIds(false);
+        remainingTokens.add("jti-1");
+        remainingTokens.publish();
+        Assert.assertEquals(16 * (Long.BYTES + Integer.BYTES), remainingTokens.getMemoryBytes());
+    }
+
+    @Test
+    public void test_replace() {
+        RevokedTokenIds revokedTokens = new RevokedTokenIds(false);
+        revokedTokens.add("jti-1");
+        revokedTokens.add("jti-2");
+        revokedTokens.publish();
+
+        revokedTokens.startReplace();
+        Assert.assertFalse(revokedTokens.add("jti-2"));
+        Assert.assertTrue(revokedTokens.add("jti-3"));
+        Assert.assertFalse(revokedTokens.add("jti-3"));
+        revokedTokens.publish(); // ignored until the replace finishes
+        Assert.assertTrue(revokedTokens.contains("jti-1"));
+        Assert.assertEquals(1, revokedTokens.finishReplace());
+        revokedTokens.publish();
+        Assert.assertFalse(revokedTokens.contains("jti-1"));
+        Assert.assertTrue(revokedTokens.contains("jti-2"));
+        Assert.assertTrue(revokedTokens.contains("jti-3"));
+        Assert.assertEquals(2, revokedTokens.size());
+
+        // a replace which fails is discarded
+        revokedTokens.startReplace();
+        revokedTokens.add("jti-4");
+        revokedTokens.discard();
+        revokedTokens.publish();
+        Assert.assertTrue(revokedTokens.contains("jti-2"));
+        Assert.assertFalse(revokedTokens.contains("jti-4"));
+    }
+
+    @Test
+    public void test_prune() {
+        test_prune(false);
+    }
+
+    @Test
+    public void test_prune_off_heap() {
+        test_prune(true);
+    }
+
+    private void test_prune(boolean offHeap) {
+        long now = 1_700_000_000_000L;
+        RevokedTokenIds revokedTokens = new RevokedTokenIds(offHeap);
+        for (int i = 0; i < 10_000; i++) {
+            revokedTokens.add("jti-" + i, now + i * 1000);
+        }
+        revokedTokens.add("unknown");
+        revokedTokens.add("never", JwtPayload.NO_EXPIRATION);
+        revokedTokens.publish();
+        Assert.assertEquals(0, revokedTokens.prune(now - 1000));
+
+        Assert.assertEquals(5_000, revokedTokens.prune(now + 5_000_000));
+        revokedTokens.publish();
+        Assert.assertEquals(5_002, revokedTokens.size());
+        for (int i = 0; i < 10_000; i++) {
+            Assert.assertEquals(i >= 5_000, revokedTokens.contains("jti-" + i));
+        }
+
+        Assert.assertEquals(5_000, revokedTokens.prune(Long.MAX_VALUE / 2));
+        revokedTokens.publish();
+        Assert.assertTrue(revokedTokens.contains("unknown"));
+        Assert.assertTrue(revokedTokens.contains("never"));
+        Assert.assertEquals(2, revokedTokens.size());
+        Assert.assertEquals(16 * (Long.BYTES + Integer.BYTES), revokedTokens.getMemoryBytes());
+    }
+
+    @Test
+    public void test_learned_expiration() {
+        long now = 1_700_000_000_000L;
+        RevokedTokenIds revokedTokens = new RevokedTokenIds(false);
+        revokedTokens.add("jti-1", now);
+        revokedTokens.add("jti-2");
+        revokedTokens.publish();
+
+        // the latest expiration time of the tokens with the same JWT ID is kept
+        revokedTokens.learnExpiration("jti-1", now + 60_000);
+        revokedTokens.learnExpiration("jti-1", now + 10_000);
+        revokedTokens.learnExpiration("jti-2", now + 10_000);
+        revokedTokens.learnExpiration("jti-3", now);
+        Assert.assertEquals(1, revokedTokens.prune(now + 30_000));
+        revokedTokens.publish();
+        Assert.assertTrue(revokedTokens.contains("jti-1"));
+        Assert.assertFalse(revokedTokens.contains("jti-2"));
+
+        // the expiration time is kept by a replace
+        revokedTokens.startReplace();
+        revokedTokens.add("jti-1");
+        revokedTokens.finishReplace();
+        revokedTokens.publish();
+        Assert.assertEquals(1, revokedTokens.prune(now + 61_000));
+        revokedTokens.publish();
+        Assert.assertEquals(0, revokedTokens.size());
+    }
+
+    @Test
+    public void test_lookups_during_rebuilds() throws Exception {
+        RevokedTokenIds revokedTokens = new RevokedTokenIds(false);
+        revokedTokens.add("always-revoked");
+        revokedTokens.publish();
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger errors = new AtomicInteger();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader = new Thread(() -> {
+                while (running.get()) {
+                    if (!revokedTokens.contains("always-revoked") || revokedTokens.contains("never-revoked")) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 1_000; i++) {
+                revokedTokens.add("jti-" + round + "-" + i);
+            }
+            for (int i = 0; i < 1_000; i++) {
+                revokedTokens.remove("jti-" + (round - 1) + "-" + i);
+            }
+            revokedTokens.publish();
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assert.assertEquals(0, errors.get());
+        Assert.assertEquals(1_001, revokedTokens.size());
+    }
+}
@@ -0,0 +1,132 @@
+package com.migratorydata.authorization.token;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SubjectDictionaryTest {
+
+    @Test
+    public void test_stable_ids() {
+        SubjectDictionary subjectDictionary = new SubjectDictionary(1024);
+        int id1 = subjectDictionary.getId("/a/b");
+        int id2 = subjectDictionary.getId("/a/c");
+        Assert.assertNotEquals(SubjectDictionary.NO_ID, id1);
+        Assert.assertNotEquals(id1, id2);
+        // a new string with the same characters has the same ID
+        Assert.assertEquals(id1, subjectDictionary.getId(new String("/a/b")));
+        Assert.assertEquals(id2, subjectDictionary.getId("/a/c", true));
+        Assert.assertEquals(2, subjectDictionary.size());
+        Assert.assertEquals(2, subjectDictionary.getHitCount());
+        Assert.assertEquals(2, subjectDictionary.getMissCount());
+    }
+
+    @Test
+    public void test_ids_are_never_reused() {
+        SubjectDictionary subjectDictionary = new SubjectDictionary(64);
+        Map<Integer, String> subjectsById = new HashMap<>();
+        Set<String> subjects = new HashSet<>();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                String subject = "/s/" + i;
+                subjects.add(subject);
+                int id = subjectDictionary.getId(subject, true);
+                Assert.assertNotEquals(SubjectDictionary.NO_ID, id);
+                String previous = subjectsById.put(id, subject);
+                Assert.assertTrue(previous == null || previous.equals(subject));
+            }
+        }
+        Assert.assertTrue(subjectDictionary.size() <= subjectDictionary.capacity());
+        Assert.assertTrue(subjectDictionary.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void test_ids_are_recycled() {
+        // 16 generations of 16 IDs
+        SubjectDictionary subjectDictionary = new SubjectDictionary(64, 8, 4, Runnable::run);
+        AtomicInteger recycles = new AtomicInteger();
+        subjectDictionary.setRecycleListener(recycles::incrementAndGet);
+        Map<Integer, String> subjectsById = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            String subject = "/s/" + (i % 100);
+            long misses = subjectDictionary.getMissCount();
+            int id = subjectDictionary.getId(subject, true);
+            Assert.assertNotEquals(SubjectDictionary.NO_ID, id);
+            Assert.assertTrue(id < 256);
+            if (subjectDictionary.getMissCount() == misses) {
+                // a subject still in the dictionary keeps an ID which was not given again
+                Assert.assertEquals(subject, subjectsById.get(id));
+            } else {
+                subjectsById.put(id, subject);
+            }
+        }
+        Assert.assertTrue(subjectDictionary.getRecycleCount() > 16);
+        Assert.assertEquals(subjectDictionary.getRecycleCount(), recycles.get());
+    }
+
+    @Test
+    public void test_ids_are_recycled_by_the_executor() {
+        // 16 generations of 16 IDs, recycled by tasks queued instead of by the thread giving the IDs
+        List<Runnable> tasks = new ArrayList<>();
+        SubjectDictionary subjectDictionary = new SubjectDictionary(64, 8, 4, tasks::add);
+        for (int i = 0; i < 17; i++) {
+            subjectDictionary.getId("/s/" + i, true);
+        }
+        Assert.assertEquals(0, subjectDictionary.getRecycleCount());
+        Assert.assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        Assert.assertEquals(1, subjectDictionary.getRecycleCount());
+
+        // the recycle not run when the IDs of its generation start to be given is run by the thread giving them
+        for (int i = 17; i < 33; i++) {
+            subjectDictionary.getId("/s/" + i, true);
+        }
+        Assert.assertEquals(1, tasks.size());
+        tasks.clear();
+        for (int i = 33; i < 49; i++) {
+            subjectDictionary.getId("/s/" + i, true);
+        }
+        Assert.assertEquals(2, subjectDictionary.getRecycleCount());
+        Assert.assertEquals(1, tasks.size());
+    }
+
+    @Test
+    public void test_cold_subjects_do_not_evict_hot_subjects() {
+        SubjectDictionary subjectDictionary = new SubjectDictionary(256);
+        int[] hotIds = new int[64];
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < hotIds.length; i++) {
+                hotIds[i] = subjectDictionary.getId("/hot/" + i);
+            }
+        }
+
+        // subjects looked up once, 16 times more than the capacity of the dictionary, while the hot subjects are still used
+        int coldWithoutId = 0;
+        for (int i = 0; i < 4096; i++) {
+            if (subjectDictionary.getId("/cold/" + i) == SubjectDictionary.NO_ID) {
+                coldWithoutId++;
+            }
+            if (i % 256 == 0) {
+                for (int j = 0; j < hotIds.length; j++) {
+                    subjectDictionary.getId("/hot/" + j);
+                }
+            }
+        }
+        Assert.assertTrue(coldWithoutId > 0);
+
+        int changedIds = 0;
+        for (int i = 0; i < hotIds.length; i++) {
+            if (subjectDictionary.getId("/hot/" + i) != hotIds[i]) {
+                changedIds++;
+            }
+        }
+        Assert.assertTrue(changedIds < 8);
+    }
+}
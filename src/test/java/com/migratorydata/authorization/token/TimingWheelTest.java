@@ -0,0 +1,127 @@
+package com.migratorydata.authorization.token;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class TimingWheelTest {
+
+    private final long startTime = 1_700_000_000_000L;
+
+    @Test
+    public void test_fire_in_order() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(100, startTime);
+        TimingWheel.Timer<String> t1 = new TimingWheel.Timer<>("t1");
+        TimingWheel.Timer<String> t2 = new TimingWheel.Timer<>("t2");
+        TimingWheel.Timer<String> t3 = new TimingWheel.Timer<>("t3");
+
+        Assert.assertEquals(startTime + 1000, timingWheel.schedule(t1, startTime + 1000));
+        Assert.assertEquals(startTime + 60_000, timingWheel.schedule(t2, startTime + 59_950));
+        Assert.assertEquals(startTime + 3_600_000, timingWheel.schedule(t3, startTime + 3_600_000));
+        Assert.assertEquals(3, timingWheel.size());
+        Assert.assertEquals(startTime + 1000, timingWheel.nextDeadlineMillis());
+
+        List<String> fired = new ArrayList<>();
+        timingWheel.advance(startTime + 999, fired);
+        Assert.assertTrue(fired.isEmpty());
+
+        timingWheel.advance(startTime + 1000, fired);
+        Assert.assertEquals(1, fired.size());
+        Assert.assertEquals("t1", fired.get(0));
+        Assert.assertFalse(t1.isScheduled());
+
+        fired.clear();
+        timingWheel.advance(startTime + 59_999, fired);
+        Assert.assertTrue(fired.isEmpty());
+        timingWheel.advance(startTime + 60_000, fired);
+        Assert.assertEquals(1, fired.size());
+        Assert.assertEquals("t2", fired.get(0));
+
+        fired.clear();
+        timingWheel.advance(startTime + 4_000_000, fired);
+        Assert.assertEquals(1, fired.size());
+        Assert.assertEquals("t3", fired.get(0));
+        Assert.assertEquals(0, timingWheel.size());
+        Assert.assertEquals(Long.MAX_VALUE, timingWheel.nextDeadlineMillis());
+    }
+
+    @Test
+    public void test_cancel_and_reschedule() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(100, startTime);
+        TimingWheel.Timer<String> t1 = new TimingWheel.Timer<>("t1");
+        TimingWheel.Timer<String> t2 = new TimingWheel.Timer<>("t2");
+
+        timingWheel.schedule(t1, startTime + 1000);
+        timingWheel.schedule(t2, startTime + 1000);
+        timingWheel.schedule(t2, startTime + 2000);
+        Assert.assertEquals(2, timingWheel.size());
+
+        Assert.assertTrue(timingWheel.cancel(t1));
+        Assert.assertFalse(timingWheel.cancel(t1));
+        Assert.assertEquals(-1, timingWheel.schedule(t1, startTime + 1000));
+        Assert.assertEquals(1, timingWheel.size());
+
+        List<String> fired = new ArrayList<>();
+        timingWheel.advance(startTime + 1500, fired);
+        Assert.assertTrue(fired.isEmpty());
+        timingWheel.advance(startTime + 2000, fired);
+        Assert.assertEquals(1, fired.size());
+        Assert.assertEquals("t2", fired.get(0));
+    }
+
+    @Test
+    public void test_past_deadline_fires_on_next_tick() {
+        TimingWheel<String> timingWheel = new TimingWheel<>(100, startTime);
+        TimingWheel.Timer<String> t1 = new TimingWheel.Timer<>("t1");
+
+        Assert.assertEquals(startTime + 100, timingWheel.schedule(t1, startTime - 5000));
+
+        List<String> fired = new ArrayList<>();
+        timingWheel.advance(startTime + 100, fired);
+        Assert.assertEquals(1, fired.size());
+    }
+
+    @Test
+    public void test_random_deadlines() {
+        Random random = new Random(11);
+        TimingWheel<Integer> timingWheel = new TimingWheel<>(1, startTime);
+        Map<Integer, Long> deadlines = new HashMap<>();
+        List<TimingWheel.Timer<Integer>> timers = new ArrayList<>();
+
+        long currentTime = startTime;
+        for (int i = 0; i < 20_000; i++) {
+            TimingWheel.Timer<Integer> timer = new TimingWheel.Timer<>(i);
+            timers.add(timer);
+            // deadlines spread over all the levels of the wheel, including the overflow beyond the top level
+            long delay = (long) Math.pow(2, random.nextInt(44)) + random.nextInt(1000) + 1;
+            deadlines.put(i, currentTime + delay);
+            timingWheel.schedule(timer, currentTime + delay);
+        }
+        for (int i = 0; i < 2_000; i++) {
+            int index = random.nextInt(timers.size());
+            timingWheel.cancel(timers.get(index));
+            deadlines.remove(index);
+        }
+
+        List<Integer> fired = new ArrayList<>();
+        while (!deadlines.isEmpty()) {
+            currentTime += (long) Math.pow(2, random.nextInt(44));
+            timingWheel.advance(currentTime, fired);
+            for (Integer index : fired) {
+                Long deadline = deadlines.remove(index);
+                Assert.assertNotNull(deadline);
+                Assert.assertTrue(deadline <= currentTime);
+            }
+            fired.clear();
+            for (Long deadline : deadlines.values()) {
+                Assert.assertTrue(deadline > currentTime);
+            }
+            Assert.assertEquals(deadlines.size(), timingWheel.size());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.migratorydata.authorization.token;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static com.migratorydata.authorization.token.SessionOrderTest.generateToken;
+import static com.migratorydata.authorization.token.SessionOrderTest.jwtVerifyParser;
+
+public class TokenCacheTest {
+
+    private final TokenCache tokenCache = new TokenCache(100);
+
+    @Test
+    public void test_hit_and_miss() {
+        String jwtToken = generateToken(100);
+        Token token = new Token(jwtToken);
+        token.parseToken(jwtVerifyParser);
+
+        Assert.assertNull(tokenCache.get("testKeyId", jwtToken));
+        tokenCache.put("testKeyId", jwtToken, token);
+
+        Assert.assertSame(token, tokenCache.get("testKeyId", jwtToken));
+        Assert.assertNull(tokenCache.get("otherKeyId", jwtToken));
+        Assert.assertNull(tokenCache.get("testKeyId", generateToken(100)));
+
+        Assert.assertEquals(1, tokenCache.getHitCount());
+        Assert.assertEquals(3, tokenCache.getMissCount());
+    }
+
+    @Test
+    public void test_expired_token() throws InterruptedException {
+        String jwtToken = generateToken(1);
+        Token token = new Token(jwtToken);
+        token.parseToken(jwtVerifyParser);
+        tokenCache.put("testKeyId", jwtToken, token);
+
+        Thread.sleep(2000);
+
+        Assert.assertNull(tokenCache.get("testKeyId", jwtToken));
+        Assert.assertEquals(0, tokenCache.size());
+    }
+
+    @Test
+    public void test_retain_signing_keys() {
+        String jwtToken = generateToken(100);
+        Token token = new Token(jwtToken);
+        token.parseToken(jwtVerifyParser);
+        tokenCache.put("testKeyId", jwtToken, token);
+
+        tokenCache.retainSigningKeys(Collections.singleton("testKeyId"));
+        Assert.assertSame(token, tokenCache.get("testKeyId", jwtToken));
+
+        tokenCache.retainSigningKeys(Collections.singleton("otherKeyId"));
+        Assert.assertNull(tokenCache.get("testKeyId", jwtToken));
+    }
+
+    @Test
+    public void test_revoked_token() {
+        String jwtToken = generateToken(100);
+        Token token = new Token(jwtToken);
+        token.parseToken(jwtVerifyParser);
+        tokenCache.put("testKeyId", jwtToken, token);
+
+        tokenCache.invalidateTokenIds(hash -> hash == RevokedTokenIds.hash("unknown"));
+        Assert.assertSame(token, tokenCache.get("testKeyId", jwtToken));
+
+        tokenCache.invalidateTokenIds(hash -> hash == token.getIdHash());
+        Assert.assertNull(tokenCache.get("testKeyId", jwtToken));
+    }
+}
@@ -3,9 +3,13 @@ package com.migratorydata.authorization.token;
 import com.migratorydata.authorization.client.Session;
 import com.migratorydata.authorization.helper.ClientCredentials;
 import com.migratorydata.authorization.AuthorizationHandler;
+import com.migratorydata.extensions.authorization.v2.client.StatusNotification;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static com.migratorydata.authorization.token.SessionOrderTest.generateToken;
 import static com.migratorydata.authorization.token.SessionOrderTest.jwtVerifyParser;
 
@@ -57,4 +61,168 @@ public class TokenExpirationHandlerTest {
         Assert.assertFalse(client1.isDisconnect());
     }
 
+    @Test
+    public void test_no_notification_after_remove() throws InterruptedException {
+        TokenExpirationHandler tokenExpirationHandler = new TokenExpirationHandler(5 * 1000);
+
+        Token t1 = new Token(generateToken(6));
+        t1.parseToken(jwtVerifyParser);
+
+        ClientCredentials client1 = new ClientCredentials(null, null);
+
+        Session s1 = new Session(client1, t1);
+
+        tokenExpirationHandler.add(s1);
+        tokenExpirationHandler.remove(s1);
+
+        Thread.sleep(2000);
+
+        Assert.assertNull(client1.getNotification());
+        Assert.assertFalse(client1.isDisconnect());
+
+        tokenExpirationHandler.shutdown();
+    }
+
+
+    @Test
+    public void test_renew_before_token_expiration() throws InterruptedException {
+        TokenExpirationHandler tokenExpirationHandler = new TokenExpirationHandler(2 * 1000);
+
+        Token t1 = new Token(generateToken(3600));
+        t1.parseToken(jwtVerifyParser);
+
+        ClientCredentials client1 = new ClientCredentials(null, null);
+
+        Session s1 = new Session(client1, t1);
+
+        tokenExpirationHandler.add(s1);
+        tokenExpirationHandler.renewBefore(s1, System.currentTimeMillis() + 500);
+
+        Thread.sleep(1000);
+
+        Assert.assertTrue(client1.getNotification().getStatus().equals(AuthorizationHandler.TOKEN_TO_EXPIRE.getStatus()));
+        Assert.assertFalse(client1.isDisconnect());
+
+        Thread.sleep(2500);
+
+        Assert.assertTrue(client1.isDisconnect());
+
+        tokenExpirationHandler.shutdown();
+    }
+
+    @Test
+    public void test_no_renewal_after_remove_of_fired_session() throws InterruptedException {
+        TokenExpirationHandler tokenExpirationHandler = new TokenExpirationHandler(5 * 1000);
+
+        // the timers of both sessions fire together, and the first one handled removes the other, as a token update
+        // removes the previous session of the client while the timers are handled
+        Session[] sessions = new Session[2];
+        RemovingClient[] clients = new RemovingClient[2];
+        Token t1 = new Token(generateToken(4));
+        t1.parseToken(jwtVerifyParser);
+        for (int i = 0; i < 2; i++) {
+            clients[i] = new RemovingClient(tokenExpirationHandler, sessions, 1 - i);
+            sessions[i] = new Session(clients[i], t1);
+        }
+        tokenExpirationHandler.add(sessions[0]);
+        tokenExpirationHandler.add(sessions[1]);
+
+        Thread.sleep(7000);
+
+        // the removed session neither starts its token renewal nor is disconnected
+        Assert.assertTrue(clients[0].getNotification() == null ^ clients[1].getNotification() == null);
+        Assert.assertTrue(clients[0].isDisconnect() ^ clients[1].isDisconnect());
+
+        tokenExpirationHandler.shutdown();
+    }
+
+    @Test
+    public void test_no_renewal_before_of_removed_session() throws InterruptedException {
+        TokenExpirationHandler tokenExpirationHandler = new TokenExpirationHandler(2 * 1000);
+
+        Token t1 = new Token(generateToken(3600));
+        t1.parseToken(jwtVerifyParser);
+
+        ClientCredentials client1 = new ClientCredentials(null, null);
+
+        Session s1 = new Session(client1, t1);
+
+        tokenExpirationHandler.add(s1);
+        tokenExpirationHandler.remove(s1);
+        tokenExpirationHandler.renewBefore(s1, System.currentTimeMillis() + 100);
+
+        Thread.sleep(1000);
+
+        Assert.assertNull(client1.getNotification());
+        Assert.assertFalse(client1.isDisconnect());
+
+        tokenExpirationHandler.shutdown();
+    }
+
+    @Test
+    public void test_slow_notification_does_not_block_add_and_remove() throws InterruptedException {
+        TokenExpirationHandler tokenExpirationHandler = new TokenExpirationHandler(2 * 1000);
+
+        Token t1 = new Token(generateToken(1));
+        t1.parseToken(jwtVerifyParser);
+        Token t2 = new Token(generateToken(3600));
+        t2.parseToken(jwtVerifyParser);
+
+        BlockingClient client1 = new BlockingClient();
+        Session s1 = new Session(client1, t1);
+        tokenExpirationHandler.add(s1);
+        Assert.assertTrue(client1.sending.await(1, TimeUnit.SECONDS));
+
+        // while the notification of the first session is blocked, another session connects and disconnects
+        Thread other = new Thread(() -> {
+            Session s2 = new Session(new ClientCredentials(null, null), t2);
+            tokenExpirationHandler.add(s2);
+            tokenExpirationHandler.remove(s2);
+        });
+        other.start();
+        other.join(1000);
+        Assert.assertFalse(other.isAlive());
+
+        client1.unblock.countDown();
+        tokenExpirationHandler.shutdown();
+    }
+
+    private static class BlockingClient extends ClientCredentials {
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final CountDownLatch unblock = new CountDownLatch(1);
+
+        BlockingClient() {
+            super(null, null);
+        }
+
+        @Override
+        public void sendStatusNotification(StatusNotification response) {
+            super.sendStatusNotification(response);
+            sending.countDown();
+            try {
+                unblock.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class RemovingClient extends ClientCredentials {
+        private final TokenExpirationHandler tokenExpirationHandler;
+        private final Session[] sessions;
+        private final int other;
+
+        RemovingClient(TokenExpirationHandler tokenExpirationHandler, Session[] sessions, int other) {
+            super(null, null);
+            this.tokenExpirationHandler = tokenExpirationHandler;
+            this.sessions = sessions;
+            this.other = other;
+        }
+
+        @Override
+        public void sendStatusNotification(StatusNotification response) {
+            super.sendStatusNotification(response);
+            tokenExpirationHandler.remove(sessions[other]);
+        }
+    }
 }
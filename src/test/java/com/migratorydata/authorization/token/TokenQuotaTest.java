@@ -0,0 +1,171 @@
+package com.migratorydata.authorization.token;
+
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.migratorydata.authorization.token.SessionOrderTest.signKey;
+
+public class TokenQuotaTest {
+
+    private static JwtPayload payload(String jti, String app, Map<String, Object> quota) {
+        JwtBuilder builder = Jwts.builder().claim(Token.SIGNING_KEY_ID_FIELD, "testKeyId");
+        if (jti != null) {
+            builder.setId(jti);
+        }
+        if (app != null) {
+            builder.claim("app", app);
+        }
+        if (quota != null) {
+            builder.claim("quota", quota);
+        }
+        return JwtPayload.read(builder.signWith(signKey).compact());
+    }
+
+    private static Map<String, Object> quota(double publishRate, int publishBurst, int maxSubscriptions) {
+        Map<String, Object> quota = new HashMap<>();
+        quota.put(TokenQuotas.PUBLISH_RATE_CLAIM, publishRate);
+        quota.put(TokenQuotas.PUBLISH_BURST_CLAIM, publishBurst);
+        quota.put(TokenQuotas.MAX_SUBSCRIPTIONS_CLAIM, maxSubscriptions);
+        return quota;
+    }
+
+    @Test
+    public void test_no_limits() {
+        TokenQuotas quotas = new TokenQuotas(TokenQuotas.Scope.TOKEN, 0, 0, 0);
+        Assert.assertNull(quotas.get(payload("j1", null, null)));
+        Assert.assertEquals(0, quotas.size());
+    }
+
+    @Test
+    public void test_publish_burst_not_multiple_of_stripes() {
+        TokenQuotas quotas = new TokenQuotas(TokenQuotas.Scope.TOKEN, 0, 0, 0);
+        for (int burst : new int[]{1, 7, 10, 13, 17}) {
+            // a rate low enough to earn no token during the test
+            TokenQuota quota = new TokenQuota(null, quotas, 0.001, burst, 0, 8);
+            int published = 0;
+            for (int i = 0; i < 100; i++) {
+                published += quota.tryPublish() ? 1 : 0;
+            }
+            Assert.assertEquals(burst, published);
+        }
+    }
+
+    @Test
+    public void test_publish_burst_across_threads() throws Exception {
+        TokenQuotas quotas = new TokenQuotas(TokenQuotas.Scope.TOKEN, 0, 0, 0);
+        // a rate low enough to earn no token during the test
+        TokenQuota quota = quotas.get(payload("j1", null, quota(0.001, 100, 0)));
+
+        AtomicInteger published = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    if (quota.tryPublish()) {
+                        published.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(100, published.get());
+        Assert.assertEquals(300, quota.getPublishDeniedCount());
+
+        // a single thread may take the whole burst
+        TokenQuota otherQuota = quotas.get(payload("j2", null, quota(0.001, 100, 0)));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(otherQuota.tryPublish());
+        }
+        Assert.assertFalse(otherQuota.tryPublish());
+        Assert.assertEquals(301, quotas.getPublishDeniedCount());
+    }
+
+    @Test
+    public void test_publish_rate() throws Exception {
+        TokenQuotas quotas = new TokenQuotas(TokenQuotas.Scope.TOKEN, 100, 1, 0);
+        TokenQuota quota = quotas.get(payload("j1", null, null));
+        Assert.assertTrue(quota.tryPublish());
+        Assert.assertFalse(quota.tryPublish());
+        Thread.sleep(50);
+        Assert.assertTrue(quota.tryPublish());
+    }
+
+    @Test
+    public void test_max_subscriptions() {
+        TokenQuotas quotas = new TokenQuotas(TokenQuotas.Scope.TOKEN, 0, 0, 3);
+        TokenQuota quota = quotas.get(payload("j1", null, null));
+        Assert.assertTrue(quota.tryAddSubscription());
+        Assert.assertTrue(quota.tryAddSubscription());
+        Assert.assertTrue(quota.tryAddSubscription());
+        Assert.assertFalse(quota.tryAddSubscription());
+        Assert.assertEquals(1, quota.getSubscribeDeniedCount());
+
+        quota.releaseSubscriptions(2);
+        Assert.assertTrue(quota.tryAddSubscription());
+        Assert.assertEquals(2, quota.getSubscriptionCount());
+    }
+
+    @Test
+    public void test_claims_override_configuration() {
+        TokenQuotas quotas = new TokenQuotas(TokenQuotas.Scope.TOKEN, 0, 0, 1);
+        TokenQuota quota = quotas.get(payload("j1", null, Collections.singletonMap(TokenQuotas.MAX_SUBSCRIPTIONS_CLAIM, 2)));
+        Assert.assertTrue(quota.tryAddSubscription());
+        Assert.assertTrue(quota.tryAddSubscription());
+        Assert.assertFalse(quota.tryAddSubscription());
+
+        // a limit of 0 in the claim disables the limit of the configuration
+        Assert.assertNull(quotas.get(payload("j2", null, Collections.singletonMap(TokenQuotas.MAX_SUBSCRIPTIONS_CLAIM, 0))));
+    }
+
+    @Test
+    public void test_scope() {
+        TokenQuotas tokenScope = new TokenQuotas(TokenQuotas.Scope.TOKEN, 0, 0, 10);
+        Assert.assertSame(tokenScope.get(payload("j1", "a1", null)), tokenScope.get(payload("j1", "a2", null)));
+        Assert.assertNotSame(tokenScope.get(payload("j1", "a1", null)), tokenScope.get(payload("j2", "a1", null)));
+        Assert.assertNotSame(tokenScope.get(payload(null, null, null)), tokenScope.get(payload(null, null, null)));
+
+        TokenQuotas appScope = new TokenQuotas(TokenQuotas.Scope.APP, 0, 0, 10);
+        TokenQuota quota = appScope.get(payload("j1", "a1", null));
+        Assert.assertSame(quota, appScope.get(payload("j2", "a1", null)));
+        Assert.assertEquals("app:a1", quota.getKey());
+        // the tokens without an app share the quota of their JWT ID
+        Assert.assertEquals("jti:j3", appScope.get(payload("j3", null, null)).getKey());
+    }
+
+    @Test
+    public void test_top_denials() {
+        TokenQuotas quotas = new TokenQuotas(TokenQuotas.Scope.TOKEN, 0, 0, 1);
+        TokenQuota noisy = quotas.get(payload("noisy", null, null));
+        TokenQuota quiet = quotas.get(payload("quiet", null, null));
+        TokenQuota idle = quotas.get(payload("idle", null, null));
+        for (int i = 0; i < 10; i++) {
+            noisy.tryAddSubscription();
+        }
+        quiet.tryAddSubscription();
+        quiet.tryAddSubscription();
+        idle.tryAddSubscription();
+
+        Map<String, Long> topDenials = quotas.getTopDenials(10);
+        Assert.assertEquals(2, topDenials.size());
+        Assert.assertEquals(Long.valueOf(9), topDenials.get("jti:noisy"));
+        Assert.assertEquals("jti:noisy", topDenials.keySet().iterator().next());
+        Assert.assertEquals(1, quotas.getTopDenials(1).size());
+    }
+
+    @Test
+    public void test_malformed_quota_claim() {
+        TokenQuotas quotas = new TokenQuotas(TokenQuotas.Scope.TOKEN, 0, 0, 5);
+        TokenQuota quota = quotas.get(payload("j1", null, Collections.singletonMap(TokenQuotas.MAX_SUBSCRIPTIONS_CLAIM, "many")));
+        Assert.assertNotNull(quota); // the limits of the configuration
+    }
+}